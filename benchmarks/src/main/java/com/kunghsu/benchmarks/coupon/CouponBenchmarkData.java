@@ -0,0 +1,77 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import com.kunghsu.common.utils.JacksonUtils;
+import com.kunghsu.example.coupon.CouponInputMsg;
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.loadtest.SyntheticUserLocationLoader;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 基准测试用的测试数据
+ * 随机数固定种子，每次运行数据一样，结果才有可比性
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+public class CouponBenchmarkData {
+
+    private static final long SEED = 20220305L;
+
+    public static CouponInputMsg inputMsg() {
+        CouponInputMsg couponInputMsg = new CouponInputMsg();
+        couponInputMsg.setMESSAGE_TYPE("01");
+        couponInputMsg.setCOUPON_ID("C0001");
+        couponInputMsg.setSTORE_ID("S0001");
+        couponInputMsg.setSTORE_RANGE("3000");
+        couponInputMsg.setSTORE_LATITUDE(String.valueOf(SyntheticUserLocationLoader.CENTER_LATITUDE));
+        couponInputMsg.setSTORE_LONGITUDE(String.valueOf(SyntheticUserLocationLoader.CENTER_LONGITUDE));
+        couponInputMsg.setUSER_NUM("100");
+        couponInputMsg.setUNIQUE_REQ_ID(UUID.nameUUIDFromBytes("benchmark".getBytes()).toString());
+        return couponInputMsg;
+    }
+
+    public static String inputJson() {
+        return JacksonUtils.toJSONString(inputMsg());
+    }
+
+    public static CouponOutputMsg outputMsg() {
+        CouponOutputMsg couponOutputMsg = new CouponOutputMsg();
+        couponOutputMsg.setMESSAGE_TYPE("02");
+        couponOutputMsg.setSERIAL_NO(UUID.nameUUIDFromBytes("serial".getBytes()).toString());
+        couponOutputMsg.setID_TYPE("1");
+        couponOutputMsg.setID_NUMBER("440101199001011234");
+        couponOutputMsg.setCOUPON_ID("C0001");
+        couponOutputMsg.setSTORE_ID("S0001");
+        couponOutputMsg.setSTORE_RANGE("3000");
+        couponOutputMsg.setCOUPON_SEND_NUM("100");
+        couponOutputMsg.setUNIQUE_REQ_ID(UUID.nameUUIDFromBytes("benchmark".getBytes()).toString());
+        return couponOutputMsg;
+    }
+
+    /**
+     * 生成用户位置表，和压测用的是同一个生成器
+     *
+     * @param userCount
+     * @return
+     */
+    public static UserLocationColumns userColumns(int userCount) {
+        return new SyntheticUserLocationLoader(userCount, SEED).loadColumns();
+    }
+
+    /**
+     * 生成门店坐标，lats、lngs长度相同
+     */
+    public static void storeCoordinates(double[] lats, double[] lngs) {
+        SyntheticUserLocationLoader generator = new SyntheticUserLocationLoader(0, SEED + 1);
+        Random random = new Random(generator.getSeed());
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = generator.randomLatitude(random);
+            lngs[i] = generator.randomLongitude(random);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.example.coupon.CouponInputMsg;
+import com.kunghsu.example.coupon.operators.CouponInputTableMapFunction;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 第二步：CouponInputMsg -> CouponInputTableVO2
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponInputMappingBenchmark {
+
+    private CouponInputTableMapFunction mapFunction;
+
+    private CouponInputMsg inputMsg;
+
+    @Setup
+    public void setup() {
+        mapFunction = new CouponInputTableMapFunction();
+        inputMsg = CouponBenchmarkData.inputMsg();
+    }
+
+    @Benchmark
+    public CouponInputTableVO2 map() throws Exception {
+        return mapFunction.map(inputMsg);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.example.coupon.CouponInputDeserializationSchema;
+import com.kunghsu.example.coupon.CouponInputMsg;
+import com.kunghsu.example.coupon.operators.CouponInputMsgParseFunction;
+import com.kunghsu.example.coupon.operators.CouponInputTableMapFunction;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 第一步：kafka消息(json) -> CouponInputMsg
+ * 同时对比：String + 两次map 和 CouponInputDeserializationSchema直接从byte[]解析成CouponInputTableVO2
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponInputParseBenchmark {
+
+    private CouponInputMsgParseFunction parseFunction;
+
+    private String json;
+
+    private byte[] jsonBytes;
+
+    private CouponInputTableMapFunction mapFunction;
+
+    private CouponInputDeserializationSchema deserializationSchema;
+
+    @Setup
+    public void setup() {
+        parseFunction = new CouponInputMsgParseFunction();
+        json = CouponBenchmarkData.inputJson();
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        mapFunction = new CouponInputTableMapFunction();
+        deserializationSchema = new CouponInputDeserializationSchema();
+    }
+
+    @Benchmark
+    public CouponInputMsg parse() throws Exception {
+        return parseFunction.map(json);
+    }
+
+    @Benchmark
+    public CouponInputTableVO2 stringThenTwoMaps() throws Exception {
+        return mapFunction.map(parseFunction.map(new String(jsonBytes, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public CouponInputTableVO2 deserializationSchema() throws Exception {
+        return deserializationSchema.deserialize(jsonBytes);
+    }
+
+}
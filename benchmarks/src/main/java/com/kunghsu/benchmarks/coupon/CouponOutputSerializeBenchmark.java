@@ -0,0 +1,57 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.common.utils.JacksonUtils;
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.CouponOutputSerializationSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 第四步：CouponOutputMsg -> kafka消息(json)
+ * serialize是原来的做法（JacksonUtils转String，SimpleStringSchema再编码成字节），
+ * serializationSchema是CouponOutputSerializationSchema直接写字节
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponOutputSerializeBenchmark {
+
+    private CouponOutputMsg outputMsg;
+
+    private CouponOutputSerializationSchema serializationSchema;
+
+    @Setup
+    public void setup() {
+        outputMsg = CouponBenchmarkData.outputMsg();
+        serializationSchema = new CouponOutputSerializationSchema("coupon-output");
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return JacksonUtils.toJSONString(outputMsg).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] serializationSchema() {
+        return serializationSchema.serialize(outputMsg, null).value();
+    }
+
+}
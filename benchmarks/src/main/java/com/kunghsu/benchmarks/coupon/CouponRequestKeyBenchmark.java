@@ -0,0 +1,97 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.key.CouponRequestKey;
+import com.kunghsu.example.coupon.key.CouponRequestKeySerializer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.api.common.typeutils.base.StringSerializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按请求keyBy时的key
+ * legacy开头的是原来的StringUtils.join拼接字符串，用来做对比
+ *
+ * 运行：java -jar target/benchmarks.jar CouponRequestKeyBenchmark -prof gc
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponRequestKeyBenchmark {
+
+    private CouponOutputMsg outputMsg;
+
+    private CouponRequestKey requestKey;
+
+    private String legacyKey;
+
+    private DataOutputSerializer output;
+
+    @Setup
+    public void setup() {
+        outputMsg = CouponBenchmarkData.outputMsg();
+        requestKey = CouponRequestKey.of(outputMsg);
+        legacyKey = legacyKey(outputMsg);
+        output = new DataOutputSerializer(256);
+    }
+
+    /**
+     * 分区时：取key + hashCode
+     */
+    @Benchmark
+    public int requestKeyHash() {
+        return CouponRequestKey.of(outputMsg).hashCode();
+    }
+
+    @Benchmark
+    public int legacyKeyHash() {
+        return legacyKey(outputMsg).hashCode();
+    }
+
+    /**
+     * 访问状态时：序列化key
+     */
+    @Benchmark
+    public int requestKeySerialize() throws IOException {
+        output.clear();
+        CouponRequestKeySerializer.INSTANCE.serialize(requestKey, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public int legacyKeySerialize() throws IOException {
+        output.clear();
+        StringSerializer.INSTANCE.serialize(legacyKey, output);
+        return output.length();
+    }
+
+    private static String legacyKey(CouponOutputMsg couponOutputMsg) {
+        return StringUtils.join(new String[]{
+                couponOutputMsg.getCOUPON_ID(),
+                couponOutputMsg.getSTORE_ID(),
+                couponOutputMsg.getSTORE_RANGE(),
+                couponOutputMsg.getCOUPON_SEND_NUM(),
+                couponOutputMsg.getUNIQUE_REQ_ID(),
+        }, "_");
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import com.kunghsu.example.coupon.geo.GeoProbe;
+import com.kunghsu.example.coupon.geo.GeoUtils;
+import com.kunghsu.example.coupon.geo.UserLocationGridIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 第三步：按门店范围过滤用户，不同用户表大小下的对比
+ *
+ * fullScan：原SQL的做法，每个用户都算一遍haversine
+ * probeScan：逐个用户比较，但门店一侧预计算、先用外接矩形排除（geoWithinRange的做法）
+ * gridIndex：网格索引，只看门店附近的网格
+ *
+ * 每次调用换一个门店，避免总是命中同一批缓存行
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GeoDistanceFilterBenchmark {
+
+    private static final int STORE_COUNT = 64;
+
+    private static final String CERT_TYPE = "1";
+
+    @Param({"10000", "100000", "1000000"})
+    private int userCount;
+
+    @Param({"3000"})
+    private double storeRange;
+
+    private double[] lats;
+    private double[] lngs;
+
+    private UserLocationGridIndex index;
+
+    private final double[] storeLats = new double[STORE_COUNT];
+    private final double[] storeLngs = new double[STORE_COUNT];
+
+    private int storeIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        UserLocationColumns columns = CouponBenchmarkData.userColumns(userCount);
+        lats = columns.getLats();
+        lngs = columns.getLngs();
+        index = UserLocationGridIndex.of(columns, false, UserLocationGridIndex.DEFAULT_CELL_SIZE_DEGREE);
+        CouponBenchmarkData.storeCoordinates(storeLats, storeLngs);
+    }
+
+    @Benchmark
+    public int fullScan() {
+        int store = nextStore();
+        double storeLat = storeLats[store];
+        double storeLng = storeLngs[store];
+        int matchCount = 0;
+        for (int i = 0; i < lats.length; i++) {
+            if (GeoUtils.isWithin(GeoUtils.distanceMeters(storeLat, storeLng, lats[i], lngs[i]), storeRange)) {
+                matchCount++;
+            }
+        }
+        return matchCount;
+    }
+
+    @Benchmark
+    public int probeScan() {
+        int store = nextStore();
+        GeoProbe probe = new GeoProbe();
+        probe.reset(storeLats[store], storeLngs[store], storeRange);
+        int matchCount = 0;
+        for (int i = 0; i < lats.length; i++) {
+            if (probe.isWithin(lats[i], lngs[i])) {
+                matchCount++;
+            }
+        }
+        return matchCount;
+    }
+
+    @Benchmark
+    public int gridIndex(Blackhole blackhole) {
+        int store = nextStore();
+        return index.query(CERT_TYPE, storeLats[store], storeLngs[store], storeRange,
+                (certType, certNbr) -> blackhole.consume(certNbr));
+    }
+
+    private int nextStore() {
+        int store = storeIndex;
+        storeIndex = (store + 1) % STORE_COUNT;
+        return store;
+    }
+
+}
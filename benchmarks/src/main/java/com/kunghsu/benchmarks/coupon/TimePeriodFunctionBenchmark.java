@@ -0,0 +1,83 @@
+package com.kunghsu.benchmarks.coupon;
+
+import com.kunghsu.common.utils.DateUtils;
+import com.kunghsu.example.coupon.function.LatFunction;
+import com.kunghsu.example.coupon.function.UdfTimePeriodFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.kunghsu.common.utils.DateUtils.PATTERN_YYYY_MM_DD_HH_MM_SS;
+
+/**
+ * 时段UDF基准测试
+ * legacy开头的是改造前的写法（每次调用都新建DateTimeFormatter、Calendar），用来做对比
+ *
+ * 运行：java -jar target/benchmarks.jar TimePeriodFunctionBenchmark -prof gc
+ * 看gc.alloc.rate.norm一列，缓存命中时应该是0 B/op
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimePeriodFunctionBenchmark {
+
+    private UdfTimePeriodFunction udfTimePeriodFunction;
+
+    private LatFunction latFunction;
+
+    private String dateString;
+
+    @Setup
+    public void setup() {
+        udfTimePeriodFunction = new UdfTimePeriodFunction();
+        latFunction = new LatFunction();
+        dateString = DateUtils.now();
+    }
+
+    @Benchmark
+    public String udfTimePeriod() {
+        return udfTimePeriodFunction.eval("couponId");
+    }
+
+    @Benchmark
+    public String legacyUdfTimePeriod() {
+        return legacyMatchTimePeriod(DateUtils.now());
+    }
+
+    @Benchmark
+    public String lat() {
+        return latFunction.eval(dateString);
+    }
+
+    @Benchmark
+    public String legacyLat() {
+        return legacyMatchTimePeriod(dateString);
+    }
+
+    private static String legacyMatchTimePeriod(String dateString) {
+        Date date = DateUtils.toDate(dateString, PATTERN_YYYY_MM_DD_HH_MM_SS);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        int minute = calendar.get(Calendar.MINUTE);
+        return minute % 2 == 0 ? "0" : "1";
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.kunghsu.benchmarks.flinkkafka;
+
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import com.kunghsu.apache.flink.flinkkafka.operators.key.TradeIdKeySelector;
+import com.kunghsu.apache.flink.flinkkafka.task.MoreKafkaSourceDemo4ByMapStateTask;
+import com.kunghsu.common.utils.JacksonUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.RichFlatMapFunction;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.StateTtlConfig;
+import org.apache.flink.api.common.time.Time;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.contrib.streaming.state.RocksDBStateBackend;
+import org.apache.flink.runtime.state.memory.MemoryStateBackend;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
+import org.apache.flink.util.Collector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tradeId关联的状态访问：ValueState<TradeCorrelationState> 对比 原来只放一个"msgId"键的MapState<String, String>
+ * 分别在heap(MemoryStateBackend)和RocksDB上跑
+ *
+ * 每次调用在本地环境跑一个完整的小作业：
+ * 前keys条是topic1（带msgId），之后的都是topic2，按tradeId轮流访问，每条topic2都要读一次状态
+ * 作业启动的开销两种写法一样，对比看差值
+ *
+ * 运行：java -jar target/benchmarks.jar TradeCorrelationStateBenchmark
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TradeCorrelationStateBenchmark {
+
+    @Param({"heap", "rocksdb"})
+    public String backend;
+
+    @Param({"1000000"})
+    public long records;
+
+    @Param({"10000"})
+    public int keys;
+
+    private File rocksDbDir;
+
+    @Setup
+    public void setup() throws Exception {
+        rocksDbDir = Files.createTempDirectory("tradeCorrelationBenchmark").toFile();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(rocksDbDir);
+    }
+
+    @Benchmark
+    public void valueState() throws Exception {
+        run(new MoreKafkaSourceDemo4ByMapStateTask.MyRichFlatMapFunction());
+    }
+
+    @Benchmark
+    public void legacyMapState() throws Exception {
+        run(new LegacyMapStateFlatMapFunction());
+    }
+
+    private void run(RichFlatMapFunction<FlinkTopicMsg, String> function) throws Exception {
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(1);
+        if ("rocksdb".equals(backend)) {
+            env.setStateBackend(new RocksDBStateBackend(rocksDbDir.toURI().toString()));
+        } else {
+            env.setStateBackend(new MemoryStateBackend());
+        }
+        env.generateSequence(0, records - 1)
+                .map(new TopicMsgGenerator(keys))
+                .keyBy(new TradeIdKeySelector())
+                .flatMap(function)
+                .addSink(new DiscardingSink<>());
+        env.execute("TradeCorrelationStateBenchmark");
+    }
+
+    /**
+     * 前keys条是topic1，之后的是topic2
+     */
+    public static class TopicMsgGenerator implements MapFunction<Long, FlinkTopicMsg> {
+
+        private final int keys;
+
+        public TopicMsgGenerator(int keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public FlinkTopicMsg map(Long value) throws Exception {
+            FlinkTopicMsg flinkTopicMsg = new FlinkTopicMsg();
+            flinkTopicMsg.setTradeId("trade-" + (value % keys));
+            if (value < keys) {
+                flinkTopicMsg.setMsgId("msg-" + value);
+            } else {
+                flinkTopicMsg.setStatusCode(String.valueOf((char) ('A' + value % 26)));
+            }
+            return flinkTopicMsg;
+        }
+    }
+
+    /**
+     * 改造前的写法，原样保留用来做对比
+     */
+    public static class LegacyMapStateFlatMapFunction extends RichFlatMapFunction<FlinkTopicMsg, String> {
+
+        private MapState<String, String> mapState;
+
+        @Override
+        public void open(Configuration parameters) throws Exception {
+            super.open(parameters);
+            StateTtlConfig ttlConfig = StateTtlConfig
+                    .newBuilder(Time.seconds(10))
+                    .setUpdateType(StateTtlConfig.UpdateType.OnCreateAndWrite)
+                    .setStateVisibility(StateTtlConfig.StateVisibility.NeverReturnExpired)
+                    .build();
+            MapStateDescriptor descriptor = new MapStateDescriptor("MapDescriptor", String.class, String.class);
+            descriptor.enableTimeToLive(ttlConfig);
+            mapState = getRuntimeContext().getMapState(descriptor);
+        }
+
+        @Override
+        public void flatMap(FlinkTopicMsg flinkTopicMsg, Collector<String> out) throws Exception {
+            if (StringUtils.isNotEmpty(flinkTopicMsg.getMsgId())){
+                mapState.put("msgId", flinkTopicMsg.getMsgId());
+            }else {
+                String msgId = mapState.get("msgId");
+                if (StringUtils.isEmpty(msgId)){
+                    return;
+                }
+                Map<String, String> resultMap = new HashMap<>();
+                resultMap.put("msgId", msgId);
+                resultMap.put("statusCode", flinkTopicMsg.getStatusCode());
+                out.collect(JacksonUtils.toJSONString(resultMap));
+            }
+        }
+    }
+
+}
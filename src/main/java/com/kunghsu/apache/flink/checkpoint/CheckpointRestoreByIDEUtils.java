@@ -1,9 +1,12 @@
 package com.kunghsu.apache.flink.checkpoint;
 
+import org.apache.flink.api.common.JobExecutionResult;
+import org.apache.flink.api.common.JobID;
 import org.apache.flink.client.program.ClusterClient;
 import org.apache.flink.runtime.instance.SlotSharingGroupId;
 import org.apache.flink.runtime.jobgraph.JobGraph;
 import org.apache.flink.runtime.jobgraph.JobVertex;
+import org.apache.flink.runtime.jobmaster.JobResult;
 import org.apache.flink.runtime.jobgraph.SavepointRestoreSettings;
 import org.apache.flink.runtime.testutils.MiniClusterResourceConfiguration;
 import org.apache.flink.streaming.api.graph.StreamGraph;
@@ -40,6 +43,29 @@ public class CheckpointRestoreByIDEUtils {
         clusterClient.submitJob(jobGraph).get();
     }
 
+    /**
+     * 提交到 MiniCluster 并等待任务结束，结束后关闭 MiniCluster
+     * 适合有界的任务，例如压测
+     *
+     * @param streamGraph
+     * @return 任务执行结果，任务失败时抛出异常
+     * @throws Exception
+     */
+    public static JobExecutionResult runUntilFinished(@Nonnull StreamGraph streamGraph) throws Exception {
+        JobGraph jobGraph = streamGraph.getJobGraph();
+        int slotNum = getSlotNum(jobGraph);
+        MiniClusterWithClientResource cluster = createCluster(slotNum);
+        cluster.before();
+        try {
+            ClusterClient<?> clusterClient = cluster.getClusterClient();
+            JobID jobId = clusterClient.submitJob(jobGraph).get();
+            JobResult jobResult = clusterClient.requestJobResult(jobId).get();
+            return jobResult.toJobExecutionResult(Thread.currentThread().getContextClassLoader());
+        } finally {
+            cluster.after();
+        }
+    }
+
     private static int getSlotNum(JobGraph jobGraph) {
         // 保存每个 SlotSharingGroup 需要的 slot 个数
         HashMap<SlotSharingGroupId, Integer> map = new HashMap<>();
@@ -62,12 +88,16 @@ public class CheckpointRestoreByIDEUtils {
     }
 
     private static ClusterClient<?> initCluster(int slotNum) throws Exception {
-        MiniClusterWithClientResource cluster = new MiniClusterWithClientResource(
+        MiniClusterWithClientResource cluster = createCluster(slotNum);
+        cluster.before();
+        return cluster.getClusterClient();
+    }
+
+    private static MiniClusterWithClientResource createCluster(int slotNum) {
+        return new MiniClusterWithClientResource(
                 new MiniClusterResourceConfiguration.Builder()
                         .setNumberSlotsPerTaskManager(slotNum)
                         .build());
-        cluster.before();
-        return cluster.getClusterClient();
     }
 
 }
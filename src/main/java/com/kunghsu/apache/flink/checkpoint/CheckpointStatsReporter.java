@@ -0,0 +1,162 @@
+package com.kunghsu.apache.flink.checkpoint;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时从flink的REST接口取最近一次完成的checkpoint，按算子打印：
+ * 对齐时间（各subtask的最大值）、对齐期间缓存的数据量、非对齐checkpoint持久化的在途数据量、状态大小、端到端耗时
+ *
+ * 用来判断checkpoint慢在哪个算子：对齐时间长说明barrier排在反压的数据后面，persisted大说明在途数据多
+ * 同时打印整个checkpoint的端到端耗时，作为CheckpointUtil.setUnalignedCheckpoint的measuredCheckpointDurationMillis参考
+ *
+ * 按作业名找作业，所以可以在env.execute之前启动
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CheckpointStatsReporter implements Closeable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CheckpointStatsReporter.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int HTTP_TIMEOUT_MILLIS = 5000;
+
+    private final String restAddress;
+
+    private final String jobName;
+
+    private final long intervalMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private String jobId;
+
+    private long lastReportedCheckpointId = -1L;
+
+    /**
+     * @param restAddress 例如 http://localhost:8081
+     * @param jobName env.execute(jobName)里的作业名
+     * @param intervalMillis 多久取一次
+     */
+    public CheckpointStatsReporter(String restAddress, String jobName, long intervalMillis) {
+        this.restAddress = restAddress.endsWith("/") ? restAddress.substring(0, restAddress.length() - 1) : restAddress;
+        this.jobName = jobName;
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-stats-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CheckpointStatsReporter start() {
+        scheduler.scheduleWithFixedDelay(this::reportSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void reportSafely() {
+        try {
+            report();
+        } catch (Exception e) {
+            //作业还没起来、REST服务不可用时不影响作业本身
+            LOGGER.debug("获取checkpoint统计失败，jobName:{}", jobName, e);
+        }
+    }
+
+    private void report() throws IOException {
+
+        if (jobId == null) {
+            jobId = findRunningJobId();
+            if (jobId == null) {
+                return;
+            }
+        }
+
+        JsonNode latest = get("/jobs/" + jobId + "/checkpoints").path("latest").path("completed");
+        if (latest.isMissingNode() || latest.isNull()) {
+            return;
+        }
+        long checkpointId = latest.path("id").asLong();
+        if (checkpointId == lastReportedCheckpointId) {
+            return;
+        }
+        lastReportedCheckpointId = checkpointId;
+
+        Map<String, String> vertexNames = new HashMap<>();
+        for (JsonNode vertex : get("/jobs/" + jobId).path("vertices")) {
+            vertexNames.put(vertex.path("id").asText(), vertex.path("name").asText());
+        }
+
+        JsonNode details = get("/jobs/" + jobId + "/checkpoints/details/" + checkpointId);
+        LOGGER.info("checkpoint:{} 端到端耗时:{}ms 状态大小:{} 在途数据持久化:{} 对齐缓存:{}",
+                checkpointId,
+                details.path("end_to_end_duration").asLong(),
+                details.path("state_size").asLong(),
+                details.path("persisted_data").asLong(),
+                details.path("alignment_buffered").asLong());
+
+        JsonNode tasks = details.path("tasks");
+        tasks.fieldNames().forEachRemaining(vertexId -> {
+            JsonNode task = tasks.path(vertexId);
+            long maxAlignmentMillis = -1L;
+            try {
+                maxAlignmentMillis = get("/jobs/" + jobId + "/checkpoints/details/" + checkpointId + "/subtasks/" + vertexId)
+                        .path("summary").path("alignment").path("duration").path("max").asLong(-1L);
+            } catch (IOException e) {
+                LOGGER.debug("获取subtask统计失败，vertexId:{}", vertexId, e);
+            }
+            LOGGER.info("checkpoint:{} 算子:{} 对齐时间(max):{}ms 端到端耗时:{}ms 状态大小:{} 在途数据持久化:{} 对齐缓存:{}",
+                    checkpointId,
+                    vertexNames.getOrDefault(vertexId, vertexId),
+                    maxAlignmentMillis,
+                    task.path("end_to_end_duration").asLong(),
+                    task.path("state_size").asLong(),
+                    task.path("persisted_data").asLong(),
+                    task.path("alignment_buffered").asLong());
+        });
+    }
+
+    private String findRunningJobId() throws IOException {
+        for (JsonNode job : get("/jobs/overview").path("jobs")) {
+            if (jobName.equals(job.path("name").asText()) && "RUNNING".equals(job.path("state").asText())) {
+                return job.path("jid").asText();
+            }
+        }
+        return null;
+    }
+
+    private JsonNode get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(restAddress + path).openConnection();
+        connection.setConnectTimeout(HTTP_TIMEOUT_MILLIS);
+        connection.setReadTimeout(HTTP_TIMEOUT_MILLIS);
+        try (InputStream inputStream = connection.getInputStream()) {
+            return MAPPER.readTree(IOUtils.toString(inputStream, StandardCharsets.UTF_8));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.kunghsu.apache.flink.checkpoint;
 
-import org.apache.flink.contrib.streaming.state.PredefinedOptions;
+import org.apache.flink.api.common.state.StateTtlConfig;
+import org.apache.flink.api.common.time.Time;
+import org.apache.flink.configuration.Configuration;
 import org.apache.flink.contrib.streaming.state.RocksDBStateBackend;
 import org.apache.flink.runtime.state.StateBackend;
 import org.apache.flink.runtime.state.filesystem.FsStateBackend;
@@ -17,15 +19,50 @@ import java.util.concurrent.TimeUnit;
 public class CheckpointUtil {
 
     private static final boolean ENABLE_INCREMENTAL_CHECKPOINT = true;
-    private static final int NUMBER_OF_TRANSFER_THREADS = 3;
 
     /**
-     * 设置状态后端为 RocksDBStateBackend
+     * 托管内存里高优先级（索引、过滤器块）的比例
+     */
+    private static final double HIGH_PRIORITY_POOL_RATIO = 0.1;
+
+    /**
+     * 压缩时每处理多少条记录刷新一次当前时间，用于TTL过期判断
+     */
+    private static final long TTL_COMPACT_FILTER_QUERY_TIME_AFTER_ENTRIES = 1000L;
+
+    /**
+     * 非对齐checkpoint：间隔 = 实测耗时 * 这个倍数，保证大部分时间不在做checkpoint
+     */
+    private static final int UNALIGNED_INTERVAL_FACTOR = 3;
+
+    private static final long UNALIGNED_MIN_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * 非对齐checkpoint：超时 = 实测耗时 * 这个倍数，最少1分钟
+     */
+    private static final int UNALIGNED_TIMEOUT_FACTOR = 10;
+
+    private static final long UNALIGNED_MIN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 设置状态后端为 RocksDBStateBackend，机械盘配置
      *
      * @param env env
      * @throws IOException
      */
     public static void setRocksDBStateBackend(StreamExecutionEnvironment env) throws IOException {
+        setRocksDBStateBackend(env, RocksDBProfile.SPINNING_DISK);
+    }
+
+    /**
+     * 设置状态后端为 RocksDBStateBackend
+     * block cache和写缓冲都从托管内存里分（taskmanager.memory.managed.size/fraction），按profile的比例分配
+     *
+     * @param env env
+     * @param profile 磁盘类型
+     * @throws IOException
+     */
+    public static void setRocksDBStateBackend(StreamExecutionEnvironment env, RocksDBProfile profile) throws IOException {
 
         env.enableCheckpointing(TimeUnit.MINUTES.toMillis(10));
 
@@ -37,12 +74,33 @@ public class CheckpointUtil {
 
         RocksDBStateBackend rocksDBStateBackend = new RocksDBStateBackend(
                 "hdfs:///user/flink/checkpoints", ENABLE_INCREMENTAL_CHECKPOINT);
-        rocksDBStateBackend.setNumberOfTransferThreads(NUMBER_OF_TRANSFER_THREADS);
-        rocksDBStateBackend.setPredefinedOptions(PredefinedOptions.SPINNING_DISK_OPTIMIZED_HIGH_MEM);
-//        rocksDBStateBackend.enableTtlCompactionFilter(); // enabled by default
+        rocksDBStateBackend.setNumberOfTransferThreads(profile.getNumberOfTransferThreads());
+        rocksDBStateBackend.setPredefinedOptions(profile.getPredefinedOptions());
+        rocksDBStateBackend.setRocksDBOptions(new TunedRocksDBOptionsFactory(profile));
+        rocksDBStateBackend.getMemoryConfiguration().setUseManagedMemory(true);
+        rocksDBStateBackend.getMemoryConfiguration().setWriteBufferRatio(profile.getWriteBufferRatio());
+        rocksDBStateBackend.getMemoryConfiguration().setHighPriorityPoolRatio(HIGH_PRIORITY_POOL_RATIO);
+//        rocksDBStateBackend.enableTtlCompactionFilter(); // enabled by default，状态上还要配置cleanupInRocksdbCompactFilter，见ttlConfig
         env.setStateBackend((StateBackend) rocksDBStateBackend);
     }
 
+    /**
+     * 状态TTL配置，过期的状态在RocksDB压缩时清理掉，不用等到再次访问
+     * 窗口、发券请求之类的短生命周期状态用这个，否则没有再被访问的key会一直留在磁盘上
+     * 堆内状态后端会忽略压缩清理，只在访问时判断过期
+     *
+     * @param ttl 过期时间
+     * @return
+     */
+    public static StateTtlConfig ttlConfig(Time ttl) {
+        return StateTtlConfig
+                .newBuilder(ttl)
+                .setUpdateType(StateTtlConfig.UpdateType.OnCreateAndWrite)
+                .setStateVisibility(StateTtlConfig.StateVisibility.NeverReturnExpired)
+                .cleanupInRocksdbCompactFilter(TTL_COMPACT_FILTER_QUERY_TIME_AFTER_ENTRIES)
+                .build();
+    }
+
 
     /**
      * 设置状态后端为 FsStateBackend
@@ -68,6 +126,57 @@ public class CheckpointUtil {
         env.setStateBackend((StateBackend) new MemoryStateBackend());
     }
 
+    /**
+     * 反压拓扑用的Checkpoint配置：非对齐checkpoint，不设置 StateBackend
+     *
+     * 对齐checkpoint的barrier要排在反压的在途数据后面，下游算子处理慢时checkpoint会超时
+     * 非对齐checkpoint的barrier可以越过在途数据，在途数据一起存进checkpoint
+     * 要求EXACTLY_ONCE并且同时只有一个checkpoint，这里一起设置好
+     *
+     * 间隔、最小停顿、超时都按实测的checkpoint耗时推出来，不再写死：
+     * 间隔 = 耗时 * 3（最少1秒），最小停顿 = 耗时，超时 = 耗时 * 10（最少1分钟）
+     * 实测耗时取web界面/REST接口里最近checkpoint端到端耗时的高位值，CheckpointStatsReporter也会打印
+     *
+     * 在途数据越少，非对齐checkpoint越小、越快，网络缓冲的配置见unalignedNetworkConfiguration
+     *
+     * @param env env
+     * @param measuredCheckpointDurationMillis 实测的checkpoint耗时
+     */
+    public static void setUnalignedCheckpoint(StreamExecutionEnvironment env, long measuredCheckpointDurationMillis) {
+
+        if (measuredCheckpointDurationMillis <= 0) {
+            throw new IllegalArgumentException("measuredCheckpointDurationMillis必须大于0");
+        }
+        long interval = Math.max(measuredCheckpointDurationMillis * UNALIGNED_INTERVAL_FACTOR, UNALIGNED_MIN_INTERVAL_MILLIS);
+        long timeout = Math.max(measuredCheckpointDurationMillis * UNALIGNED_TIMEOUT_FACTOR, UNALIGNED_MIN_TIMEOUT_MILLIS);
+
+        env.enableCheckpointing(interval, CheckpointingMode.EXACTLY_ONCE);
+
+        CheckpointConfig checkpointConf = env.getCheckpointConfig();
+        checkpointConf.enableUnalignedCheckpoints();
+        checkpointConf.setMaxConcurrentCheckpoints(1);
+        checkpointConf.setMinPauseBetweenCheckpoints(measuredCheckpointDurationMillis);
+        checkpointConf.setCheckpointTimeout(timeout);
+        checkpointConf.enableExternalizedCheckpoints(CheckpointConfig.ExternalizedCheckpointCleanup.RETAIN_ON_CANCELLATION);
+    }
+
+    /**
+     * 反压拓扑的网络缓冲配置（TaskManager级别，需要放到flink-conf.yaml，或者本地运行时传给createLocalEnvironment）
+     *
+     * 默认每个channel 2个独占缓冲、每个gate 8个浮动缓冲、每个缓冲32K，反压时这些缓冲都是满的，
+     * 非对齐checkpoint要把它们全部存下来，对齐checkpoint的barrier要等它们全部处理完
+     * 这里减少浮动缓冲、缩小缓冲大小，在途数据少了，吞吐基本不受影响（瓶颈在下游算子，不在网络）
+     *
+     * @return
+     */
+    public static Configuration unalignedNetworkConfiguration() {
+        Configuration configuration = new Configuration();
+        configuration.setString("taskmanager.network.memory.buffers-per-channel", "2");
+        configuration.setString("taskmanager.network.memory.floating-buffers-per-gate", "2");
+        configuration.setString("taskmanager.memory.segment-size", "16kb");
+        return configuration;
+    }
+
     /**
      * Checkpoint 参数相关配置，but 不设置 StateBackend，即：读取 flink-conf.yaml 文件的配置
      *
@@ -0,0 +1,85 @@
+package com.kunghsu.apache.flink.checkpoint;
+
+import org.apache.flink.contrib.streaming.state.PredefinedOptions;
+
+/**
+ * RocksDB调优预设，配合TunedRocksDBOptionsFactory使用
+ *
+ * 发券任务的状态主要是CouponRequestCompletionFunction按请求暂存的进度（ValueState）和明细（ListState、MapState），
+ * 请求输出后马上清掉；另外还有带TTL的MapState（见CheckpointUtil.ttlConfig），过期后在compaction时清理
+ * 特点是写多、存活时间短、按key点查，所以几个预设都打开了布隆过滤器
+ * 写缓冲在托管内存里的占比：机械盘保持默认的0.5，SSD、NVMe写得快，调到0.6，让memtable多攒一些再flush
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public enum RocksDBProfile {
+
+    /**
+     * 机械盘，和原来CheckpointUtil写死的配置一致
+     */
+    SPINNING_DISK(PredefinedOptions.SPINNING_DISK_OPTIMIZED_HIGH_MEM, 3, 2, 0.5),
+
+    /**
+     * SATA/SAS SSD
+     */
+    SSD(PredefinedOptions.FLASH_SSD_OPTIMIZED, 4, 4, 0.6),
+
+    /**
+     * NVMe SSD，随机读写很快，瓶颈在CPU，多给后台线程
+     */
+    NVME(PredefinedOptions.FLASH_SSD_OPTIMIZED, 8, 8, 0.6);
+
+    /**
+     * flink预置的RocksDB参数，TunedRocksDBOptionsFactory在此基础上再调整
+     */
+    private final PredefinedOptions predefinedOptions;
+
+    /**
+     * checkpoint上传、恢复下载文件的线程数
+     */
+    private final int numberOfTransferThreads;
+
+    /**
+     * flush和compaction的后台线程数
+     */
+    private final int maxBackgroundJobs;
+
+    /**
+     * 托管内存里给写缓冲(memtable)的比例，其余给block cache
+     */
+    private final double writeBufferRatio;
+
+    RocksDBProfile(PredefinedOptions predefinedOptions, int numberOfTransferThreads, int maxBackgroundJobs,
+                   double writeBufferRatio) {
+        this.predefinedOptions = predefinedOptions;
+        this.numberOfTransferThreads = numberOfTransferThreads;
+        this.maxBackgroundJobs = maxBackgroundJobs;
+        this.writeBufferRatio = writeBufferRatio;
+    }
+
+    public PredefinedOptions getPredefinedOptions() {
+        return predefinedOptions;
+    }
+
+    public int getNumberOfTransferThreads() {
+        return numberOfTransferThreads;
+    }
+
+    public int getMaxBackgroundJobs() {
+        return maxBackgroundJobs;
+    }
+
+    public double getWriteBufferRatio() {
+        return writeBufferRatio;
+    }
+
+    /**
+     * 是否是闪存，闪存上用动态层级大小，减少短生命周期状态的空间放大
+     */
+    public boolean isFlash() {
+        return this != SPINNING_DISK;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.kunghsu.apache.flink.checkpoint;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.ReadableConfig;
+import org.apache.flink.contrib.streaming.state.ConfigurableRocksDBOptionsFactory;
+import org.apache.flink.contrib.streaming.state.RocksDBNativeMetricOptions;
+import org.apache.flink.contrib.streaming.state.RocksDBOptionsFactory;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.TableFormatConfig;
+
+import java.util.Collection;
+
+/**
+ * 按RocksDBProfile调整RocksDB参数
+ *
+ * 1.后台线程数按磁盘类型设置
+ * 2.布隆过滤器：ValueState、窗口状态基本都是按key点查，没有过滤器时每次查不到都要读sst文件
+ * 3.闪存上打开动态层级大小
+ * 4.把RocksDB的原生指标转发到flink的指标系统（memtable、sst大小、估算key数、compaction积压等）
+ *
+ * block cache和写缓冲的大小不在这里设置，由flink的托管内存统一管理（见CheckpointUtil.setRocksDBStateBackend），
+ * 这里只在flink预置的BlockBasedTableConfig上加过滤器，flink会再把共享的cache设置进去
+ *
+ * 布隆过滤器的位数可以在flink-conf.yaml里覆盖：
+ * state.backend.rocksdb.tuned.bloom-filter-bits-per-key: 10（0表示不用布隆过滤器）
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class TunedRocksDBOptionsFactory implements ConfigurableRocksDBOptionsFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final ConfigOption<Integer> BLOOM_FILTER_BITS_PER_KEY = ConfigOptions
+            .key("state.backend.rocksdb.tuned.bloom-filter-bits-per-key")
+            .intType()
+            .noDefaultValue()
+            .withDescription("布隆过滤器每个key占多少位，0表示不用布隆过滤器");
+
+    /**
+     * 每个key 10位，误判率约1%
+     */
+    public static final int DEFAULT_BLOOM_FILTER_BITS_PER_KEY = 10;
+
+    private final RocksDBProfile profile;
+
+    private final int bloomFilterBitsPerKey;
+
+    public TunedRocksDBOptionsFactory(RocksDBProfile profile) {
+        this(profile, DEFAULT_BLOOM_FILTER_BITS_PER_KEY);
+    }
+
+    public TunedRocksDBOptionsFactory(RocksDBProfile profile, int bloomFilterBitsPerKey) {
+        if (bloomFilterBitsPerKey < 0) {
+            throw new IllegalArgumentException("bloomFilterBitsPerKey不能小于0");
+        }
+        this.profile = profile;
+        this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+    }
+
+    public RocksDBProfile getProfile() {
+        return profile;
+    }
+
+    @Override
+    public DBOptions createDBOptions(DBOptions currentOptions, Collection<AutoCloseable> handlesToClose) {
+        return currentOptions
+                .setMaxBackgroundJobs(profile.getMaxBackgroundJobs())
+                //不定期把统计信息打到RocksDB的LOG文件里，需要的指标走flink的指标系统
+                .setStatsDumpPeriodSec(0);
+    }
+
+    @Override
+    public ColumnFamilyOptions createColumnOptions(ColumnFamilyOptions currentOptions, Collection<AutoCloseable> handlesToClose) {
+        if (profile.isFlash()) {
+            currentOptions.setLevelCompactionDynamicLevelBytes(true);
+        }
+        if (bloomFilterBitsPerKey > 0) {
+            //在预置的配置上加过滤器，不丢掉预置的block大小等参数
+            TableFormatConfig tableFormatConfig = currentOptions.tableFormatConfig();
+            BlockBasedTableConfig blockBasedTableConfig = tableFormatConfig instanceof BlockBasedTableConfig
+                    ? (BlockBasedTableConfig) tableFormatConfig : new BlockBasedTableConfig();
+            BloomFilter bloomFilter = new BloomFilter(bloomFilterBitsPerKey, false);
+            handlesToClose.add(bloomFilter);
+            blockBasedTableConfig.setFilter(bloomFilter);
+            currentOptions.setTableFormatConfig(blockBasedTableConfig);
+        }
+        return currentOptions;
+    }
+
+    @Override
+    public RocksDBNativeMetricOptions createNativeMetricsOptions(RocksDBNativeMetricOptions nativeMetricOptions) {
+        //内存
+        nativeMetricOptions.enableCurSizeAllMemTables();
+        nativeMetricOptions.enableSizeAllMemTables();
+        nativeMetricOptions.enableBlockCacheUsage();
+        nativeMetricOptions.enableBlockCachePinnedUsage();
+        nativeMetricOptions.enableBlockCacheCapacity();
+        //数据量
+        nativeMetricOptions.enableEstimateNumKeys();
+        nativeMetricOptions.enableEstimateLiveDataSize();
+        nativeMetricOptions.enableTotalSstFilesSize();
+        //flush、compaction是否跟得上
+        nativeMetricOptions.enableMemTableFlushPending();
+        nativeMetricOptions.enableNumRunningFlushes();
+        nativeMetricOptions.enableCompactionPending();
+        nativeMetricOptions.enableNumRunningCompactions();
+        nativeMetricOptions.enableEstimatePendingCompactionBytes();
+        nativeMetricOptions.enableBackgroundErrors();
+        return nativeMetricOptions;
+    }
+
+    @Override
+    public RocksDBOptionsFactory configure(ReadableConfig configuration) {
+        int configuredBits = configuration.getOptional(BLOOM_FILTER_BITS_PER_KEY).orElse(bloomFilterBitsPerKey);
+        return new TunedRocksDBOptionsFactory(profile, configuredBits);
+    }
+
+    @Override
+    public String toString() {
+        return "TunedRocksDBOptionsFactory{" +
+                "profile=" + profile +
+                ", bloomFilterBitsPerKey=" + bloomFilterBitsPerKey +
+                '}';
+    }
+
+}
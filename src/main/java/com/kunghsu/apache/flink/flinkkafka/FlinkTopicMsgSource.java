@@ -0,0 +1,91 @@
+package com.kunghsu.apache.flink.flinkkafka;
+
+import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
+import com.kunghsu.apache.flink.flinkkafka.config.KafkaConsumerConfig;
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import com.kunghsu.apache.flink.flinkkafka.operators.map.FlinkTopicMsgParseFunction;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
+
+import java.time.Duration;
+
+/**
+ * 解析一次的输入源
+ *
+ * kafka按byte[]读进来，紧接着解析成FlinkTopicMsg，tradeId和eventTime在这一步就准备好了
+ * 下游的keyBy(TradeIdKeySelector)、时间戳分配、flatMap/window/join都直接用对象，一条消息只解析一次
+ * （原来keyBy、时间戳分配、水位线、业务函数各解析一遍String，一条消息最多要解析4次）
+ *
+ * 解析失败或者没有tradeId的原始消息，从返回流的旁路 MyJsonDeserializationSchema.PARSE_FAILURE_TAG 拿
+ *
+ * eventTime的例子用带WatermarkStrategy的重载：
+ * 时间戳和水位线直接在kafka consumer里按分区生成，union、keyBy之后取各分区的最小值，
+ * 不再在union之后用AssignerWithPunctuatedWatermarks/BoundedOutOfOrdernessTimestampExtractor统一分配
+ * （那样一个分区的乱序会被当成整体的乱序，某个topic没有数据时也分不出来）
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/8
+ * desc:
+*/
+public class FlinkTopicMsgSource {
+
+    /**
+     * 创建某个topic的输入流
+     *
+     * @param env
+     * @param topic
+     * @return
+     */
+    public static SingleOutputStreamOperator<FlinkTopicMsg> fromTopic(StreamExecutionEnvironment env, String topic) {
+        return env.addSource(FlinkKafkaConfig.getFlinkKafkaBytesConsumer(topic))
+                .name("kafka-" + topic)
+                .process(new FlinkTopicMsgParseFunction())
+                .name("parse-" + topic);
+    }
+
+    /**
+     * 创建某个topic的输入流，时间戳和水位线在kafka consumer里按分区生成
+     *
+     * 分配时间戳要先拿到createTime，所以这里在consumer里直接反序列化成FlinkTopicMsg（MyJsonDeserializationSchema），
+     * 解析失败的消息只计数、跳过，拿不到旁路；没有tradeId的消息紧接着过滤掉
+     *
+     * @param env
+     * @param topic
+     * @param watermarkStrategy 一般用eventTimeWatermarks(...)
+     * @return
+     */
+    public static SingleOutputStreamOperator<FlinkTopicMsg> fromTopic(StreamExecutionEnvironment env, String topic,
+                                                                    WatermarkStrategy<FlinkTopicMsg> watermarkStrategy) {
+        FlinkKafkaConsumer<FlinkTopicMsg> consumer = KafkaConsumerConfig.defaults()
+                .createConsumer(topic, new MyJsonDeserializationSchema());
+        consumer.assignTimestampsAndWatermarks(watermarkStrategy);
+        return env.addSource(consumer)
+                .name("kafka-" + topic)
+                .filter(flinkTopicMsg -> StringUtils.isNotEmpty(flinkTopicMsg.getTradeId()))
+                .name("filter-" + topic);
+    }
+
+    /**
+     * 按createTime分配时间戳的水位线策略
+     *
+     * 水位线 = 已见到的最大时间戳 - maxOutOfOrderness，按env.getConfig().getAutoWatermarkInterval()周期性发出，不是每条都发
+     * 一个分区超过idleTimeout没有数据就标记为空闲，不再拖住下游的水位线，有数据之后自动恢复
+     * 注意：所有分区都空闲时水位线也不会前进，最后一个窗口要等到有新数据才会触发
+     *
+     * 没有createTime的消息用kafka消息自带的时间戳
+     *
+     * @param maxOutOfOrderness 允许的乱序时间
+     * @param idleTimeout 多久没有数据算空闲
+     * @return
+     */
+    public static WatermarkStrategy<FlinkTopicMsg> eventTimeWatermarks(Duration maxOutOfOrderness, Duration idleTimeout) {
+        return WatermarkStrategy.<FlinkTopicMsg>forBoundedOutOfOrderness(maxOutOfOrderness)
+                .withTimestampAssigner((flinkTopicMsg, kafkaTimestamp) ->
+                        flinkTopicMsg.getEventTime() != Long.MIN_VALUE ? flinkTopicMsg.getEventTime() : kafkaTimestamp)
+                .withIdleness(idleTimeout);
+    }
+
+}
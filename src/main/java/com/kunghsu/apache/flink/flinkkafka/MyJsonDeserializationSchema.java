@@ -1,19 +1,88 @@
 package com.kunghsu.apache.flink.flinkkafka;
 
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
 import com.kunghsu.common.utils.JacksonUtils;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
-import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.util.OutputTag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * kafka消息直接反序列化成FlinkTopicMsg
+ *
+ * 用缓存的ObjectReader直接解析byte[]，不再先new String一次
+ * getProducedType声明成POJO，下游shuffle走PojoSerializer（原来返回的BasicTypeInfo.getInfoFor对POJO是null，会退化成Kryo）
+ *
+ * 解析失败的处理：
+ * 直接作为kafka consumer的schema时，失败的消息会被跳过，并计入parseFailures指标
+ * 需要拿到失败的原始消息时，consumer用RawBytesDeserializationSchema，再接FlinkTopicMsgParseFunction，
+ * 失败的消息从旁路输出PARSE_FAILURE_TAG拿
+ */
 public class MyJsonDeserializationSchema implements DeserializationSchema<FlinkTopicMsg> {
 
+    private final static Logger LOGGER = LoggerFactory.getLogger(MyJsonDeserializationSchema.class);
+
+    /**
+     * 解析失败的原始消息
+     */
+    public static final OutputTag<String> PARSE_FAILURE_TAG = new OutputTag<String>("flinkTopicMsg-parse-failure") {};
+
+    /**
+     * ObjectReader是线程安全的，全局共用一个
+     */
+    private static final ObjectReader READER = JacksonUtils.readerFor(FlinkTopicMsg.class);
+
+    private transient Counter parseFailures;
+
+    @Override
+    public void open(InitializationContext context) throws Exception {
+        parseFailures = context.getMetricGroup().counter("parseFailures");
+    }
+
     @Override
     public FlinkTopicMsg deserialize(byte[] message) throws IOException {
-        String string = new String(message, "UTF-8");
-        return JacksonUtils.toJavaObject(string, FlinkTopicMsg.class);
+
+        //tombstone（value为null）或者空消息，直接跳过，不算解析失败
+        if (message == null || message.length == 0) {
+            return null;
+        }
+        try {
+            return parse(message);
+        } catch (IOException e) {
+            if (parseFailures != null) {
+                parseFailures.inc();
+            }
+            LOGGER.warn("FlinkTopicMsg解析失败，跳过该消息:{}", new String(message, StandardCharsets.UTF_8), e);
+            return null;
+        }
+    }
+
+    /**
+     * 解析一条消息
+     *
+     * @param message
+     * @return 不会返回null，eventTime已经按createTime算好
+     * @throws IOException 格式不对或者内容为空
+     */
+    public static FlinkTopicMsg parse(byte[] message) throws IOException {
+        if (message == null || message.length == 0) {
+            throw new IOException("消息内容为空");
+        }
+        FlinkTopicMsg flinkTopicMsg = READER.readValue(message);
+        if (flinkTopicMsg == null) {
+            throw new IOException("消息内容为null");
+        }
+        if (flinkTopicMsg.getCreateTime() != null) {
+            flinkTopicMsg.setEventTime(flinkTopicMsg.getCreateTime().getTime());
+        }
+        return flinkTopicMsg;
     }
 
     @Override
@@ -23,6 +92,6 @@ public class MyJsonDeserializationSchema implements DeserializationSchema<FlinkT
 
     @Override
     public TypeInformation<FlinkTopicMsg> getProducedType() {
-        return BasicTypeInfo.getInfoFor(FlinkTopicMsg.class);
+        return Types.POJO(FlinkTopicMsg.class);
     }
 }
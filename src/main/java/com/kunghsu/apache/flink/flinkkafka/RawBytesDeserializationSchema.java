@@ -0,0 +1,14 @@
+package com.kunghsu.apache.flink.flinkkafka;
+
+import org.apache.flink.api.common.serialization.AbstractDeserializationSchema;
+
+/**
+ * 原样输出kafka消息的byte[]，解析放到后面的算子里做
+ */
+public class RawBytesDeserializationSchema extends AbstractDeserializationSchema<byte[]> {
+
+    @Override
+    public byte[] deserialize(byte[] message) {
+        return message;
+    }
+}
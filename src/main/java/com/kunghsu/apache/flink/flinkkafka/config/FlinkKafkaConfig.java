@@ -1,17 +1,40 @@
 package com.kunghsu.apache.flink.flinkkafka.config;
 
 import com.kunghsu.apache.flink.flinkkafka.MyJsonDeserializationSchema;
+import com.kunghsu.apache.flink.flinkkafka.RawBytesDeserializationSchema;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.serialization.SimpleStringSchema;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
+import org.apache.flink.streaming.connectors.kafka.KafkaSerializationSchema;
 import org.apache.flink.streaming.connectors.kafka.internals.KeyedSerializationSchemaWrapper;
 
 import java.util.List;
 import java.util.Properties;
 
+/**
+ * consumer的参数统一由KafkaConsumerConfig生成，这里的方法都用默认配置（low-latency）
+ * 需要从作业参数调整时，直接用KafkaConsumerConfig.fromParameters(...).createConsumer(...)
+ */
 public class FlinkKafkaConfig {
 
+    /**
+     * producer默认攒批参数
+     * 一个请求可能输出几十万条消息，默认的linger.ms=0、batch.size=16K基本是一条一发
+     */
+    public static final int DEFAULT_LINGER_MS = 20;
+
+    public static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+
+    public static final String DEFAULT_COMPRESSION_TYPE = "lz4";
+
+    /**
+     * EXACTLY_ONCE的事务超时
+     * FlinkKafkaProducer默认是1小时，超过broker的transaction.max.timeout.ms（默认15分钟），初始化事务时直接报错
+     * 这里取broker的上限；checkpoint间隔加上故障恢复时间超过它时，未提交的事务会被broker回滚，数据丢失
+     */
+    public static final int DEFAULT_TRANSACTION_TIMEOUT_MS = 15 * 60 * 1000;
+
     /**
      * TODO 支持自定义的类型
      * @param topic
@@ -20,49 +43,31 @@ public class FlinkKafkaConfig {
      */
     public static <T> FlinkKafkaConsumer<T> getFlinkKafkaConsumer2(String topic){
 
-        Properties properties = new Properties();
-        properties.setProperty("bootstrap.servers", "localhost:9092");
-        properties.setProperty("group.id", "flinksharedemo");
-
         MyJsonDeserializationSchema schema = new MyJsonDeserializationSchema();
+        return KafkaConsumerConfig.defaults().createConsumer(topic, (DeserializationSchema<T>) schema);
 
-        FlinkKafkaConsumer<T> myConsumer = new FlinkKafkaConsumer<T>(topic, (DeserializationSchema<T>) schema, properties);
-        myConsumer.setStartFromGroupOffsets(); // 默认的方法（消费过的不会再被消费）
-//        myConsumer.setStartFromEarliest();     // 尽可能从最早的记录开始(该消费者组拉取过的，还是会再次消费)
-//        myConsumer.setStartFromLatest();       // 从最新的记录开始
-//        myConsumer.setStartFromTimestamp(...); // 从指定的时间开始（毫秒）
-        return myConsumer;
+    }
+
+    /**
+     * 原样输出byte[]，配合FlinkTopicMsgParseFunction使用，解析失败的消息可以从旁路拿到
+     * @param topic
+     * @return
+     */
+    public static FlinkKafkaConsumer<byte[]> getFlinkKafkaBytesConsumer(String topic){
+
+        return KafkaConsumerConfig.defaults().createConsumer(topic, new RawBytesDeserializationSchema());
 
     }
 
     public static FlinkKafkaConsumer getFlinkKafkaConsumer(String topic){
 
-        Properties properties = new Properties();
-        properties.setProperty("bootstrap.servers", "localhost:9092");
-        properties.setProperty("group.id", "flinksharedemo");
-        properties.setProperty("max.poll.records", "1");
-
-        FlinkKafkaConsumer<String> myConsumer = new FlinkKafkaConsumer<String>(topic, new SimpleStringSchema(), properties);
-        myConsumer.setStartFromGroupOffsets(); // 默认的方法（消费过的不会再被消费）
-//        myConsumer.setStartFromEarliest();     // 尽可能从最早的记录开始(该消费者组拉取过的，还是会再次消费)
-//        myConsumer.setStartFromLatest();       // 从最新的记录开始
-//        myConsumer.setStartFromTimestamp(...); // 从指定的时间开始（毫秒）
-        return myConsumer;
+        return KafkaConsumerConfig.defaults().createConsumer(topic, new SimpleStringSchema());
 
     }
 
     public static FlinkKafkaConsumer getFlinkKafkaConsumer(List<String> topics){
 
-        Properties properties = new Properties();
-        properties.setProperty("bootstrap.servers", "localhost:9092");
-        properties.setProperty("group.id", "flinksharedemo");
-
-        FlinkKafkaConsumer<String> myConsumer = new FlinkKafkaConsumer<String>(topics, new SimpleStringSchema(), properties);
-        myConsumer.setStartFromGroupOffsets(); // 默认的方法（消费过的不会再被消费）
-//        myConsumer.setStartFromEarliest();     // 尽可能从最早的记录开始(该消费者组拉取过的，还是会再次消费)
-//        myConsumer.setStartFromLatest();       // 从最新的记录开始
-//        myConsumer.setStartFromTimestamp(...); // 从指定的时间开始（毫秒）
-        return myConsumer;
+        return KafkaConsumerConfig.defaults().createConsumer(topics, new SimpleStringSchema());
 
     }
 
@@ -70,7 +75,8 @@ public class FlinkKafkaConfig {
     public static FlinkKafkaProducer getFlinkKafkaProducer(String topic){
         //生产者配置
         Properties produceProperties = new Properties();
-        produceProperties.setProperty("bootstrap.servers", "localhost:9092");
+        produceProperties.setProperty("bootstrap.servers", KafkaConsumerConfig.DEFAULT_BOOTSTRAP_SERVERS);
+        produceProperties.setProperty("transaction.timeout.ms", String.valueOf(DEFAULT_TRANSACTION_TIMEOUT_MS));
 
         FlinkKafkaProducer<String> myProducer = new FlinkKafkaProducer<String>(
                 topic,                  // 目标 topic
@@ -80,4 +86,47 @@ public class FlinkKafkaConfig {
         return myProducer;
     }
 
+    /**
+     * 直接用KafkaSerializationSchema输出，不用先转成String，使用默认攒批参数
+     *
+     * @param bootstrapServers 一般和consumer的一致，KafkaConsumerConfig.getBootstrapServers()
+     * @param topic
+     * @param schema
+     * @return
+     */
+    public static <T> FlinkKafkaProducer<T> getFlinkKafkaProducer(String bootstrapServers, String topic,
+                                                                  KafkaSerializationSchema<T> schema){
+        return getFlinkKafkaProducer(bootstrapServers, topic, schema, DEFAULT_LINGER_MS, DEFAULT_BATCH_SIZE,
+                DEFAULT_COMPRESSION_TYPE);
+    }
+
+    /**
+     * 直接用KafkaSerializationSchema输出，不用先转成String
+     *
+     * @param bootstrapServers
+     * @param topic
+     * @param schema
+     * @param lingerMs 攒批最多等多久
+     * @param batchSize 每个分区一批最多多少字节
+     * @param compressionType none、gzip、snappy、lz4、zstd
+     * @return
+     */
+    public static <T> FlinkKafkaProducer<T> getFlinkKafkaProducer(String bootstrapServers, String topic,
+                                                                  KafkaSerializationSchema<T> schema,
+                                                                  int lingerMs, int batchSize, String compressionType){
+        //生产者配置
+        Properties produceProperties = new Properties();
+        produceProperties.setProperty("bootstrap.servers", bootstrapServers);
+        produceProperties.setProperty("linger.ms", String.valueOf(lingerMs));
+        produceProperties.setProperty("batch.size", String.valueOf(batchSize));
+        produceProperties.setProperty("compression.type", compressionType);
+        produceProperties.setProperty("transaction.timeout.ms", String.valueOf(DEFAULT_TRANSACTION_TIMEOUT_MS));
+
+        return new FlinkKafkaProducer<>(
+                topic,                  // 目标 topic
+                schema,                 // 序列化 schema
+                produceProperties,                  // producer 配置
+                FlinkKafkaProducer.Semantic.EXACTLY_ONCE); //容错
+    }
+
 }
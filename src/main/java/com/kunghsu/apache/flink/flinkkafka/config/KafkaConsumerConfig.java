@@ -0,0 +1,370 @@
+package com.kunghsu.apache.flink.flinkkafka.config;
+
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumerBase;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * kafka consumer配置
+ * 代替原来FlinkKafkaConfig、KafkaConsumerProducerConfig里各自写死的Properties（max.poll.records=1，每条消息都要和broker交互一次）
+ *
+ * 两种预设：
+ * low-latency：有数据就返回，每次poll的条数不多，适合demo和对延迟敏感的任务（不指定时默认用这个）
+ * high-throughput：broker攒够一定字节数再返回，每次poll的条数多，适合压测和追积压
+ * 在预设的基础上，每一项都可以单独覆盖
+ *
+ * 从作业参数加载（ParameterTool.fromArgs(args)），参数名：
+ * --kafka.profile low-latency|high-throughput
+ * --kafka.bootstrap.servers localhost:9092
+ * --kafka.group.id flinksharedemo
+ * --kafka.fetch.min.bytes 1
+ * --kafka.fetch.max.wait.ms 10
+ * --kafka.max.poll.records 100
+ * --kafka.partition.discovery.interval.ms 0（0表示不发现新分区）
+ * --kafka.start.position group-offsets|earliest|latest|timestamp
+ * --kafka.start.timestamp 毫秒，start.position为timestamp时必填
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class KafkaConsumerConfig {
+
+    public static final String DEFAULT_BOOTSTRAP_SERVERS = "localhost:9092";
+
+    public static final String DEFAULT_GROUP_ID = "flinksharedemo";
+
+    public static final String PARAM_PROFILE = "kafka.profile";
+    public static final String PARAM_BOOTSTRAP_SERVERS = "kafka.bootstrap.servers";
+    public static final String PARAM_GROUP_ID = "kafka.group.id";
+    public static final String PARAM_FETCH_MIN_BYTES = "kafka.fetch.min.bytes";
+    public static final String PARAM_FETCH_MAX_WAIT_MS = "kafka.fetch.max.wait.ms";
+    public static final String PARAM_MAX_POLL_RECORDS = "kafka.max.poll.records";
+    public static final String PARAM_PARTITION_DISCOVERY_INTERVAL_MS = "kafka.partition.discovery.interval.ms";
+    public static final String PARAM_START_POSITION = "kafka.start.position";
+    public static final String PARAM_START_TIMESTAMP = "kafka.start.timestamp";
+
+    private final String bootstrapServers;
+    private final String groupId;
+    private final int fetchMinBytes;
+    private final int fetchMaxWaitMs;
+    private final int maxPollRecords;
+    private final long partitionDiscoveryIntervalMs;
+    private final StartPosition startPosition;
+    private final long startTimestamp;
+
+    private KafkaConsumerConfig(Builder builder) {
+        this.bootstrapServers = builder.bootstrapServers;
+        this.groupId = builder.groupId;
+        this.fetchMinBytes = builder.fetchMinBytes;
+        this.fetchMaxWaitMs = builder.fetchMaxWaitMs;
+        this.maxPollRecords = builder.maxPollRecords;
+        this.partitionDiscoveryIntervalMs = builder.partitionDiscoveryIntervalMs;
+        this.startPosition = builder.startPosition;
+        this.startTimestamp = builder.startTimestamp;
+    }
+
+    /**
+     * 默认配置：low-latency，本地kafka，从消费组的offset开始
+     *
+     * @return
+     */
+    public static KafkaConsumerConfig defaults() {
+        return builder(Profile.LOW_LATENCY).build();
+    }
+
+    public static Builder builder(Profile profile) {
+        return new Builder(profile);
+    }
+
+    /**
+     * 从作业参数加载，没有指定的项用预设值
+     *
+     * @param params
+     * @return
+     */
+    public static KafkaConsumerConfig fromParameters(ParameterTool params) {
+
+        Builder builder = builder(Profile.of(params.get(PARAM_PROFILE, Profile.LOW_LATENCY.getName())))
+                .bootstrapServers(params.get(PARAM_BOOTSTRAP_SERVERS, DEFAULT_BOOTSTRAP_SERVERS))
+                .groupId(params.get(PARAM_GROUP_ID, DEFAULT_GROUP_ID));
+        if (params.has(PARAM_FETCH_MIN_BYTES)) {
+            builder.fetchMinBytes(params.getInt(PARAM_FETCH_MIN_BYTES));
+        }
+        if (params.has(PARAM_FETCH_MAX_WAIT_MS)) {
+            builder.fetchMaxWaitMs(params.getInt(PARAM_FETCH_MAX_WAIT_MS));
+        }
+        if (params.has(PARAM_MAX_POLL_RECORDS)) {
+            builder.maxPollRecords(params.getInt(PARAM_MAX_POLL_RECORDS));
+        }
+        if (params.has(PARAM_PARTITION_DISCOVERY_INTERVAL_MS)) {
+            builder.partitionDiscoveryIntervalMs(params.getLong(PARAM_PARTITION_DISCOVERY_INTERVAL_MS));
+        }
+        if (params.has(PARAM_START_POSITION)) {
+            StartPosition startPosition = StartPosition.of(params.get(PARAM_START_POSITION));
+            if (startPosition == StartPosition.TIMESTAMP) {
+                builder.startFromTimestamp(params.getLong(PARAM_START_TIMESTAMP));
+            } else {
+                builder.startPosition(startPosition);
+            }
+        }
+        return builder.build();
+    }
+
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("bootstrap.servers", bootstrapServers);
+        properties.setProperty("group.id", groupId);
+        properties.setProperty("fetch.min.bytes", String.valueOf(fetchMinBytes));
+        properties.setProperty("fetch.max.wait.ms", String.valueOf(fetchMaxWaitMs));
+        properties.setProperty("max.poll.records", String.valueOf(maxPollRecords));
+        if (partitionDiscoveryIntervalMs > 0) {
+            properties.setProperty(FlinkKafkaConsumerBase.KEY_PARTITION_DISCOVERY_INTERVAL_MILLIS,
+                    String.valueOf(partitionDiscoveryIntervalMs));
+        }
+        return properties;
+    }
+
+    public <T> FlinkKafkaConsumer<T> createConsumer(String topic, DeserializationSchema<T> schema) {
+        return applyStartPosition(new FlinkKafkaConsumer<>(topic, schema, toProperties()));
+    }
+
+    public <T> FlinkKafkaConsumer<T> createConsumer(List<String> topics, DeserializationSchema<T> schema) {
+        return applyStartPosition(new FlinkKafkaConsumer<>(topics, schema, toProperties()));
+    }
+
+    private <T> FlinkKafkaConsumer<T> applyStartPosition(FlinkKafkaConsumer<T> consumer) {
+        switch (startPosition) {
+            case EARLIEST:
+                consumer.setStartFromEarliest();
+                break;
+            case LATEST:
+                consumer.setStartFromLatest();
+                break;
+            case TIMESTAMP:
+                consumer.setStartFromTimestamp(startTimestamp);
+                break;
+            case GROUP_OFFSETS:
+            default:
+                consumer.setStartFromGroupOffsets();
+                break;
+        }
+        return consumer;
+    }
+
+    public String getBootstrapServers() {
+        return bootstrapServers;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public int getFetchMinBytes() {
+        return fetchMinBytes;
+    }
+
+    public int getFetchMaxWaitMs() {
+        return fetchMaxWaitMs;
+    }
+
+    public int getMaxPollRecords() {
+        return maxPollRecords;
+    }
+
+    public long getPartitionDiscoveryIntervalMs() {
+        return partitionDiscoveryIntervalMs;
+    }
+
+    public StartPosition getStartPosition() {
+        return startPosition;
+    }
+
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaConsumerConfig{" +
+                "bootstrapServers='" + bootstrapServers + '\'' +
+                ", groupId='" + groupId + '\'' +
+                ", fetchMinBytes=" + fetchMinBytes +
+                ", fetchMaxWaitMs=" + fetchMaxWaitMs +
+                ", maxPollRecords=" + maxPollRecords +
+                ", partitionDiscoveryIntervalMs=" + partitionDiscoveryIntervalMs +
+                ", startPosition=" + startPosition +
+                ", startTimestamp=" + startTimestamp +
+                '}';
+    }
+
+    /**
+     * 预设
+     */
+    public enum Profile {
+
+        /**
+         * broker有数据就返回，最多等10ms
+         */
+        LOW_LATENCY("low-latency", 1, 10, 100),
+
+        /**
+         * broker攒够256K或者等满200ms再返回，一次poll最多2000条
+         */
+        HIGH_THROUGHPUT("high-throughput", 256 * 1024, 200, 2000);
+
+        private final String name;
+        private final int fetchMinBytes;
+        private final int fetchMaxWaitMs;
+        private final int maxPollRecords;
+
+        Profile(String name, int fetchMinBytes, int fetchMaxWaitMs, int maxPollRecords) {
+            this.name = name;
+            this.fetchMinBytes = fetchMinBytes;
+            this.fetchMaxWaitMs = fetchMaxWaitMs;
+            this.maxPollRecords = maxPollRecords;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Profile of(String name) {
+            for (Profile profile : values()) {
+                if (profile.name.equalsIgnoreCase(name) || profile.name().equalsIgnoreCase(name)) {
+                    return profile;
+                }
+            }
+            throw new IllegalArgumentException("不支持的kafka预设:" + name);
+        }
+    }
+
+    /**
+     * 从哪里开始消费
+     */
+    public enum StartPosition {
+
+        /**
+         * 默认的方法（消费过的不会再被消费）
+         */
+        GROUP_OFFSETS("group-offsets"),
+
+        /**
+         * 尽可能从最早的记录开始(该消费者组拉取过的，还是会再次消费)
+         */
+        EARLIEST("earliest"),
+
+        /**
+         * 从最新的记录开始
+         */
+        LATEST("latest"),
+
+        /**
+         * 从指定的时间开始（毫秒）
+         */
+        TIMESTAMP("timestamp");
+
+        private final String name;
+
+        StartPosition(String name) {
+            this.name = name;
+        }
+
+        public static StartPosition of(String name) {
+            for (StartPosition startPosition : values()) {
+                if (startPosition.name.equalsIgnoreCase(name) || startPosition.name().equalsIgnoreCase(name)) {
+                    return startPosition;
+                }
+            }
+            throw new IllegalArgumentException("不支持的kafka起始位置:" + name);
+        }
+    }
+
+    public static class Builder {
+
+        private String bootstrapServers = DEFAULT_BOOTSTRAP_SERVERS;
+        private String groupId = DEFAULT_GROUP_ID;
+        private int fetchMinBytes;
+        private int fetchMaxWaitMs;
+        private int maxPollRecords;
+        private long partitionDiscoveryIntervalMs;
+        private StartPosition startPosition = StartPosition.GROUP_OFFSETS;
+        private long startTimestamp = -1L;
+
+        private Builder(Profile profile) {
+            this.fetchMinBytes = profile.fetchMinBytes;
+            this.fetchMaxWaitMs = profile.fetchMaxWaitMs;
+            this.maxPollRecords = profile.maxPollRecords;
+        }
+
+        public Builder bootstrapServers(String bootstrapServers) {
+            this.bootstrapServers = bootstrapServers;
+            return this;
+        }
+
+        public Builder groupId(String groupId) {
+            this.groupId = groupId;
+            return this;
+        }
+
+        public Builder fetchMinBytes(int fetchMinBytes) {
+            this.fetchMinBytes = fetchMinBytes;
+            return this;
+        }
+
+        public Builder fetchMaxWaitMs(int fetchMaxWaitMs) {
+            this.fetchMaxWaitMs = fetchMaxWaitMs;
+            return this;
+        }
+
+        public Builder maxPollRecords(int maxPollRecords) {
+            this.maxPollRecords = maxPollRecords;
+            return this;
+        }
+
+        /**
+         * @param partitionDiscoveryIntervalMs 多久检查一次新分区，0表示不检查
+         */
+        public Builder partitionDiscoveryIntervalMs(long partitionDiscoveryIntervalMs) {
+            this.partitionDiscoveryIntervalMs = partitionDiscoveryIntervalMs;
+            return this;
+        }
+
+        /**
+         * 指定时间开始请用startFromTimestamp
+         */
+        public Builder startPosition(StartPosition startPosition) {
+            if (startPosition == StartPosition.TIMESTAMP) {
+                throw new IllegalArgumentException("从指定时间开始消费请用startFromTimestamp");
+            }
+            this.startPosition = startPosition;
+            return this;
+        }
+
+        public Builder startFromTimestamp(long startTimestamp) {
+            this.startPosition = StartPosition.TIMESTAMP;
+            this.startTimestamp = startTimestamp;
+            return this;
+        }
+
+        public KafkaConsumerConfig build() {
+            if (bootstrapServers == null || bootstrapServers.isEmpty()) {
+                throw new IllegalArgumentException("bootstrap.servers不能为空");
+            }
+            if (groupId == null || groupId.isEmpty()) {
+                throw new IllegalArgumentException("group.id不能为空");
+            }
+            if (fetchMinBytes <= 0 || fetchMaxWaitMs < 0 || maxPollRecords <= 0 || partitionDiscoveryIntervalMs < 0) {
+                throw new IllegalArgumentException("kafka consumer参数不合法:fetchMinBytes=" + fetchMinBytes
+                        + " fetchMaxWaitMs=" + fetchMaxWaitMs + " maxPollRecords=" + maxPollRecords
+                        + " partitionDiscoveryIntervalMs=" + partitionDiscoveryIntervalMs);
+            }
+            return new KafkaConsumerConfig(this);
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.kunghsu.apache.flink.flinkkafka.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.util.Date;
 
@@ -31,6 +32,14 @@ public class FlinkTopicMsg {
     @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
     private Date updateTime;
 
+    /**
+     * 事件时间(毫秒)，解析时由createTime算好，下游分配时间戳时直接取，不用再解析报文
+     * createTime为空时是Long.MIN_VALUE（即没有时间戳）
+     * 不是报文里的字段，不参与json序列化
+     */
+    @JsonIgnore
+    private long eventTime = Long.MIN_VALUE;
+
     public String getMsgId() {
         return msgId;
     }
@@ -63,6 +72,14 @@ public class FlinkTopicMsg {
         this.updateTime = updateTime;
     }
 
+    public long getEventTime() {
+        return eventTime;
+    }
+
+    public void setEventTime(long eventTime) {
+        this.eventTime = eventTime;
+    }
+
     public String getTradeId() {
         return tradeId;
     }
@@ -2,31 +2,28 @@ package com.kunghsu.apache.flink.flinkkafka.operators.join;
 
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicDealResultMsg;
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
-import com.kunghsu.common.utils.JacksonUtils;
 import org.apache.flink.api.common.functions.JoinFunction;
 
-public class MoreKafkaSourceByJoinAndSessionWindowJoinFunction implements JoinFunction<String, String, FlinkTopicDealResultMsg> {
+public class MoreKafkaSourceByJoinAndSessionWindowJoinFunction implements JoinFunction<FlinkTopicMsg, FlinkTopicMsg, FlinkTopicDealResultMsg> {
 
     /**
      * 这种情况假如数据没到齐，不会触发任何处理！！
      * 因为where和equal没匹配成功，所以不会有后续
      *
-     * @param first
-     * @param second
+     * @param first topic1的消息
+     * @param second topic2的消息
      * @return
      * @throws Exception
      */
     @Override
-    public FlinkTopicDealResultMsg join(String first, String second) throws Exception {
+    public FlinkTopicDealResultMsg join(FlinkTopicMsg first, FlinkTopicMsg second) throws Exception {
 
         //整个之后，可以自由决定返回什么
-        //
-        FlinkTopicMsg flinkTopic1Msg = JacksonUtils.toJavaObject(first, FlinkTopicMsg.class);
-        FlinkTopicMsg flinkTopic2Msg = JacksonUtils.toJavaObject(first, FlinkTopicMsg.class);
+        //两边在源头已经解析好，这里直接用
         FlinkTopicDealResultMsg flinkTopicResMsg = new FlinkTopicDealResultMsg();
-        if (flinkTopic1Msg.getTradeId().equals(flinkTopic2Msg.getTradeId())){
-            flinkTopicResMsg.setMsgId(flinkTopic1Msg.getMsgId());
-            flinkTopicResMsg.setStatusCode(flinkTopic2Msg.getStatusCode());
+        if (first.getTradeId().equals(second.getTradeId())){
+            flinkTopicResMsg.setMsgId(first.getMsgId());
+            flinkTopicResMsg.setStatusCode(second.getStatusCode());
         }
         return flinkTopicResMsg;
     }
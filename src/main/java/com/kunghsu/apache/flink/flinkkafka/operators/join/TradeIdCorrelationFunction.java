@@ -0,0 +1,243 @@
+package com.kunghsu.apache.flink.flinkkafka.operators.join;
+
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicDealResultMsg;
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.runtime.metrics.DescriptiveStatisticsHistogram;
+import org.apache.flink.streaming.api.functions.co.KeyedCoProcessFunction;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按tradeId关联topic1(带msgId)和topic2(带statusCode)
+ * 代替MoreKafkaSourceDemo4ByMapStateTask里固定10秒TTL的MapState
+ *
+ * 先到的一边按事件时间暂存，用事件时间定时器控制等多久：
+ * 1.topic1先到：暂存到maxDelayMillis之后，期间到的topic2都能关联上（和原来一样，一条topic1可以对应多条topic2）
+ * 2.topic2先到：暂存起来，topic1一到马上输出
+ * 3.水位线超过 暂存记录的时间戳 + maxDelayMillis 还没关联上，输出到旁路UNMATCHED_TAG，不再静默丢掉
+ *
+ * 用的是事件时间，等多久不受处理速度、作业重启的影响（原来的TTL是处理时间，积压时更容易过期）
+ * 上游需要在kafka consumer上分配时间戳和水位线并且带空闲检测（FlinkTopicMsgSource.eventTimeWatermarks），
+ * 否则某个topic没有数据时水位线不前进，暂存的记录不会过期
+ *
+ * 指标（每个subtask）：
+ * bufferedTopic1Msgs、bufferedTopic2Msgs：当前暂存的条数（从本次启动开始计，从checkpoint恢复的不算在内）
+ * matched：关联成功的条数
+ * expiredTopic1Msgs、expiredTopic2Msgs：过期没关联上的条数
+ * matchLatencyMs：先到的一边暂存了多久才关联上（处理时间）
+ *
+ * 需要在 topic1Stream.connect(topic2Stream).keyBy(new TradeIdKeySelector(), new TradeIdKeySelector()) 之后使用
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class TradeIdCorrelationFunction extends KeyedCoProcessFunction<String, FlinkTopicMsg, FlinkTopicMsg, FlinkTopicDealResultMsg> {
+
+    /**
+     * 过期没有关联上的消息
+     */
+    public static final OutputTag<FlinkTopicMsg> UNMATCHED_TAG = new OutputTag<FlinkTopicMsg>("tradeId-unmatched") {};
+
+    /**
+     * matchLatencyMs保留最近多少个样本
+     */
+    private static final int LATENCY_WINDOW_SIZE = 1000;
+
+    private final long maxDelayMillis;
+
+    private transient ValueState<PendingTopicMsg> topic1State;
+
+    private transient ListState<PendingTopicMsg> topic2State;
+
+    private transient long bufferedTopic1Msgs;
+
+    private transient long bufferedTopic2Msgs;
+
+    private transient Counter matched;
+
+    private transient Counter expiredTopic1Msgs;
+
+    private transient Counter expiredTopic2Msgs;
+
+    private transient Histogram matchLatency;
+
+    /**
+     * @param maxDelayMillis 另一边最多晚到多久（事件时间），超过就当作关联不上
+     */
+    public TradeIdCorrelationFunction(long maxDelayMillis) {
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis不能小于0");
+        }
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        topic1State = getRuntimeContext().getState(
+                new ValueStateDescriptor<>("pendingTopic1Msg", Types.POJO(PendingTopicMsg.class)));
+        topic2State = getRuntimeContext().getListState(
+                new ListStateDescriptor<>("pendingTopic2Msgs", Types.POJO(PendingTopicMsg.class)));
+
+        getRuntimeContext().getMetricGroup().gauge("bufferedTopic1Msgs", (Gauge<Long>) () -> Math.max(bufferedTopic1Msgs, 0));
+        getRuntimeContext().getMetricGroup().gauge("bufferedTopic2Msgs", (Gauge<Long>) () -> Math.max(bufferedTopic2Msgs, 0));
+        matched = getRuntimeContext().getMetricGroup().counter("matched");
+        expiredTopic1Msgs = getRuntimeContext().getMetricGroup().counter("expiredTopic1Msgs");
+        expiredTopic2Msgs = getRuntimeContext().getMetricGroup().counter("expiredTopic2Msgs");
+        matchLatency = getRuntimeContext().getMetricGroup().histogram("matchLatencyMs",
+                new DescriptiveStatisticsHistogram(LATENCY_WINDOW_SIZE));
+    }
+
+    /**
+     * topic1的消息
+     */
+    @Override
+    public void processElement1(FlinkTopicMsg value, Context ctx, Collector<FlinkTopicDealResultMsg> out) throws Exception {
+
+        long now = ctx.timerService().currentProcessingTime();
+        PendingTopicMsg pending = topic1State.value();
+        if (pending == null) {
+            bufferedTopic1Msgs++;
+        }
+        //重复的topic1消息以最新的为准，原来的定时器到期时发现过期时间对不上会直接忽略
+        pending = new PendingTopicMsg(value, expireAt(ctx.timestamp()), now);
+
+        //先到的topic2全部关联上
+        boolean hasTopic2 = false;
+        for (PendingTopicMsg topic2Msg : topic2State.get()) {
+            hasTopic2 = true;
+            emit(value, topic2Msg.msg, now - topic2Msg.arrivalTime, out);
+            bufferedTopic2Msgs--;
+        }
+        if (hasTopic2) {
+            topic2State.clear();
+            pending.matched = true;
+        }
+
+        topic1State.update(pending);
+        ctx.timerService().registerEventTimeTimer(pending.expireAt);
+    }
+
+    /**
+     * topic2的消息
+     */
+    @Override
+    public void processElement2(FlinkTopicMsg value, Context ctx, Collector<FlinkTopicDealResultMsg> out) throws Exception {
+
+        long now = ctx.timerService().currentProcessingTime();
+        PendingTopicMsg topic1Msg = topic1State.value();
+        if (topic1Msg != null) {
+            emit(topic1Msg.msg, value, now - topic1Msg.arrivalTime, out);
+            if (!topic1Msg.matched) {
+                topic1Msg.matched = true;
+                topic1State.update(topic1Msg);
+            }
+            return;
+        }
+
+        PendingTopicMsg pending = new PendingTopicMsg(value, expireAt(ctx.timestamp()), now);
+        topic2State.add(pending);
+        bufferedTopic2Msgs++;
+        ctx.timerService().registerEventTimeTimer(pending.expireAt);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<FlinkTopicDealResultMsg> out) throws Exception {
+
+        PendingTopicMsg topic1Msg = topic1State.value();
+        if (topic1Msg != null && topic1Msg.expireAt <= timestamp) {
+            if (!topic1Msg.matched) {
+                ctx.output(UNMATCHED_TAG, topic1Msg.msg);
+                expiredTopic1Msgs.inc();
+            }
+            topic1State.clear();
+            bufferedTopic1Msgs--;
+        }
+
+        List<PendingTopicMsg> remaining = null;
+        boolean expired = false;
+        for (PendingTopicMsg topic2Msg : topic2State.get()) {
+            if (topic2Msg.expireAt <= timestamp) {
+                ctx.output(UNMATCHED_TAG, topic2Msg.msg);
+                expiredTopic2Msgs.inc();
+                bufferedTopic2Msgs--;
+                expired = true;
+            } else {
+                if (remaining == null) {
+                    remaining = new ArrayList<>();
+                }
+                remaining.add(topic2Msg);
+            }
+        }
+        if (expired) {
+            if (remaining == null) {
+                topic2State.clear();
+            } else {
+                topic2State.update(remaining);
+            }
+        }
+    }
+
+    private long expireAt(Long timestamp) {
+        if (timestamp == null) {
+            throw new IllegalStateException("消息没有时间戳，kafka consumer需要先分配时间戳和水位线");
+        }
+        return timestamp + maxDelayMillis;
+    }
+
+    private void emit(FlinkTopicMsg topic1Msg, FlinkTopicMsg topic2Msg, long latencyMillis,
+                      Collector<FlinkTopicDealResultMsg> out) {
+        FlinkTopicDealResultMsg resultMsg = new FlinkTopicDealResultMsg();
+        resultMsg.setMsgId(topic1Msg.getMsgId());
+        resultMsg.setStatusCode(topic2Msg.getStatusCode());
+        out.collect(resultMsg);
+        matched.inc();
+        matchLatency.update(latencyMillis);
+    }
+
+    /**
+     * 暂存的一条消息
+     */
+    public static class PendingTopicMsg {
+
+        public FlinkTopicMsg msg;
+
+        /**
+         * 过期时间（事件时间）
+         */
+        public long expireAt;
+
+        /**
+         * 到达时间（处理时间），用来算matchLatencyMs
+         */
+        public long arrivalTime;
+
+        /**
+         * topic1的消息是否已经关联上过
+         */
+        public boolean matched;
+
+        public PendingTopicMsg() {
+        }
+
+        public PendingTopicMsg(FlinkTopicMsg msg, long expireAt, long arrivalTime) {
+            this.msg = msg;
+            this.expireAt = expireAt;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.kunghsu.apache.flink.flinkkafka.operators.key;
+
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import org.apache.flink.api.java.functions.KeySelector;
+
+/**
+ * 键控策略
+ * 两个topic靠tradeId关联，消息在源头已经解析好，这里直接取字段，不再解析报文
+ */
+public class TradeIdKeySelector implements KeySelector<FlinkTopicMsg, String> {
+
+    @Override
+    public String getKey(FlinkTopicMsg value) throws Exception {
+        return value.getTradeId();
+    }
+}
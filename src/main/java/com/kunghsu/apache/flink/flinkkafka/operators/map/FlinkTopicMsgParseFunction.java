@@ -0,0 +1,49 @@
+package com.kunghsu.apache.flink.flinkkafka.operators.map;
+
+import com.kunghsu.apache.flink.flinkkafka.MyJsonDeserializationSchema;
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.streaming.api.functions.ProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * byte[] -> FlinkTopicMsg
+ * 解析失败的原始消息输出到旁路 MyJsonDeserializationSchema.PARSE_FAILURE_TAG，不再返回null
+ * 没有tradeId的消息同样输出到旁路（两个topic靠tradeId关联，keyBy时key为null会导致任务失败）
+ */
+public class FlinkTopicMsgParseFunction extends ProcessFunction<byte[], FlinkTopicMsg> {
+
+    private transient Counter parseFailures;
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        parseFailures = getRuntimeContext().getMetricGroup().counter("parseFailures");
+    }
+
+    @Override
+    public void processElement(byte[] value, Context ctx, Collector<FlinkTopicMsg> out) throws Exception {
+        FlinkTopicMsg flinkTopicMsg;
+        try {
+            flinkTopicMsg = MyJsonDeserializationSchema.parse(value);
+        } catch (IOException e) {
+            outputFailure(value, ctx);
+            return;
+        }
+        if (StringUtils.isEmpty(flinkTopicMsg.getTradeId())) {
+            outputFailure(value, ctx);
+            return;
+        }
+        out.collect(flinkTopicMsg);
+    }
+
+    private void outputFailure(byte[] value, Context ctx) {
+        parseFailures.inc();
+        ctx.output(MyJsonDeserializationSchema.PARSE_FAILURE_TAG, new String(value, StandardCharsets.UTF_8));
+    }
+}
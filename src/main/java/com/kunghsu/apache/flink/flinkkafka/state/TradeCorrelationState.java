@@ -0,0 +1,60 @@
+package com.kunghsu.apache.flink.flinkkafka.state;
+
+/**
+ * 按tradeId关联两个topic时，每个tradeId暂存的内容
+ * 用ValueState<TradeCorrelationState> + TradeCorrelationStateSerializer存，代替只放一个"msgId"键的MapState<String, String>
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class TradeCorrelationState {
+
+    /**
+     * topic1带过来的msgId，topic1还没到时为null
+     */
+    private String msgId;
+
+    /**
+     * 最近一次写入的时间（处理时间，毫秒）
+     */
+    private long arrivalTime;
+
+    /**
+     * 先于topic1到达的topic2的状态码，topic1到了之后不再需要
+     */
+    private String statusCode;
+
+    public TradeCorrelationState() {
+    }
+
+    public TradeCorrelationState(String msgId, long arrivalTime, String statusCode) {
+        this.msgId = msgId;
+        this.arrivalTime = arrivalTime;
+        this.statusCode = statusCode;
+    }
+
+    public String getMsgId() {
+        return msgId;
+    }
+
+    public void setMsgId(String msgId) {
+        this.msgId = msgId;
+    }
+
+    public long getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public void setArrivalTime(long arrivalTime) {
+        this.arrivalTime = arrivalTime;
+    }
+
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(String statusCode) {
+        this.statusCode = statusCode;
+    }
+}
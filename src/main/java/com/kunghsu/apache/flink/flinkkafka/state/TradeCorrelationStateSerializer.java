@@ -0,0 +1,117 @@
+package com.kunghsu.apache.flink.flinkkafka.state;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.base.TypeSerializerSingleton;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.types.StringValue;
+
+import java.io.IOException;
+
+/**
+ * TradeCorrelationState的序列化
+ * 格式：字段是否为空的标志位(1字节) + arrivalTime(8字节) + 非空的字段
+ * 不写类名、字段名，也不走PojoSerializer的反射，RocksDB每次读写状态都要序列化一遍，越简单越好
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public final class TradeCorrelationStateSerializer extends TypeSerializerSingleton<TradeCorrelationState> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final TradeCorrelationStateSerializer INSTANCE = new TradeCorrelationStateSerializer();
+
+    private static final int MSG_ID = 1;
+    private static final int STATUS_CODE = 1 << 1;
+
+    private TradeCorrelationStateSerializer() {
+    }
+
+    @Override
+    public boolean isImmutableType() {
+        return false;
+    }
+
+    @Override
+    public TradeCorrelationState createInstance() {
+        return new TradeCorrelationState();
+    }
+
+    @Override
+    public TradeCorrelationState copy(TradeCorrelationState from) {
+        return new TradeCorrelationState(from.getMsgId(), from.getArrivalTime(), from.getStatusCode());
+    }
+
+    @Override
+    public TradeCorrelationState copy(TradeCorrelationState from, TradeCorrelationState reuse) {
+        reuse.setMsgId(from.getMsgId());
+        reuse.setArrivalTime(from.getArrivalTime());
+        reuse.setStatusCode(from.getStatusCode());
+        return reuse;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public void serialize(TradeCorrelationState record, DataOutputView target) throws IOException {
+        int flags = (record.getMsgId() != null ? MSG_ID : 0)
+                | (record.getStatusCode() != null ? STATUS_CODE : 0);
+        target.writeByte(flags);
+        target.writeLong(record.getArrivalTime());
+        if (record.getMsgId() != null) {
+            StringValue.writeString(record.getMsgId(), target);
+        }
+        if (record.getStatusCode() != null) {
+            StringValue.writeString(record.getStatusCode(), target);
+        }
+    }
+
+    @Override
+    public TradeCorrelationState deserialize(DataInputView source) throws IOException {
+        return deserialize(new TradeCorrelationState(), source);
+    }
+
+    @Override
+    public TradeCorrelationState deserialize(TradeCorrelationState reuse, DataInputView source) throws IOException {
+        int flags = source.readUnsignedByte();
+        reuse.setArrivalTime(source.readLong());
+        reuse.setMsgId((flags & MSG_ID) != 0 ? StringValue.readString(source) : null);
+        reuse.setStatusCode((flags & STATUS_CODE) != 0 ? StringValue.readString(source) : null);
+        return reuse;
+    }
+
+    @Override
+    public void copy(DataInputView source, DataOutputView target) throws IOException {
+        int flags = source.readUnsignedByte();
+        target.writeByte(flags);
+        target.writeLong(source.readLong());
+        if ((flags & MSG_ID) != 0) {
+            StringValue.copyString(source, target);
+        }
+        if ((flags & STATUS_CODE) != 0) {
+            StringValue.copyString(source, target);
+        }
+    }
+
+    @Override
+    public TypeSerializerSnapshot<TradeCorrelationState> snapshotConfiguration() {
+        return new TradeCorrelationStateSerializerSnapshot();
+    }
+
+    /**
+     * 状态恢复时用
+     */
+    public static final class TradeCorrelationStateSerializerSnapshot extends SimpleTypeSerializerSnapshot<TradeCorrelationState> {
+
+        public TradeCorrelationStateSerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.kunghsu.apache.flink.flinkkafka.task;
+
+import com.kunghsu.apache.flink.flinkkafka.FlinkTopicMsgSource;
+import com.kunghsu.apache.flink.flinkkafka.TopicConstants;
+import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicDealResultMsg;
+import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import com.kunghsu.apache.flink.flinkkafka.operators.join.TradeIdCorrelationFunction;
+import com.kunghsu.apache.flink.flinkkafka.operators.key.TradeIdKeySelector;
+import com.kunghsu.common.utils.JacksonUtils;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
+
+import java.time.Duration;
+
+/**
+ * 验证同时消费多个kafka的topic
+ * 按tradeId关联两个topic，用TradeIdCorrelationFunction代替MoreKafkaSourceDemo4ByMapStateTask里的MapState + 固定TTL
+ *
+ * 先到的一边按事件时间暂存，另一边到了马上输出，超时没关联上的从旁路输出
+ * 水位线在kafka consumer里按分区生成并带空闲检测，一个topic没有数据时，暂存的记录也能按时过期
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class MoreKafkaSourceDemo4ByIntervalJoinTask {
+
+    /**
+     * topic2最多比topic1晚多久（事件时间），和原来的TTL一致
+     */
+    private static final Duration MAX_DELAY = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+
+        final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+
+        //添加输入源，时间戳和水位线在kafka consumer里按分区生成，允许2秒乱序，分区5秒没有数据算空闲
+        WatermarkStrategy<FlinkTopicMsg> watermarkStrategy = FlinkTopicMsgSource.eventTimeWatermarks(
+                Duration.ofSeconds(2), Duration.ofSeconds(5));
+        DataStream<FlinkTopicMsg> topic1Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_1, watermarkStrategy);
+        DataStream<FlinkTopicMsg> topic2Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_2, watermarkStrategy);
+
+        //两个流按tradeId关联，不再union到一起再判断是哪个topic
+        SingleOutputStreamOperator<FlinkTopicDealResultMsg> resultStream = topic1Stream
+                .connect(topic2Stream)
+                .keyBy(new TradeIdKeySelector(), new TradeIdKeySelector())
+                .process(new TradeIdCorrelationFunction(MAX_DELAY.toMillis()))
+                .name("tradeIdCorrelation");
+
+        //过期没关联上的消息
+        resultStream.getSideOutput(TradeIdCorrelationFunction.UNMATCHED_TAG).print("unmatched");
+
+        SingleOutputStreamOperator<String> newStream = resultStream
+                .map(new MapFunction<FlinkTopicDealResultMsg, String>() {
+
+                    @Override
+                    public String map(FlinkTopicDealResultMsg value) throws Exception {
+                        return JacksonUtils.toJSONString(value);
+                    }
+                })
+                .name("toJson");
+
+        //输出到控制台
+        newStream.print();
+
+        //创建生产者
+        FlinkKafkaProducer flinkKafkaProducer = FlinkKafkaConfig.getFlinkKafkaProducer(TopicConstants.TOPIC_FLINK_DEMO_3);
+        //添加输出源
+        newStream.addSink(flinkKafkaProducer);
+
+        System.out.println("调用execute方法");
+        //注意：因为flink是懒加载的，所以必须调用execute方法，上面的代码才会执行
+        env.execute();
+        //因为是无界流，所以正常情况下不会执行到这里
+        System.out.println("执行结束");
+    }
+
+}
@@ -1,22 +1,25 @@
 package com.kunghsu.apache.flink.flinkkafka.task;
 
+import com.kunghsu.apache.flink.checkpoint.CheckpointUtil;
+import com.kunghsu.apache.flink.flinkkafka.FlinkTopicMsgSource;
 import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
 import com.kunghsu.apache.flink.flinkkafka.TopicConstants;
+import com.kunghsu.apache.flink.flinkkafka.operators.key.TradeIdKeySelector;
+import com.kunghsu.apache.flink.flinkkafka.state.TradeCorrelationState;
+import com.kunghsu.apache.flink.flinkkafka.state.TradeCorrelationStateSerializer;
 import com.kunghsu.common.utils.JacksonUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.flink.api.common.functions.RichFlatMapFunction;
-import org.apache.flink.api.common.state.MapState;
-import org.apache.flink.api.common.state.MapStateDescriptor;
 import org.apache.flink.api.common.state.StateTtlConfig;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
 import org.apache.flink.api.common.time.Time;
-import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.streaming.api.TimeCharacteristic;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
 import org.apache.flink.util.Collector;
 
@@ -30,6 +33,10 @@ import java.util.Map;
  * 不使用窗口，用mapState
  * 方案也是可行的。
  *
+ * 原来的MapState只放了一个"msgId"键，RocksDB上每次读写都要拼组合键、序列化这个固定的String键
+ * 现在改成ValueState<TradeCorrelationState>，用TradeCorrelationStateSerializer序列化，一个tradeId一条记录
+ * 基准测试详见benchmarks模块的TradeCorrelationStateBenchmark
+ *
  * author:xuyaokun_kzx
  * date:2021/9/15
  * desc:
@@ -47,19 +54,15 @@ public class MoreKafkaSourceDemo4ByMapStateTask {
         env.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
 
         //同时监听多个主题
-        //创建消费者
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_1);
-        FlinkKafkaConsumer<String> flinkKafkaConsumer2 = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_2);
-
-        //添加输入源
-        DataStream<String> topic1Stream = env.addSource(flinkKafkaConsumer);
-        DataStream<String> topic2Stream = env.addSource(flinkKafkaConsumer2);
+        //添加输入源，在源头解析成FlinkTopicMsg，keyBy和flatMap不再解析报文
+        DataStream<FlinkTopicMsg> topic1Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_1);
+        DataStream<FlinkTopicMsg> topic2Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_2);
         //将流进行合并
-        DataStream<String> stream = topic1Stream.union(topic2Stream);
+        DataStream<FlinkTopicMsg> stream = topic1Stream.union(topic2Stream);
 
         //数据的中间处理操作
         SingleOutputStreamOperator newStream = stream
-                .keyBy(new MyKeySelector())
+                .keyBy(new TradeIdKeySelector())
                 .flatMap(new MyRichFlatMapFunction());
 
         //输出到控制台,这里输出的是最后一次调用collect设置的结果
@@ -77,24 +80,9 @@ public class MoreKafkaSourceDemo4ByMapStateTask {
         System.out.println("执行结束");
     }
 
-    /**
-     * 键控策略
-     */
-    public static class MyKeySelector implements KeySelector<String, Object> {
-
-        @Override
-        public Object getKey(String value) throws Exception {
+    public static class MyRichFlatMapFunction extends RichFlatMapFunction<FlinkTopicMsg, String> {
 
-            //先解析出这个属于哪个topic
-            //两个topic肯定有一个字段可以关联起来(例子中即tradeId)
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, FlinkTopicMsg.class);
-            return flinkTopicMsg.getTradeId();
-        }
-    }
-
-    public static class MyRichFlatMapFunction extends RichFlatMapFunction<String, String> {
-
-        private MapState<String, String> mapState;
+        private transient ValueState<TradeCorrelationState> tradeState;
 
         //FlatMapFunction接口没有open方法
         @Override
@@ -102,68 +90,67 @@ public class MoreKafkaSourceDemo4ByMapStateTask {
             super.open(parameters);
 
             // 设置状态过期配置
-            StateTtlConfig ttlConfig = StateTtlConfig
-                    /*
-                        状态缓存的时间很重要
-                        假如时间太小，topic1的数据放入状态中了，但是topic2来得迟了，状态就过期了，所以两个topic就关联不起来
-                        假如时间太大，系统需要暂存的内容就较多，增加内存磁盘占用
-
-                        亲测时间到了之后，状态值将获取不到。
-                     */
-                    .newBuilder(Time.seconds(10))
-                    // 设置状态的更新类型
-                    .setUpdateType(StateTtlConfig.UpdateType.OnCreateAndWrite)
-                    // 已过期还未被清理掉的状态数据不返回给用户
-                    .setStateVisibility(StateTtlConfig.StateVisibility.NeverReturnExpired)
-                    // 过期对象的清理策略 全量清理
-//                    .cleanupFullSnapshot()
-                    //增量清理
-//                    .cleanupIncrementally(1, true)
-//                    .cleanupInBackground()
-                    .build();
-
-            MapStateDescriptor descriptor = new MapStateDescriptor("MapDescriptor", String.class, String.class);
+            /*
+                状态缓存的时间很重要
+                假如时间太小，topic1的数据放入状态中了，但是topic2来得迟了，状态就过期了，所以两个topic就关联不起来
+                假如时间太大，系统需要暂存的内容就较多，增加内存磁盘占用
+
+                亲测时间到了之后，状态值将获取不到。
+                写入时更新过期时间、已过期的不返回、RocksDB压缩时清理（堆内状态后端会忽略），详见CheckpointUtil.ttlConfig
+             */
+            StateTtlConfig ttlConfig = CheckpointUtil.ttlConfig(Time.seconds(10));
+
+            ValueStateDescriptor<TradeCorrelationState> descriptor = new ValueStateDescriptor<>("tradeState",
+                    TradeCorrelationStateSerializer.INSTANCE);
             // 状态过期配置与状态绑定
             descriptor.enableTimeToLive(ttlConfig);
-            mapState = getRuntimeContext().getMapState(descriptor);
+            tradeState = getRuntimeContext().getState(descriptor);
         }
 
         /**
          * 这种方案，不管延迟多久都能拿到数据
-         * @param sentence
+         * @param flinkTopicMsg
          * @param out
          * @throws Exception
          */
         @Override
-        public void flatMap(String sentence, Collector<String> out) throws Exception {
+        public void flatMap(FlinkTopicMsg flinkTopicMsg, Collector<String> out) throws Exception {
 
-//            System.out.println("进入flatMap函数，参数：" + sentence);
+//            System.out.println("进入flatMap函数，参数：" + JacksonUtils.toJSONString(flinkTopicMsg));
 
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(sentence, FlinkTopicMsg.class);
             //首先判断，是否已经有msgId了，假如有了，说明第一个topic的数据已经回来了
 //            System.out.println("当前mapState： values:" + JacksonUtils.toJSONString(mapState.values())
 //                    + " keys:" + JacksonUtils.toJSONString(mapState.keys()));
-            //每个key,都会有一个独立的mapState
+            //每个key,都会有一个独立的状态
+            TradeCorrelationState state = tradeState.value();
+            long now = System.currentTimeMillis();
             if (StringUtils.isNotEmpty(flinkTopicMsg.getMsgId())){
                 //假如msgId不为空，说明是第一个topic
-                mapState.put("msgId", flinkTopicMsg.getMsgId());
+                if (state != null && StringUtils.isEmpty(state.getMsgId()) && StringUtils.isNotEmpty(state.getStatusCode())){
+                    //topic2的数据先到了，直接输出
+                    out.collect(toResult(flinkTopicMsg.getMsgId(), state.getStatusCode()));
+                }
+                tradeState.update(new TradeCorrelationState(flinkTopicMsg.getMsgId(), now, null));
             }else {
                 //第二个topic的数据
                 //从状态中拿出之前存好的msgId
-                String msgId = mapState.get("msgId");
-                if (StringUtils.isEmpty(msgId)){
-                    //假如为空，说明状态已过期被自动清除了
-                    //说明topic2的数据回得太晚了
+                if (state == null || StringUtils.isEmpty(state.getMsgId())){
+                    //假如为空，说明topic1的数据还没到，或者状态已过期被自动清除了（topic2的数据回得太晚了）
+                    //先把状态码存起来，topic1在过期前到了还能关联上
+                    tradeState.update(new TradeCorrelationState(null, now, flinkTopicMsg.getStatusCode()));
                     return;
                 }
-                Map<String, String> resultMap = new HashMap<>();
-                resultMap.put("msgId", msgId);
-                resultMap.put("statusCode", flinkTopicMsg.getStatusCode());
-                String newRes = JacksonUtils.toJSONString(resultMap);
-                out.collect(newRes);
+                out.collect(toResult(state.getMsgId(), flinkTopicMsg.getStatusCode()));
             }
         }
 
+        private static String toResult(String msgId, String statusCode) {
+            Map<String, String> resultMap = new HashMap<>();
+            resultMap.put("msgId", msgId);
+            resultMap.put("statusCode", statusCode);
+            return JacksonUtils.toJSONString(resultMap);
+        }
+
     }
 
 
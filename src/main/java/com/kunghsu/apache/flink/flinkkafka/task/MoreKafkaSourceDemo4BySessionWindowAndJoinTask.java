@@ -1,19 +1,18 @@
 package com.kunghsu.apache.flink.flinkkafka.task;
 
+import com.kunghsu.apache.flink.flinkkafka.FlinkTopicMsgSource;
 import com.kunghsu.apache.flink.flinkkafka.TopicConstants;
 import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
 import com.kunghsu.apache.flink.flinkkafka.operators.join.MoreKafkaSourceByJoinAndSessionWindowJoinFunction;
+import com.kunghsu.apache.flink.flinkkafka.operators.key.TradeIdKeySelector;
 import com.kunghsu.apache.flink.flinkkafka.operators.map.MoreKafkaSourceByJoinAndSessionWindowFlatMapFunction;
-import com.kunghsu.common.utils.JacksonUtils;
 import com.kunghsu.common.utils.PropertiesUtil;
-import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.streaming.api.TimeCharacteristic;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.api.windowing.assigners.ProcessingTimeSessionWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
-import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
 
 /**
@@ -53,21 +52,17 @@ public class MoreKafkaSourceDemo4BySessionWindowAndJoinTask {
 
 
         //同时监听多个主题
-        //创建消费者
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_1);
-        FlinkKafkaConsumer<String> flinkKafkaConsumer2 = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_2);
-
-        //添加输入源
+        //添加输入源，在源头解析成FlinkTopicMsg，后面的join不再解析报文
         //设置并行度为3
         int parallelism = 3;
-        DataStream<String> topic1Stream = env.addSource(flinkKafkaConsumer);
-        DataStream<String> topic2Stream = env.addSource(flinkKafkaConsumer2);
-//        DataStream<String> topic1Stream = env.addSource(flinkKafkaConsumer).setParallelism(parallelism);
-//        DataStream<String> topic2Stream = env.addSource(flinkKafkaConsumer2).setParallelism(parallelism);
+        DataStream<FlinkTopicMsg> topic1Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_1);
+        DataStream<FlinkTopicMsg> topic2Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_2);
+//        DataStream<FlinkTopicMsg> topic1Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_1).setParallelism(parallelism);
+//        DataStream<FlinkTopicMsg> topic2Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_2).setParallelism(parallelism);
         //将流进行合并
         DataStream<String> stream = topic1Stream.join(topic2Stream)
-                .where(new MyKeySelector())
-                .equalTo(new MyKeySelector()) //两个函数用的key可以是不一样的，假如字段真的完全不同名的话
+                .where(new TradeIdKeySelector())
+                .equalTo(new TradeIdKeySelector()) //两个函数用的key可以是不一样的，假如字段真的完全不同名的话
                 .window(ProcessingTimeSessionWindows.withGap(Time.seconds(3)))
                 .apply(new MoreKafkaSourceByJoinAndSessionWindowJoinFunction())
                 .flatMap(new MoreKafkaSourceByJoinAndSessionWindowFlatMapFunction());
@@ -88,20 +83,4 @@ public class MoreKafkaSourceDemo4BySessionWindowAndJoinTask {
         System.out.println("执行结束");
     }
 
-    /**
-     * 键控策略
-     */
-    public static class MyKeySelector implements KeySelector<String, Object> {
-
-        @Override
-        public Object getKey(String value) throws Exception {
-
-            //先解析出这个属于哪个topic
-            //两个topic肯定有一个字段可以关联起来(例子中即tradeId)
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, FlinkTopicMsg.class);
-            return flinkTopicMsg.getTradeId();
-        }
-    }
-
-
 }
@@ -1,9 +1,9 @@
 package com.kunghsu.apache.flink.flinkkafka.task;
 
+import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
 import com.kunghsu.common.utils.JacksonUtils;
 import com.kunghsu.example.coupon.CouponInputMsg;
 import com.kunghsu.example.coupon.table.CouponInputTableVO;
-import com.kunghsu.example.coupon.KafkaConsumerProducerConfig;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
@@ -17,7 +17,7 @@ public class WindowDemoTask {
     public static void main(String[] args) throws Exception {
 
         final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = KafkaConsumerProducerConfig.getFlinkKafkaConsumer("coupon-input");
+        FlinkKafkaConsumer<String> flinkKafkaConsumer = FlinkKafkaConfig.getFlinkKafkaConsumer("coupon-input");
         //添加输入源
         DataStream<String> stream = env.addSource(flinkKafkaConsumer);
         SingleOutputStreamOperator<CouponInputTableVO> stream2 = stream.map(new MapFunction<String, CouponInputMsg>() {
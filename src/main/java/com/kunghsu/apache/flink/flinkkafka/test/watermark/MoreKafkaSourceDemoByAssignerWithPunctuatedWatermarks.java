@@ -1,27 +1,29 @@
 package com.kunghsu.apache.flink.flinkkafka.test.watermark;
 
 import com.kunghsu.apache.flink.FlinkUtils;
+import com.kunghsu.apache.flink.flinkkafka.FlinkTopicMsgSource;
 import com.kunghsu.apache.flink.flinkkafka.TopicConstants;
-import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import com.kunghsu.apache.flink.flinkkafka.operators.key.TradeIdKeySelector;
 import com.kunghsu.common.utils.JacksonUtils;
 import com.kunghsu.common.vo.ResultVo;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.flink.api.java.functions.KeySelector;
-import org.apache.flink.streaming.api.TimeCharacteristic;
+import org.apache.flink.api.common.eventtime.Watermark;
+import org.apache.flink.api.common.eventtime.WatermarkGenerator;
+import org.apache.flink.api.common.eventtime.WatermarkGeneratorSupplier;
+import org.apache.flink.api.common.eventtime.WatermarkOutput;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.api.functions.AssignerWithPunctuatedWatermarks;
 import org.apache.flink.streaming.api.functions.ProcessFunction;
 import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
-import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
-import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.util.Collector;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -37,6 +39,12 @@ import java.util.concurrent.atomic.AtomicReference;
  * 所以之前的这个窗口会一直停留。这种窗口，有些场景明显不适合，数据迟迟得不到处理！！
  *
  * AssignerWithPunctuatedWatermarks使用例子
+ * 原来在union之后用AssignerWithPunctuatedWatermarks，每来一条topic2的消息就发一次水位线
+ * 现在改成WatermarkStrategy + 自定义WatermarkGenerator，只挂在topic2的kafka consumer上按分区生成：
+ * 规则不变（只有topic2的消息，即没有msgId的消息，才推动水位线），但只在onPeriodicEmit里周期性发出，不再每条都发
+ * topic1的消息都带msgId，不能用这个生成器（永远不会发出水位线，union之后的水位线会一直卡在最小值），
+ * 改用普通的有界乱序水位线
+ * 两边都加上空闲检测，某个topic或分区一段时间没有数据，就不再拖住整体的水位线
  *
  * author:xuyaokun_kzx
  * date:2021/9/28
@@ -48,41 +56,41 @@ public class MoreKafkaSourceDemoByAssignerWithPunctuatedWatermarks {
 
         final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
 
-        env.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
-
         //同时监听多个主题
-        //创建消费者
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_1);
-        FlinkKafkaConsumer<String> flinkKafkaConsumer2 = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_2);
-
-        //添加输入源
-        DataStream<String> topic1Stream = env.addSource(flinkKafkaConsumer);
-        DataStream<String> topic2Stream = env.addSource(flinkKafkaConsumer2);
+        //添加输入源，在源头解析成FlinkTopicMsg，keyBy、窗口函数都不再解析报文
+        //时间戳和水位线在kafka consumer里按分区生成，分区5秒没有数据算空闲
+        //topic1：普通的有界乱序水位线，允许2秒乱序
+        DataStream<FlinkTopicMsg> topic1Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_1,
+                FlinkTopicMsgSource.eventTimeWatermarks(Duration.ofSeconds(2), Duration.ofSeconds(5)));
+        //topic2：只有没有msgId的消息才推动水位线，没有eventTime时用kafka消息的时间戳
+        WatermarkStrategy<FlinkTopicMsg> topic2WatermarkStrategy = WatermarkStrategy
+                .forGenerator(new MyWatermarkGeneratorSupplier())
+                .withTimestampAssigner((flinkTopicMsg, kafkaTimestamp) ->
+                        flinkTopicMsg.getEventTime() != Long.MIN_VALUE ? flinkTopicMsg.getEventTime() : kafkaTimestamp)
+                .withIdleness(Duration.ofSeconds(5));
+        DataStream<FlinkTopicMsg> topic2Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_2,
+                topic2WatermarkStrategy);
         //将流进行合并
-        DataStream<String> stream = topic1Stream.union(topic2Stream);
+        DataStream<FlinkTopicMsg> stream = topic1Stream.union(topic2Stream);
 
         //数据的中间处理操作
         SingleOutputStreamOperator newStream = stream
-                .assignTimestampsAndWatermarks(new MyPunctuatedAssigner())
-                .keyBy(new MyKeySelector()) //键控策略
+                .keyBy(new TradeIdKeySelector()) //键控策略
                 .window(TumblingEventTimeWindows.of(Time.seconds(10))) //设置窗口大小为10秒，window后接apply操作
-                .apply(new WindowFunction<String, Object, Object, TimeWindow>() {
+                .apply(new WindowFunction<FlinkTopicMsg, Object, String, TimeWindow>() {
 
                     @Override
-                    public void apply(Object o, TimeWindow window, Iterable<String> input, Collector<Object> out) throws Exception {
+                    public void apply(String o, TimeWindow window, Iterable<FlinkTopicMsg> input, Collector<Object> out) throws Exception {
                         AtomicReference<String> msgId = new AtomicReference<>();
                         AtomicReference<String> statusCode = new AtomicReference<>();
                         AtomicInteger count = new AtomicInteger();
-                        input.forEach(inputStr -> {
+                        input.forEach(flinkTopicMsg -> {
                             count.getAndIncrement();
-                            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(inputStr, FlinkTopicMsg.class);
-                            if (flinkTopicMsg != null){
-                                if (StringUtils.isNotEmpty(flinkTopicMsg.getMsgId())){
-                                    msgId.set(flinkTopicMsg.getMsgId());
-                                }
-                                if (StringUtils.isEmpty(flinkTopicMsg.getMsgId()) && StringUtils.isNotEmpty(flinkTopicMsg.getStatusCode())){
-                                    statusCode.set(flinkTopicMsg.getStatusCode());
-                                }
+                            if (StringUtils.isNotEmpty(flinkTopicMsg.getMsgId())){
+                                msgId.set(flinkTopicMsg.getMsgId());
+                            }
+                            if (StringUtils.isEmpty(flinkTopicMsg.getMsgId()) && StringUtils.isNotEmpty(flinkTopicMsg.getStatusCode())){
+                                statusCode.set(flinkTopicMsg.getStatusCode());
                             }
                         });
 
@@ -126,41 +134,37 @@ public class MoreKafkaSourceDemoByAssignerWithPunctuatedWatermarks {
         System.out.println("执行结束");
     }
 
-    /**
-     * 键控策略
-     */
-    public static class MyKeySelector implements KeySelector<String, Object> {
 
-        @Override
-        public Object getKey(String value) throws Exception {
 
-            //先解析出这个属于哪个topic
-            //两个topic肯定有一个字段可以关联起来(例子中即tradeId)
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, FlinkTopicMsg.class);
-            return flinkTopicMsg.getTradeId();
+    public static class MyWatermarkGeneratorSupplier implements WatermarkGeneratorSupplier<FlinkTopicMsg> {
+
+        @Override
+        public WatermarkGenerator<FlinkTopicMsg> createWatermarkGenerator(Context context) {
+            return new MyWatermarkGenerator();
         }
     }
 
+    public static class MyWatermarkGenerator implements WatermarkGenerator<FlinkTopicMsg> {
 
-    public static class MyPunctuatedAssigner implements AssignerWithPunctuatedWatermarks<String> {
+        /**
+         * 见到的没有msgId的消息里最大的时间戳
+         */
+        private long maxTimestamp = Long.MIN_VALUE;
 
         @Override
-        public long extractTimestamp(String element, long previousElementTimestamp) {
-            //从报文解析为对象，然后得到报文中的时间戳
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(element, FlinkTopicMsg.class);
-            //获取时间戳
-            return flinkTopicMsg.getCreateTime().getTime();
+        public void onEvent(FlinkTopicMsg event, long eventTimestamp, WatermarkOutput output) {
+            //eventTimestamp就是withTimestampAssigner返回的时间戳
+            if (event.getMsgId() == null && eventTimestamp > maxTimestamp){
+                maxTimestamp = eventTimestamp;
+            }
         }
 
         @Override
-        public Watermark checkAndGetNextWatermark(String lastElement, long extractedTimestamp) {
-
-            //从报文解析为对象，然后得到报文中的时间戳
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(lastElement, FlinkTopicMsg.class);
-            if (flinkTopicMsg.getMsgId() == null){
-                return new Watermark(flinkTopicMsg.getCreateTime().getTime());
+        public void onPeriodicEmit(WatermarkOutput output) {
+            //按env.getConfig().getAutoWatermarkInterval()周期调用，没有推进时框架会自动去重
+            if (maxTimestamp != Long.MIN_VALUE){
+                output.emitWatermark(new Watermark(maxTimestamp));
             }
-            return null;
         }
     }
 
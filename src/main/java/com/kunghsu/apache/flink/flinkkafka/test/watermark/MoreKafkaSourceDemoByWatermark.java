@@ -1,26 +1,25 @@
 package com.kunghsu.apache.flink.flinkkafka.test.watermark;
 
 import com.kunghsu.apache.flink.FlinkUtils;
+import com.kunghsu.apache.flink.flinkkafka.FlinkTopicMsgSource;
 import com.kunghsu.apache.flink.flinkkafka.TopicConstants;
-import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
 import com.kunghsu.apache.flink.flinkkafka.model.FlinkTopicMsg;
+import com.kunghsu.apache.flink.flinkkafka.operators.key.TradeIdKeySelector;
 import com.kunghsu.common.utils.JacksonUtils;
 import com.kunghsu.common.vo.ResultVo;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.flink.api.java.functions.KeySelector;
-import org.apache.flink.streaming.api.TimeCharacteristic;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.api.functions.ProcessFunction;
-import org.apache.flink.streaming.api.functions.timestamps.BoundedOutOfOrdernessTimestampExtractor;
 import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
 import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
-import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.util.Collector;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -31,9 +30,12 @@ import java.util.concurrent.atomic.AtomicReference;
  * 假如两个topic不是在同一个kafka服务端，需要建不同的KafkaConsumer，即需要两个流
  *
  * eventTime的滚动窗口
- * 验证例子--eventTime + BoundedOutOfOrdernessTimestampExtractor的使用
+ * 验证例子--eventTime + WatermarkStrategy.forBoundedOutOfOrderness的使用
+ * 原来用BoundedOutOfOrdernessTimestampExtractor在union之后统一分配：
  * 好久之前的一个窗口里面有数据，但是没有等到下一个可以触发这个窗口执行的数据，
  * 所以之前的这个窗口会一直停留。这种窗口，有些场景明显不适合，数据迟迟得不到处理！！
+ * 现在水位线在每个kafka consumer里按分区生成，并且带空闲检测：
+ * 某个topic或分区一段时间没有数据，就不再拖住整体的水位线，窗口由其他分区的数据推动按时触发
  *
  *
  * author:xuyaokun_kzx
@@ -46,56 +48,34 @@ public class MoreKafkaSourceDemoByWatermark {
 
         final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
 
-        env.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
-
         //同时监听多个主题
-        //创建消费者
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_1);
-        FlinkKafkaConsumer<String> flinkKafkaConsumer2 = FlinkKafkaConfig.getFlinkKafkaConsumer(TopicConstants.TOPIC_FLINK_DEMO_2);
-
-        //添加输入源
-        DataStream<String> topic1Stream = env.addSource(flinkKafkaConsumer);
-        DataStream<String> topic2Stream = env.addSource(flinkKafkaConsumer2);
+        //添加输入源，在源头解析成FlinkTopicMsg，keyBy、窗口函数都不再解析报文
+        //时间戳和水位线在kafka consumer里按分区生成，允许2000毫秒乱序，分区5秒没有数据算空闲
+        WatermarkStrategy<FlinkTopicMsg> watermarkStrategy = FlinkTopicMsgSource.eventTimeWatermarks(
+                Duration.ofMillis(2000), Duration.ofSeconds(5));
+        DataStream<FlinkTopicMsg> topic1Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_1, watermarkStrategy);
+        DataStream<FlinkTopicMsg> topic2Stream = FlinkTopicMsgSource.fromTopic(env, TopicConstants.TOPIC_FLINK_DEMO_2, watermarkStrategy);
         //将流进行合并
-        DataStream<String> stream = topic1Stream.union(topic2Stream);
+        DataStream<FlinkTopicMsg> stream = topic1Stream.union(topic2Stream);
 
         //数据的中间处理操作
         SingleOutputStreamOperator newStream = stream
-                .assignTimestampsAndWatermarks(new BoundedOutOfOrdernessTimestampExtractor<String>(Time.milliseconds(2000)) {
-
-                    /**
-                     * 本例中指定了 maxOutOfOrderness是2000毫秒，即2秒
-                     * @param element
-                     * @return
-                     */
-                    @Override
-                    public long extractTimestamp(String element) {
-                        //从报文解析为对象，然后得到报文中的时间戳
-                        FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(element, FlinkTopicMsg.class);
-                        //获取时间戳
-                        return flinkTopicMsg.getCreateTime().getTime();
-                    }
-
-                })
-                .keyBy(new MyKeySelector()) //键控策略
+                .keyBy(new TradeIdKeySelector()) //键控策略
                 .window(TumblingEventTimeWindows.of(Time.seconds(10))) //设置窗口大小为10秒，window后接apply操作
-                .apply(new WindowFunction<String, Object, Object, TimeWindow>() {
+                .apply(new WindowFunction<FlinkTopicMsg, Object, String, TimeWindow>() {
 
                     @Override
-                    public void apply(Object o, TimeWindow window, Iterable<String> input, Collector<Object> out) throws Exception {
+                    public void apply(String o, TimeWindow window, Iterable<FlinkTopicMsg> input, Collector<Object> out) throws Exception {
                         AtomicReference<String> msgId = new AtomicReference<>();
                         AtomicReference<String> statusCode = new AtomicReference<>();
                         AtomicInteger count = new AtomicInteger();
-                        input.forEach(inputStr -> {
+                        input.forEach(flinkTopicMsg -> {
                             count.getAndIncrement();
-                            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(inputStr, FlinkTopicMsg.class);
-                            if (flinkTopicMsg != null){
-                                if (StringUtils.isNotEmpty(flinkTopicMsg.getMsgId())){
-                                    msgId.set(flinkTopicMsg.getMsgId());
-                                }
-                                if (StringUtils.isEmpty(flinkTopicMsg.getMsgId()) && StringUtils.isNotEmpty(flinkTopicMsg.getStatusCode())){
-                                    statusCode.set(flinkTopicMsg.getStatusCode());
-                                }
+                            if (StringUtils.isNotEmpty(flinkTopicMsg.getMsgId())){
+                                msgId.set(flinkTopicMsg.getMsgId());
+                            }
+                            if (StringUtils.isEmpty(flinkTopicMsg.getMsgId()) && StringUtils.isNotEmpty(flinkTopicMsg.getStatusCode())){
+                                statusCode.set(flinkTopicMsg.getStatusCode());
                             }
                         });
 
@@ -139,22 +119,4 @@ public class MoreKafkaSourceDemoByWatermark {
         System.out.println("执行结束");
     }
 
-    /**
-     * 键控策略
-     */
-    public static class MyKeySelector implements KeySelector<String, Object> {
-
-        @Override
-        public Object getKey(String value) throws Exception {
-
-            //先解析出这个属于哪个topic
-            //两个topic肯定有一个字段可以关联起来(例子中即tradeId)
-            FlinkTopicMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, FlinkTopicMsg.class);
-            return flinkTopicMsg.getTradeId();
-        }
-    }//
-
-
-
-
 }
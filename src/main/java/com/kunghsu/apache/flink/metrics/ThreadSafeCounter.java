@@ -0,0 +1,47 @@
+package com.kunghsu.apache.flink.metrics;
+
+import org.apache.flink.metrics.Counter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程安全的Counter
+ * flink默认的SimpleCounter没有同步，只能在算子线程里累加；
+ * 在异步回调、后台加载线程里累加的指标要用这个，否则并发累加会丢计数
+ *
+ * 用法：getRuntimeContext().getMetricGroup().counter("name", new ThreadSafeCounter())
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/10
+ * desc:
+*/
+public class ThreadSafeCounter implements Counter {
+
+    private final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void inc() {
+        count.incrementAndGet();
+    }
+
+    @Override
+    public void inc(long n) {
+        count.addAndGet(n);
+    }
+
+    @Override
+    public void dec() {
+        count.decrementAndGet();
+    }
+
+    @Override
+    public void dec(long n) {
+        count.addAndGet(-n);
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+}
@@ -3,7 +3,21 @@ package com.kunghsu.apache.flink.tableapi.hive.dao;
 import org.apache.flink.table.api.EnvironmentSettings;
 import org.apache.flink.table.api.Table;
 import org.apache.flink.table.api.TableEnvironment;
+import org.apache.flink.table.catalog.Catalog;
+import org.apache.flink.table.catalog.CatalogBaseTable;
+import org.apache.flink.table.catalog.CatalogPartition;
+import org.apache.flink.table.catalog.CatalogPartitionSpec;
+import org.apache.flink.table.catalog.CatalogTable;
+import org.apache.flink.table.catalog.ObjectPath;
 import org.apache.flink.table.catalog.hive.HiveCatalog;
+import org.apache.flink.table.catalog.stats.CatalogTableStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /**
  * hive操作层
@@ -13,9 +27,16 @@ import org.apache.flink.table.catalog.hive.HiveCatalog;
 */
 public class HiveInfoDao {
 
+    private final static Logger LOGGER = LoggerFactory.getLogger(HiveInfoDao.class);
+
     private static TableEnvironment tableEnv;
     private static final String DEFAULT_DATABASE = "default";
 
+    /**
+     * HiveCatalog.getPartition把分区目录放在这个属性里（SqlCreateHiveTable.TABLE_LOCATION_URI）
+     */
+    private static final String LOCATION_URI_PROPERTY = "hive.location-uri";
+
     public static void main(String[] args) {
 
         String catalogName     = "myhive";
@@ -36,8 +57,25 @@ public class HiveInfoDao {
      */
     public static void init(String catalogName, String hiveConfDir, String version, String database){
 
+        tableEnv = createTableEnv(catalogName, hiveConfDir, version, database);
+        tableEnv.getConfig().getConfiguration().setString("table.dynamic-table-options.enabled", "true");
+    }
+
+    /**
+     * 创建一个注册好hive catalog的tableEnv，不影响init创建的静态tableEnv
+     * 每个HiveCatalog都持有一个metastore连接，需要长期、反复访问hive的地方（例如定时查分区）应该创建一次后一直复用，
+     * 用完调用close(tableEnv)释放，不要每次都调用init
+     *
+     * @param catalogName
+     * @param hiveConfDir
+     * @param version
+     * @param database
+     * @return
+     */
+    public static TableEnvironment createTableEnv(String catalogName, String hiveConfDir, String version, String database){
+
         EnvironmentSettings environmentSettings = EnvironmentSettings.newInstance().useBlinkPlanner().inStreamingMode().build();
-        tableEnv = TableEnvironment.create(environmentSettings);
+        TableEnvironment tableEnv = TableEnvironment.create(environmentSettings);
 
         HiveCatalog hive = new HiveCatalog(catalogName, DEFAULT_DATABASE, hiveConfDir, version);
         //java.io.IOException: No FileSystem for scheme: hdfs
@@ -46,8 +84,28 @@ public class HiveInfoDao {
         tableEnv.registerCatalog(catalogName, hive);
         tableEnv.useCatalog(catalogName);
         tableEnv.useDatabase(database);
+        return tableEnv;
+    }
 
-        tableEnv.getConfig().getConfiguration().setString("table.dynamic-table-options.enabled", "true");
+    /**
+     * 关闭tableEnv里注册的所有catalog（HiveCatalog会断开metastore连接）
+     *
+     * @param tableEnv 为空时不处理
+     */
+    public static void close(TableEnvironment tableEnv) {
+
+        if (tableEnv == null) {
+            return;
+        }
+        for (String catalogName : tableEnv.listCatalogs()) {
+            tableEnv.getCatalog(catalogName).ifPresent(catalog -> {
+                try {
+                    catalog.close();
+                } catch (Exception e) {
+                    LOGGER.warn("关闭catalog失败，catalog:{}", catalogName, e);
+                }
+            });
+        }
     }
 
     /**
@@ -62,5 +120,194 @@ public class HiveInfoDao {
         return mytable;
     }
 
+    /**
+     * 按HiveScan扫描表，使用init时创建的tableEnv
+     *
+     * @param scan
+     * @return
+     * @throws Exception
+     */
+    public static Table scan(HiveScan scan) throws Exception {
+        return scan(tableEnv, scan);
+    }
+
+    /**
+     * 按HiveScan扫描表，表在tableEnv当前的catalog和database下
+     *
+     * 和直接写SQL的区别：
+     * 1.列、分区字段先和元数据核对，写错了马上报错，不会等到执行时才发现
+     * 2.执行前检查优化后的执行计划，分区条件没有下推到hive source（变成全表扫描后过滤）、
+     *   或者列裁剪没有下推（读出所有列）时直接报错
+     * 3.打印命中的分区数和这些分区的数据量
+     *
+     * 注意：有界扫描（HiveScan默认）通过 OPTIONS('streaming-source.enable'='false') 提示关掉流式读取，
+     * 为此会在传入的tableEnv上设置 table.dynamic-table-options.enabled=true，
+     * 这个配置会一直留在tableEnv上，对之后在这个tableEnv上执行的所有SQL都生效（允许SQL里写OPTIONS提示）
+     *
+     * @param tableEnv
+     * @param scan
+     * @return 只包含scan.getColumns()的表，可以继续where、join
+     * @throws Exception
+     */
+    public static Table scan(TableEnvironment tableEnv, HiveScan scan) throws Exception {
+
+        String catalogName = tableEnv.getCurrentCatalog();
+        Catalog catalog = tableEnv.getCatalog(catalogName)
+                .orElseThrow(() -> new IllegalStateException("catalog未注册：" + catalogName));
+        ObjectPath tablePath = new ObjectPath(tableEnv.getCurrentDatabase(), scan.getTableName());
+        CatalogBaseTable baseTable = catalog.getTable(tablePath);
+        if (!(baseTable instanceof CatalogTable)) {
+            throw new IllegalArgumentException("不是表：" + tablePath.getFullName());
+        }
+        CatalogTable catalogTable = (CatalogTable) baseTable;
+
+        List<String> allColumns = Arrays.asList(catalogTable.getSchema().getFieldNames());
+        for (String column : scan.getColumns()) {
+            if (!allColumns.contains(column)) {
+                throw new IllegalArgumentException("表" + tablePath.getFullName() + "没有列：" + column);
+            }
+        }
+        List<String> partitionKeys = catalogTable.getPartitionKeys();
+        for (String partitionKey : scan.getPartitionSpec().keySet()) {
+            if (!partitionKeys.contains(partitionKey)) {
+                throw new IllegalArgumentException("不是表" + tablePath.getFullName() + "的分区字段，无法分区裁剪：" + partitionKey);
+            }
+        }
+
+        if (scan.isBounded()) {
+            tableEnv.getConfig().getConfiguration().setString("table.dynamic-table-options.enabled", "true");
+        }
+        Table table = tableEnv.sqlQuery(scan.toSql());
+        verifyPushDown(table, catalogName, tablePath, scan, allColumns.size());
+        logScanSize(catalog, tablePath, partitionKeys, scan);
+        return table;
+    }
+
+    /**
+     * 检查优化后的执行计划里，hive source是否带上了分区和列裁剪
+     * blink planner下推成功时，这张表的TableSourceScan会带上 partitions=[...]、project=[...]，例如：
+     * TableSourceScan(table=[[myhive, test, people_partition4, partitions=[{partstart=20220208}], project=[name, destination]]], ...)
+     * 只看这张表的TableSourceScan，SQL里join了其他表时，其他表的下推情况不影响判断
+     */
+    private static void verifyPushDown(Table table, String catalogName, ObjectPath tablePath, HiveScan scan, int columnCount) {
+
+        String plan = table.explain();
+        String scanPrefix = "TableSourceScan(table=[[" + catalogName + ", " + tablePath.getDatabaseName()
+                + ", " + tablePath.getObjectName();
+        List<String> scanLines = new ArrayList<>();
+        for (String line : plan.split("\n")) {
+            int index = line.indexOf(scanPrefix);
+            int end = index + scanPrefix.length();
+            //表名后面是逗号（带下推信息）或者右括号，排除表名前缀相同的其他表
+            if (index >= 0 && end < line.length() && (line.charAt(end) == ',' || line.charAt(end) == ']')) {
+                scanLines.add(line.trim());
+            }
+        }
+        if (scanLines.isEmpty()) {
+            throw new IllegalStateException("执行计划里没有找到" + tablePath.getFullName() + "的TableSourceScan，" + scan + "，执行计划：\n" + plan);
+        }
+        for (String scanLine : scanLines) {
+            if (!scan.getPartitionSpec().isEmpty() && !scanLine.contains("partitions=[")) {
+                throw new IllegalStateException("分区条件没有下推到hive source，" + scan + "，执行计划：\n" + plan);
+            }
+            if (scan.getColumns().size() < columnCount && !scanLine.contains("project=[")) {
+                throw new IllegalStateException("列裁剪没有下推到hive source，" + scan + "，执行计划：\n" + plan);
+            }
+        }
+    }
+
+    /**
+     * 打印命中的分区数和数据量
+     * 数据量取自hive的统计信息（分区文件总大小），列式存储只读部分列时，实际读取的字节数会更少
+     * 没有统计信息时需要先执行 ANALYZE TABLE ... COMPUTE STATISTICS
+     */
+    private static void logScanSize(Catalog catalog, ObjectPath tablePath, List<String> partitionKeys,
+                                    HiveScan scan) throws Exception {
+
+        if (partitionKeys.isEmpty()) {
+            long totalSize = catalog.getTableStatistics(tablePath).getTotalSize();
+            LOGGER.info("hive扫描，{} 非分区表 数据量:{}", scan, formatSize(totalSize));
+            return;
+        }
+
+        int partitionCount = catalog.listPartitions(tablePath).size();
+        List<CatalogPartitionSpec> partitions = scan.getPartitionSpec().isEmpty()
+                ? catalog.listPartitions(tablePath)
+                : catalog.listPartitions(tablePath, new CatalogPartitionSpec(scan.getPartitionSpec()));
+        long totalSize = 0L;
+        for (CatalogPartitionSpec partition : partitions) {
+            CatalogTableStatistics statistics = catalog.getPartitionStatistics(tablePath, partition);
+            if (statistics.getTotalSize() < 0) {
+                totalSize = -1L;
+                break;
+            }
+            totalSize += statistics.getTotalSize();
+        }
+        LOGGER.info("hive扫描，{} 命中分区数:{}/{} 数据量:{}", scan, partitions.size(), partitionCount, formatSize(totalSize));
+    }
+
+    private static String formatSize(long bytes) {
+        return bytes < 0 ? "未知（没有统计信息）" : bytes + "字节";
+    }
+
+    /**
+     * 查询表的某个分区字段的所有取值，使用init时创建的tableEnv
+     * @param tableName
+     * @param partitionKey 例如partstart
+     * @return
+     * @throws Exception
+     */
+    public static List<String> listPartitionValues(String tableName, String partitionKey) throws Exception {
+        return listPartitionValues(tableEnv, tableName, partitionKey);
+    }
+
+    /**
+     * 查询表的某个分区字段的所有取值，表在tableEnv当前的catalog和database下
+     * 直接查元数据（Catalog.listPartitions），不会扫描数据
+     * @param tableEnv
+     * @param tableName
+     * @param partitionKey 例如partstart
+     * @return
+     * @throws Exception
+     */
+    public static List<String> listPartitionValues(TableEnvironment tableEnv, String tableName, String partitionKey) throws Exception {
+
+        String catalogName = tableEnv.getCurrentCatalog();
+        Catalog catalog = tableEnv.getCatalog(catalogName)
+                .orElseThrow(() -> new IllegalStateException("catalog未注册：" + catalogName));
+        List<String> partitionValues = new ArrayList<>();
+        for (CatalogPartitionSpec partitionSpec : catalog.listPartitions(new ObjectPath(tableEnv.getCurrentDatabase(), tableName))) {
+            String value = partitionSpec.getPartitionSpec().get(partitionKey);
+            if (value != null) {
+                partitionValues.add(value);
+            }
+        }
+        return partitionValues;
+    }
+
+    /**
+     * 查询分区在文件系统上的目录，表在tableEnv当前的catalog和database下
+     * 只查元数据（Catalog.getPartition），不会扫描数据，也不会提交作业，可以在TM上调用
+     * @param tableEnv
+     * @param tableName
+     * @param partitionSpec 例如{partstart=20220219}
+     * @return 例如hdfs://127.0.0.1:9000/user/hive/warehouse/test.db/user_location_partition_info_temporal2/partstart=20220219
+     * @throws Exception
+     */
+    public static String partitionLocation(TableEnvironment tableEnv, String tableName, Map<String, String> partitionSpec) throws Exception {
+
+        String catalogName = tableEnv.getCurrentCatalog();
+        Catalog catalog = tableEnv.getCatalog(catalogName)
+                .orElseThrow(() -> new IllegalStateException("catalog未注册：" + catalogName));
+        ObjectPath tablePath = new ObjectPath(tableEnv.getCurrentDatabase(), tableName);
+        CatalogPartition partition = catalog.getPartition(tablePath, new CatalogPartitionSpec(partitionSpec));
+        String location = partition.getProperties().get(LOCATION_URI_PROPERTY);
+        if (location == null) {
+            throw new IllegalStateException("分区元数据里没有" + LOCATION_URI_PROPERTY + "，catalog:" + catalogName
+                    + " table:" + tablePath.getFullName() + " partition:" + partitionSpec);
+        }
+        return location;
+    }
+
 
 }
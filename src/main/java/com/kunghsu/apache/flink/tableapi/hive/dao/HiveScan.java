@@ -0,0 +1,185 @@
+package com.kunghsu.apache.flink.tableapi.hive.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次hive表扫描：表名、要读的列、分区条件、limit
+ * 配合HiveInfoDao.scan使用，代替手写SQL字符串
+ *
+ * 分区条件只支持分区字段的等值条件，这样才能保证在hive source里做分区裁剪，只读命中的分区
+ * 非分区字段的过滤在返回的Table上做（table.where(...)）
+ *
+ * 用法：
+ * HiveScan.table("people_partition4").columns("name", "destination").partition("partstart", "20220208").limit(1000).build()
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/10
+ * desc:
+*/
+public class HiveScan {
+
+    private final String tableName;
+
+    private final List<String> columns;
+
+    /**
+     * 分区字段 -> 分区值
+     */
+    private final Map<String, String> partitionSpec;
+
+    /**
+     * 小于0表示不限制
+     */
+    private final long limit;
+
+    /**
+     * true表示一次性读取，读完就结束（关掉建表语句里可能开启的streaming-source.enable）
+     */
+    private final boolean bounded;
+
+    private HiveScan(Builder builder) {
+        this.tableName = builder.tableName;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(builder.columns));
+        this.partitionSpec = Collections.unmodifiableMap(new LinkedHashMap<>(builder.partitionSpec));
+        this.limit = builder.limit;
+        this.bounded = builder.bounded;
+    }
+
+    public static Builder table(String tableName) {
+        return new Builder(tableName);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public Map<String, String> getPartitionSpec() {
+        return partitionSpec;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * 生成的SQL，列名、分区字段都用反引号括起来，分区值里的单引号会被转义
+     */
+    public String toSql() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(quote(columns.get(i)));
+        }
+        sql.append(" FROM ").append(quote(tableName));
+        if (bounded) {
+            sql.append(" /*+ OPTIONS('streaming-source.enable'='false') */");
+        }
+        boolean first = true;
+        for (Map.Entry<String, String> entry : partitionSpec.entrySet()) {
+            sql.append(first ? " WHERE " : " AND ");
+            sql.append(quote(entry.getKey())).append(" = '").append(entry.getValue().replace("'", "''")).append("'");
+            first = false;
+        }
+        if (limit >= 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        return sql.toString();
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    @Override
+    public String toString() {
+        return "HiveScan{" +
+                "tableName='" + tableName + '\'' +
+                ", columns=" + columns +
+                ", partitionSpec=" + partitionSpec +
+                ", limit=" + limit +
+                ", bounded=" + bounded +
+                '}';
+    }
+
+    public static class Builder {
+
+        private final String tableName;
+
+        private final List<String> columns = new ArrayList<>();
+
+        private final Map<String, String> partitionSpec = new LinkedHashMap<>();
+
+        private long limit = -1L;
+
+        private boolean bounded = true;
+
+        private Builder(String tableName) {
+            if (tableName == null || tableName.isEmpty()) {
+                throw new IllegalArgumentException("tableName不能为空");
+            }
+            this.tableName = tableName;
+        }
+
+        /**
+         * 要读的列，必须显式指定，不支持 *
+         */
+        public Builder columns(String... columns) {
+            for (String column : columns) {
+                if (column == null || column.isEmpty() || "*".equals(column)) {
+                    throw new IllegalArgumentException("列名非法：" + column);
+                }
+                this.columns.add(column);
+            }
+            return this;
+        }
+
+        /**
+         * 分区等值条件，多级分区时多次调用
+         */
+        public Builder partition(String partitionKey, String partitionValue) {
+            if (partitionValue == null) {
+                throw new IllegalArgumentException("分区值不能为空：" + partitionKey);
+            }
+            this.partitionSpec.put(partitionKey, partitionValue);
+            return this;
+        }
+
+        public Builder limit(long limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit不能小于0");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * 按建表语句的配置读取，表开启了streaming-source.enable时会一直监控新分区
+         */
+        public Builder unbounded() {
+            this.bounded = false;
+            return this;
+        }
+
+        public HiveScan build() {
+            if (columns.isEmpty()) {
+                throw new IllegalArgumentException("至少要指定一列：" + tableName);
+            }
+            return new HiveScan(this);
+        }
+    }
+
+}
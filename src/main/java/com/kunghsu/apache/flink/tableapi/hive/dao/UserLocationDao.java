@@ -0,0 +1,54 @@
+package com.kunghsu.apache.flink.tableapi.hive.dao;
+
+import org.apache.flink.table.api.TableEnvironment;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 用户位置表操作层
+ * 表结构详见doc/example/coupon/coupon-demo-temporal.sql
+ *
+ * 这里只查元数据（分区列表、分区目录），不读数据
+ * 分区数据由调用方直接读分区目录下的文件（见TextFileUserLocationIndexLoader），
+ * 不通过table.execute().collect()读：那样在TM上每加载一次分区就会在TM里再起一个MiniCluster跑作业
+ * tableEnv由调用方通过HiveInfoDao.createTableEnv创建并复用
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/3
+ * desc:
+*/
+public class UserLocationDao {
+
+    public static final String PARTITION_KEY = "partstart";
+
+    /**
+     * 查询最新分区（分区值是yyyyMMdd，按字符串比较即可）
+     * @param tableEnv
+     * @param tableName
+     * @return 没有分区时返回null
+     * @throws Exception
+     */
+    public static String latestPartition(TableEnvironment tableEnv, String tableName) throws Exception {
+
+        List<String> partitionValues = HiveInfoDao.listPartitionValues(tableEnv, tableName, PARTITION_KEY);
+        if (partitionValues.isEmpty()) {
+            return null;
+        }
+        return Collections.max(partitionValues);
+    }
+
+    /**
+     * 查询一个分区的目录
+     *
+     * @param tableEnv
+     * @param tableName 例如user_location_partition_info_temporal2
+     * @param partition 例如20220219
+     * @return 分区目录
+     * @throws Exception 分区不存在时抛PartitionNotExistException
+     */
+    public static String partitionLocation(TableEnvironment tableEnv, String tableName, String partition) throws Exception {
+        return HiveInfoDao.partitionLocation(tableEnv, tableName, Collections.singletonMap(PARTITION_KEY, partition));
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.kunghsu.apache.flink.tableapi.hive.entity;
+
+import java.util.Arrays;
+
+/**
+ * 用户位置表（user_location_partition_info_temporal）的列式存储
+ *
+ * hive表里经纬度都是string，原来的SQL每次join都要CAST一遍
+ * 这里在加载分区时只解析一次，转成double数组，后面的匹配算子直接读数组
+ * 无法解析的坐标（空值、\N、脏数据）存成Double.NaN
+ *
+ * 按列存放（struct-of-arrays），千万级数据不会产生千万个小对象
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/3
+ * desc:
+*/
+public class UserLocationColumns {
+
+    private static final int REFERENCE_BYTES = 4;
+
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private String[] certTypes;
+    private String[] certNbrs;
+    private double[] lats;
+    private double[] lngs;
+    private double[] latNights;
+    private double[] lngNights;
+    private int size;
+
+    public UserLocationColumns() {
+        this(1024);
+    }
+
+    public UserLocationColumns(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        certTypes = new String[capacity];
+        certNbrs = new String[capacity];
+        lats = new double[capacity];
+        lngs = new double[capacity];
+        latNights = new double[capacity];
+        lngNights = new double[capacity];
+    }
+
+    /**
+     * 直接使用已经读好的数组，不再逐行add，数组长度就是行数
+     * 用于从快照文件（UserLocationSnapshot）整列读入
+     */
+    public static UserLocationColumns of(String[] certTypes, String[] certNbrs, double[] lats, double[] lngs,
+                                         double[] latNights, double[] lngNights) {
+        int size = certTypes.length;
+        if (certNbrs.length != size || lats.length != size || lngs.length != size
+                || latNights.length != size || lngNights.length != size) {
+            throw new IllegalArgumentException("各列长度不一致");
+        }
+        UserLocationColumns columns = new UserLocationColumns(0);
+        columns.certTypes = certTypes;
+        columns.certNbrs = certNbrs;
+        columns.lats = lats;
+        columns.lngs = lngs;
+        columns.latNights = latNights;
+        columns.lngNights = lngNights;
+        columns.size = size;
+        return columns;
+    }
+
+    public void add(String certType, String certNbr, double lat, double lng, double latNight, double lngNight) {
+        if (size == certTypes.length) {
+            resize(Math.max(size << 1, 16));
+        }
+        certTypes[size] = certType;
+        certNbrs[size] = certNbr;
+        lats[size] = lat;
+        lngs[size] = lng;
+        latNights[size] = latNight;
+        lngNights[size] = lngNight;
+        size++;
+    }
+
+    /**
+     * 加载完成后调用，释放多余的数组空间
+     */
+    public void trimToSize() {
+        if (size < certTypes.length) {
+            resize(size);
+        }
+    }
+
+    private void resize(int newLength) {
+        certTypes = Arrays.copyOf(certTypes, newLength);
+        certNbrs = Arrays.copyOf(certNbrs, newLength);
+        lats = Arrays.copyOf(lats, newLength);
+        lngs = Arrays.copyOf(lngs, newLength);
+        latNights = Arrays.copyOf(latNights, newLength);
+        lngNights = Arrays.copyOf(lngNights, newLength);
+    }
+
+    /**
+     * 解析hive里的坐标字符串，解析不了的返回NaN
+     *
+     * @param value
+     * @return
+     */
+    public static double parseCoordinate(String value) {
+        if (value == null || value.isEmpty() || "\\N".equals(value)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 估算占用的堆内存（字节），只用于监控，不追求精确
+     * 按压缩指针估算：引用4字节，String对象本身约40字节，证件号这类字符串按每个字符1字节
+     * 会遍历所有行，只在加载完成时算一次，不要在指标里反复调用
+     */
+    public long estimatedMemoryBytes() {
+        long bytes = (long) certTypes.length * REFERENCE_BYTES * 2 + (long) lats.length * Double.BYTES * 4;
+        for (int i = 0; i < size; i++) {
+            bytes += stringBytes(certTypes[i]) + stringBytes(certNbrs[i]);
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0L : STRING_OVERHEAD_BYTES + value.length();
+    }
+
+    /**
+     * 以下数组的有效长度是size()，不要修改数组内容
+     */
+    public String[] getCertTypes() {
+        return certTypes;
+    }
+
+    public String[] getCertNbrs() {
+        return certNbrs;
+    }
+
+    public double[] getLats() {
+        return lats;
+    }
+
+    public double[] getLngs() {
+        return lngs;
+    }
+
+    public double[] getLatNights() {
+        return latNights;
+    }
+
+    public double[] getLngNights() {
+        return lngNights;
+    }
+
+}
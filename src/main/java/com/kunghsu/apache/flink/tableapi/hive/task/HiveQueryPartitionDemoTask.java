@@ -1,6 +1,7 @@
 package com.kunghsu.apache.flink.tableapi.hive.task;
 
 import com.kunghsu.apache.flink.tableapi.hive.dao.HiveInfoDao;
+import com.kunghsu.apache.flink.tableapi.hive.dao.HiveScan;
 import com.kunghsu.apache.flink.tableapi.hive.entity.PeopleHiveDO;
 import com.kunghsu.common.utils.JacksonUtils;
 import org.apache.flink.table.api.Table;
@@ -10,6 +11,8 @@ import org.apache.flink.util.CloseableIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.apache.flink.table.api.Expressions.$;
+
 /**
  * 分区查询demo
  * 默认查询最新分区
@@ -43,14 +46,14 @@ public class HiveQueryPartitionDemoTask {
                     "where name = 'name1'"
                     ;
 
-            //带分区查询
-            String sql2 = "SELECT id, name, destination FROM people_partition4 " +
-                    "where name = 'name1' and partstart = '20220208'"
-                    ;
-
             //初始化table对象
             HiveInfoDao.init(catalogName, hiveConfDir, version, database);
-            Table table = HiveInfoDao.query(sql2);
+            //带分区查询，只读20220208这个分区的id、name、destination三列
+            Table table = HiveInfoDao.scan(HiveScan.table("people_partition4")
+                    .columns("id", "name", "destination")
+                    .partition("partstart", "20220208")
+                    .build())
+                    .where($("name").isEqual("name1"));
             //执行拿到结果
             TableResult tableResult = table.execute();
             CloseableIterator<Row> rowCloseableIterator = tableResult.collect();
@@ -2,6 +2,8 @@ package com.kunghsu.apache.flink.tableapi.hive.task;
 
 import com.kunghsu.apache.flink.flinkkafka.TopicConstants;
 import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
+import com.kunghsu.apache.flink.tableapi.hive.dao.HiveInfoDao;
+import com.kunghsu.apache.flink.tableapi.hive.dao.HiveScan;
 import com.kunghsu.apache.flink.tableapi.hive.kafkamsg.KafkaAndHiveDemoMsg;
 import com.kunghsu.common.utils.JacksonUtils;
 import org.apache.flink.api.common.functions.MapFunction;
@@ -74,17 +76,12 @@ public class HiveTableJoinKafkaTableDemoTask {
 //        tableEnv.getConfig().setSqlDialect(SqlDialect.HIVE);
 //        tableEnv.getConfig().getConfiguration().setString("table.dynamic-table-options.enabled", "true");
 
-        String sql = "SELECT id, name, destination, partstart FROM people_partition4"
-//                + "where name = 'name1'" //带上分区信息
-//                (加where会报错的原因是忘记在where前加空格,Caused by: org.apache.flink.sql.parser.impl.ParseException: Encountered "=")
-                ;
-        String sql2 = "SELECT a.id, a.name, a.destination, a.partstart FROM people_partition4 a"
-                + " WHERE a.partstart='20220208'" //带上分区信息
-                ;
-        String sql3 = "SELECT id, name, destination, partstart FROM people_partition4 "
-                + " WHERE partstart='20220208'" //带上分区信息(注意，这里的分区值必须用引号括起来)
-                ;
-        Table hiveTable = tableEnv.sqlQuery(sql2);
+        //带上分区信息，只读20220208这个分区，只读下游用到的name、destination、partstart
+        //不带分区时会扫描所有分区，HiveScan会打印命中的分区数和数据量
+        Table hiveTable = HiveInfoDao.scan(tableEnv, HiveScan.table("people_partition4")
+                .columns("name", "destination", "partstart")
+                .partition("partstart", "20220208")
+                .build());
 
         //两个表连接join
         Table resTable = inputTable.join(hiveTable);
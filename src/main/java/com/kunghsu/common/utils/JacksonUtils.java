@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -134,6 +135,16 @@ public class JacksonUtils {
         return defaultSupplier.get();
     }
 
+    /**
+     * 得到指定类型的ObjectReader，和其他方法用的是同一套配置
+     * ObjectReader是线程安全的，调用方可以缓存起来重复使用，直接从byte[]解析，省掉转String的拷贝
+     * @param tClass
+     * @return
+     */
+    public static ObjectReader readerFor(Class<?> tClass) {
+        return mapper.readerFor(tClass);
+    }
+
     /**
      * 根据字符串得到具体的Java对象，支持泛型
      * @param obj
@@ -0,0 +1,140 @@
+package com.kunghsu.example.coupon;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * 发券请求的kafka反序列化
+ * 直接从byte[]流式解析成CouponInputTableVO2，代替 SimpleStringSchema + JacksonUtils转CouponInputMsg + 再拷贝一遍字段 的两次map
+ *
+ * 字段名和JacksonUtils处理CouponInputMsg时一致（jackson只把getCOUPON_ID开头连续的大写转成小写，得到coupon_ID），结果和原来的两次map相同：
+ * coupon_ID, store_RANGE, store_LONGITUDE, store_LATITUDE, user_NUM, message_TYPE, store_ID, unique_REQ_ID
+ * 不认识的字段直接跳过
+ *
+ * 解析失败时返回null，kafka consumer会跳过这条消息（原来的做法会在第二个map里空指针导致任务失败）
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/7
+ * desc:
+*/
+public class CouponInputDeserializationSchema implements DeserializationSchema<CouponInputTableVO2> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CouponInputDeserializationSchema.class);
+
+    /**
+     * JsonFactory是线程安全的，全局共用一个
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 证件类型，和原来map里的取值一致
+     */
+    private static final String CERT_TYPE = "1";
+
+    @Override
+    public CouponInputTableVO2 deserialize(byte[] message) throws IOException {
+
+        if (message == null || message.length == 0) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                LOGGER.warn("发券请求不是json对象，message:{}", new String(message, StandardCharsets.UTF_8));
+                return null;
+            }
+            CouponInputTableVO2 couponInputTableVO = new CouponInputTableVO2();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken valueToken = parser.nextToken();
+                if (valueToken == JsonToken.START_OBJECT || valueToken == JsonToken.START_ARRAY) {
+                    if (isKnownField(fieldName)) {
+                        LOGGER.warn("发券请求字段类型不对，field:{} message:{}", fieldName, new String(message, StandardCharsets.UTF_8));
+                        return null;
+                    }
+                    parser.skipChildren();
+                    continue;
+                }
+                String value = valueToken == JsonToken.VALUE_NULL ? null : parser.getText();
+                setField(couponInputTableVO, fieldName, value);
+            }
+            couponInputTableVO.setCreateTime(new Date());
+            couponInputTableVO.setType(CERT_TYPE);
+            return couponInputTableVO;
+        } catch (IOException e) {
+            LOGGER.warn("发券请求解析失败，message:{}", new String(message, StandardCharsets.UTF_8), e);
+            return null;
+        }
+    }
+
+    private static boolean isKnownField(String fieldName) {
+        switch (fieldName) {
+            case "coupon_ID":
+            case "store_RANGE":
+            case "store_LONGITUDE":
+            case "store_LATITUDE":
+            case "user_NUM":
+            case "message_TYPE":
+            case "store_ID":
+            case "unique_REQ_ID":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void setField(CouponInputTableVO2 couponInputTableVO, String fieldName, String value) {
+        switch (fieldName) {
+            case "coupon_ID":
+                couponInputTableVO.setCouponId(value);
+                break;
+            case "store_RANGE":
+                couponInputTableVO.setStoreRange(value);
+                break;
+            case "store_LONGITUDE":
+                couponInputTableVO.setStoreLongitude(value);
+                break;
+            case "store_LATITUDE":
+                couponInputTableVO.setStoreLatitude(value);
+                break;
+            case "user_NUM":
+                couponInputTableVO.setUserNum(value);
+                break;
+            case "message_TYPE":
+                couponInputTableVO.setMessageType(value);
+                break;
+            case "store_ID":
+                couponInputTableVO.setStoreId(value);
+                break;
+            case "unique_REQ_ID":
+                couponInputTableVO.setUniqueReqId(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public boolean isEndOfStream(CouponInputTableVO2 nextElement) {
+        return false;
+    }
+
+    /**
+     * 明确声明成POJO，下游shuffle走PojoSerializer，不会退化成Kryo
+     */
+    @Override
+    public TypeInformation<CouponInputTableVO2> getProducedType() {
+        return Types.POJO(CouponInputTableVO2.class);
+    }
+
+}
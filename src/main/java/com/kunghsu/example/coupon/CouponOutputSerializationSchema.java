@@ -0,0 +1,100 @@
+package com.kunghsu.example.coupon;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.apache.flink.api.common.serialization.SerializationSchema;
+import org.apache.flink.streaming.connectors.kafka.KafkaSerializationSchema;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 发券结果的kafka序列化
+ * 直接把CouponOutputMsg写成json字节，代替 JacksonUtils转String + SimpleStringSchema再编码一次
+ *
+ * 1.JsonGenerator和缓冲区在每个subtask里只创建一次，之后每条消息复用
+ * 2.字段名、null的处理和JacksonUtils.toJSONString(CouponOutputMsg)一致（jackson把getCOUPON_ID转成coupon_ID）
+ * 3.消息key用UNIQUE_REQ_ID，同一个请求的01、02、03落在同一个分区，保证顺序，也方便producer按分区攒批
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CouponOutputSerializationSchema implements KafkaSerializationSchema<CouponOutputMsg> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * JsonFactory是线程安全的，全局共用一个
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String topic;
+
+    private transient ByteArrayBuilder buffer;
+
+    private transient JsonGenerator generator;
+
+    public CouponOutputSerializationSchema(String topic) {
+        this.topic = topic;
+    }
+
+    @Override
+    public void open(SerializationSchema.InitializationContext context) throws Exception {
+        createGenerator();
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> serialize(CouponOutputMsg element, @Nullable Long timestamp) {
+        byte[] key = element.getUNIQUE_REQ_ID() == null ? null : element.getUNIQUE_REQ_ID().getBytes(StandardCharsets.UTF_8);
+        return new ProducerRecord<>(topic, null, timestamp, key, toJsonBytes(element));
+    }
+
+    /**
+     * CouponOutputMsg -> json字节
+     *
+     * @param element
+     * @return
+     */
+    public byte[] toJsonBytes(CouponOutputMsg element) {
+        try {
+            if (generator == null) {
+                createGenerator();
+            }
+            generator.writeStartObject();
+            generator.writeStringField("coupon_ID", element.getCOUPON_ID());
+            generator.writeStringField("message_TYPE", element.getMESSAGE_TYPE());
+            generator.writeStringField("coupon_SEND_NUM", element.getCOUPON_SEND_NUM());
+            generator.writeStringField("serial_NO", element.getSERIAL_NO());
+            generator.writeStringField("id_TYPE", element.getID_TYPE());
+            generator.writeStringField("id_NUMBER", element.getID_NUMBER());
+            generator.writeStringField("store_ID", element.getSTORE_ID());
+            generator.writeStringField("store_RANGE", element.getSTORE_RANGE());
+            generator.writeStringField("unique_REQ_ID", element.getUNIQUE_REQ_ID());
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            //写内存缓冲区不会真的出现IO异常，出现了说明generator状态已经乱了，丢弃重建
+            generator = null;
+            throw new UncheckedIOException("CouponOutputMsg序列化失败", e);
+        } finally {
+            if (buffer != null) {
+                buffer.reset();
+            }
+        }
+    }
+
+    private void createGenerator() throws IOException {
+        buffer = new ByteArrayBuilder(512);
+        generator = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8);
+        //多条消息共用一个generator，根级别的值之间默认会加一个空格，这里去掉
+        generator.setRootValueSeparator(null);
+    }
+
+}
@@ -1,23 +1,20 @@
 package com.kunghsu.example.coupon;
 
 import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
+import com.kunghsu.apache.flink.flinkkafka.config.KafkaConsumerConfig;
 import com.kunghsu.common.utils.JacksonUtils;
 import com.kunghsu.example.coupon.function.CurrentMinute;
 import com.kunghsu.example.coupon.function.LatFunction;
 import com.kunghsu.example.coupon.function.LngFunction;
-import com.kunghsu.example.coupon.table.CouponInputTableVO;
-import org.apache.commons.lang3.StringUtils;
+import com.kunghsu.example.coupon.operators.CouponRequestCompletionFunction;
+import com.kunghsu.example.coupon.operators.CouponRequestKeySelector;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
 import org.apache.flink.api.common.functions.MapFunction;
-import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.api.functions.ProcessFunction;
-import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
-import org.apache.flink.streaming.api.windowing.assigners.ProcessingTimeSessionWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
-import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
 import org.apache.flink.table.api.EnvironmentSettings;
@@ -25,13 +22,9 @@ import org.apache.flink.table.api.Table;
 import org.apache.flink.table.api.bridge.java.StreamTableEnvironment;
 import org.apache.flink.table.catalog.hive.HiveCatalog;
 import org.apache.flink.types.Row;
-import org.apache.flink.util.Collector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import java.util.UUID;
 
 import static org.apache.flink.table.api.Expressions.$;
@@ -66,32 +59,10 @@ public class UserCouponMatchingAutoIdentifyPartitionByAllTask {
         EnvironmentSettings environmentSettings = EnvironmentSettings.newInstance().useBlinkPlanner().inStreamingMode().build();
         StreamTableEnvironment tableEnv = StreamTableEnvironment.create(env, environmentSettings);
 
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = KafkaConsumerProducerConfig.getFlinkKafkaConsumer("coupon-input");
-        //添加输入源
-        DataStream<String> stream = env.addSource(flinkKafkaConsumer);
-        SingleOutputStreamOperator<CouponInputTableVO> stream2 = stream.map(new MapFunction<String, CouponInputMsg>() {
-            @Override
-            public CouponInputMsg map(String value) throws Exception {
-                System.out.println("输入端入参：" + value);
-                CouponInputMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, CouponInputMsg.class);
-                return flinkTopicMsg;
-            }
-        }).map(new MapFunction<CouponInputMsg, CouponInputTableVO>() {
-            @Override
-            public CouponInputTableVO map(CouponInputMsg value) throws Exception {
-                CouponInputTableVO couponInputTableVO = new CouponInputTableVO();
-                couponInputTableVO.setMessageType(value.getMESSAGE_TYPE());
-                couponInputTableVO.setCouponId(value.getCOUPON_ID());
-                couponInputTableVO.setStoreId(value.getSTORE_ID());
-                couponInputTableVO.setStoreRange(value.getSTORE_RANGE());
-                couponInputTableVO.setStoreLatitude(value.getSTORE_LATITUDE());
-                couponInputTableVO.setStoreLongitude(value.getSTORE_LONGITUDE());
-                couponInputTableVO.setUserNum(value.getUSER_NUM());
-                couponInputTableVO.setUniqueReqId(value.getUNIQUE_REQ_ID());
-                System.out.println("分流前转换得到内容：" + JacksonUtils.toJSONString(couponInputTableVO));
-                return couponInputTableVO;
-            }
-        });
+        //添加输入源，kafka消息直接反序列化成CouponInputTableVO2，不再 String -> CouponInputMsg -> CouponInputTableVO2 两次map
+        FlinkKafkaConsumer<CouponInputTableVO2> flinkKafkaConsumer = KafkaConsumerConfig.defaults().createConsumer("coupon-input",
+                new CouponInputDeserializationSchema());
+        DataStream<CouponInputTableVO2> stream2 = env.addSource(flinkKafkaConsumer);
 
         //针对01类型的处理
         //通过流得到kafka table
@@ -226,65 +197,10 @@ public class UserCouponMatchingAutoIdentifyPartitionByAllTask {
         });
 //        itemResultOutputStream.print("itemResultOutputStream");
 
-        SingleOutputStreamOperator<ResultWrapVO> itemResultOutputStream2 = itemResultOutputStream.keyBy(new KeySelector<CouponOutputMsg, String>() {
-            @Override
-            public String getKey(CouponOutputMsg couponOutputMsg) throws Exception {
-
-                return StringUtils.join(new String[]{
-                        couponOutputMsg.getCOUPON_ID(),
-                        couponOutputMsg.getSTORE_ID(),
-                        couponOutputMsg.getSTORE_RANGE(),
-                        couponOutputMsg.getCOUPON_SEND_NUM(),
-                        couponOutputMsg.getUNIQUE_REQ_ID(),
-                }, "_");
-            }
-        }).window(ProcessingTimeSessionWindows.withGap(Time.seconds(2)))
-                .apply(new WindowFunction<CouponOutputMsg, ResultWrapVO, String, TimeWindow>() {
-                    @Override
-                    public void apply(String s, TimeWindow window, Iterable<CouponOutputMsg> input, Collector<ResultWrapVO> out) throws Exception {
-
-                        ResultWrapVO resultWrapVO = new ResultWrapVO();
-                        Iterator iterator = input.iterator();
-                        List<CouponOutputMsg> itemList = new ArrayList<>();
-                        while (iterator.hasNext()){
-                            CouponOutputMsg couponOutputMsg = (CouponOutputMsg) iterator.next();
-                            if (StringUtils.isNotEmpty(couponOutputMsg.getID_TYPE()) && StringUtils.isNotEmpty(couponOutputMsg.getID_NUMBER())){
-                                itemList.add(couponOutputMsg);
-                            }
-                        }
-                        resultWrapVO.setItemList(itemList);
-                        out.collect(resultWrapVO);
-                    }
-                });
-
-        SingleOutputStreamOperator<CouponOutputMsg> itemResultOutputStream3 = itemResultOutputStream2.process(new ProcessFunction<ResultWrapVO, CouponOutputMsg>() {
-            @Override
-            public void processElement(ResultWrapVO value, Context ctx, Collector<CouponOutputMsg> out) throws Exception {
-                List<CouponOutputMsg> itemList = value.getItemList();
-                if (itemList.size() > 0){
-                    CouponOutputMsg outputMsg = new CouponOutputMsg();
-                    outputMsg.setMESSAGE_TYPE("01");
-                    outputMsg.setCOUPON_SEND_NUM(String.valueOf(itemList.size()));
-                    out.collect(outputMsg);
-                    itemList.forEach(item->{
-                        item.setMESSAGE_TYPE("02");
-                        item.setCOUPON_SEND_NUM(String.valueOf(itemList.size()));
-                        out.collect(item);
-                    });
-                    CouponOutputMsg outputMsg3 = new CouponOutputMsg();
-                    outputMsg3.setMESSAGE_TYPE("03");
-                    outputMsg3.setCOUPON_SEND_NUM(String.valueOf(itemList.size()));
-                    out.collect(outputMsg3);
-                }else {
-                    CouponOutputMsg outputMsg = new CouponOutputMsg();
-                    outputMsg.setMESSAGE_TYPE("01");
-                    outputMsg.setCOUPON_SEND_NUM("0");
-                    out.collect(outputMsg);
-
-                }
-
-            }
-        });
+        //按请求汇总，输出 01 02 03，空闲2秒没有新记录就认为请求已经结束
+        SingleOutputStreamOperator<CouponOutputMsg> itemResultOutputStream3 = itemResultOutputStream
+                .keyBy(new CouponRequestKeySelector())
+                .process(new CouponRequestCompletionFunction(Time.seconds(2).toMilliseconds()));
         itemResultOutputStream3.print("itemResultOutputStream3");
 
         //输出源
@@ -295,18 +211,4 @@ public class UserCouponMatchingAutoIdentifyPartitionByAllTask {
         env.execute();
     }
 
-    static class ResultWrapVO {
-
-        private List<CouponOutputMsg> itemList;
-
-        public List<CouponOutputMsg> getItemList() {
-            return itemList;
-        }
-
-        public void setItemList(List<CouponOutputMsg> itemList) {
-            this.itemList = itemList;
-        }
-    }
-
-
 }
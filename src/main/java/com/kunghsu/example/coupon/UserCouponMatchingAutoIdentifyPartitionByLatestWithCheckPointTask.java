@@ -1,27 +1,30 @@
 package com.kunghsu.example.coupon;
 
+import com.kunghsu.apache.flink.checkpoint.CheckpointStatsReporter;
+import com.kunghsu.apache.flink.checkpoint.CheckpointUtil;
+import com.kunghsu.apache.flink.checkpoint.RocksDBProfile;
 import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
+import com.kunghsu.apache.flink.flinkkafka.config.KafkaConsumerConfig;
 import com.kunghsu.common.utils.JacksonUtils;
 import com.kunghsu.example.coupon.function.CurrentMinute;
 import com.kunghsu.example.coupon.function.LatFunction;
 import com.kunghsu.example.coupon.function.LngFunction;
+import com.kunghsu.example.coupon.issue.CouponIssueResult;
+import com.kunghsu.example.coupon.issue.CouponIssueStage;
+import com.kunghsu.example.coupon.issue.LocalStubCouponIssueService;
+import com.kunghsu.example.coupon.operators.CouponRequestCompletionFunction;
+import com.kunghsu.example.coupon.operators.CouponRequestKeySelector;
 import com.kunghsu.example.coupon.table.CouponInputTableVO2;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.RichMapFunction;
 import org.apache.flink.api.common.restartstrategy.RestartStrategies;
-import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.runtime.state.filesystem.FsStateBackend;
-import org.apache.flink.streaming.api.CheckpointingMode;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
-import org.apache.flink.streaming.api.environment.CheckpointConfig;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.api.functions.ProcessFunction;
-import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
-import org.apache.flink.streaming.api.windowing.assigners.ProcessingTimeSessionWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
-import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
 import org.apache.flink.table.api.EnvironmentSettings;
@@ -29,7 +32,6 @@ import org.apache.flink.table.api.Table;
 import org.apache.flink.table.api.bridge.java.StreamTableEnvironment;
 import org.apache.flink.table.catalog.hive.HiveCatalog;
 import org.apache.flink.types.Row;
-import org.apache.flink.util.Collector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +58,10 @@ import static org.apache.flink.table.api.Expressions.$;
  * 建表语句详见doc目录
  *
  * 验证Checkpoint机制
+ * 下游处理慢（反压）时，对齐checkpoint的barrier排在在途数据后面，checkpoint容易超时
+ * 所以用非对齐checkpoint（CheckpointUtil.setUnalignedCheckpoint），间隔等参数按实测耗时推出来，
+ * 运行时CheckpointStatsReporter按算子打印对齐时间、在途数据量
+ * 加上 --checkpoint.fail-after N 时，汇总完N个请求后模拟一个异常，验证重启后从checkpoint恢复
  *
  * author:xuyaokun_kzx
  * date:2022/2/17
@@ -65,22 +71,29 @@ public class UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask.class);
 
+    private static final String JOB_NAME = "UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask";
+
     public static void main(String[] args) throws Exception {
 
+        ParameterTool params = ParameterTool.fromArgs(args);
+
         final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
         EnvironmentSettings environmentSettings = EnvironmentSettings.newInstance().useBlinkPlanner().inStreamingMode().build();
         StreamTableEnvironment tableEnv = StreamTableEnvironment.create(env, environmentSettings);
 
 //        env.setStateBackend(new MemoryStateBackend(10*1024*1024));
-        env.setStateBackend(new FsStateBackend("hdfs://127.0.0.1:9000/checkpoint/cp1"));
-
-        //开启CheckPoint
-        env.enableCheckpointing(2000);
-        env.getCheckpointConfig().setCheckpointingMode(CheckpointingMode.AT_LEAST_ONCE);
-        env.getCheckpointConfig().setMinPauseBetweenCheckpoints(500);
-        env.getCheckpointConfig().setCheckpointTimeout(60000);
-        env.getCheckpointConfig().setMaxConcurrentCheckpoints(1);
-        env.getCheckpointConfig().enableExternalizedCheckpoints(CheckpointConfig.ExternalizedCheckpointCleanup.RETAIN_ON_CANCELLATION);
+        //状态后端：--state.backend rocksdb 时用RocksDB，按 --rocksdb.profile SPINNING_DISK|SSD|NVME 调优（默认机械盘）；
+        //不指定时用FsStateBackend。checkpoint的间隔、超时以下面的setUnalignedCheckpoint为准
+        if ("rocksdb".equals(params.get("state.backend"))) {
+            CheckpointUtil.setRocksDBStateBackend(env,
+                    RocksDBProfile.valueOf(params.get("rocksdb.profile", RocksDBProfile.SPINNING_DISK.name())));
+        } else {
+            env.setStateBackend(new FsStateBackend("hdfs://127.0.0.1:9000/checkpoint/cp1"));
+        }
+
+        //开启CheckPoint，非对齐，实测耗时从启动参数传入（CheckpointStatsReporter打印的端到端耗时）
+        //网络缓冲的配置需要放到flink-conf.yaml，详见CheckpointUtil.unalignedNetworkConfiguration
+        CheckpointUtil.setUnalignedCheckpoint(env, params.getLong("checkpoint.measured-duration-ms", 2000L));
         env.getCheckpointConfig().setPreferCheckpointForRecovery(true);
 
         //设置重启策略
@@ -89,34 +102,10 @@ public class UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask {
                 org.apache.flink.api.common.time.Time.of(10, TimeUnit.SECONDS) // 延时
         ));
 
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = KafkaConsumerProducerConfig.getFlinkKafkaConsumer("coupon-input");
-        //添加输入源
-        DataStream<String> stream = env.addSource(flinkKafkaConsumer);
-        SingleOutputStreamOperator<CouponInputTableVO2> stream2 = stream.map(new MapFunction<String, CouponInputMsg>() {
-            @Override
-            public CouponInputMsg map(String value) throws Exception {
-                System.out.println("输入端入参：" + value);
-                CouponInputMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, CouponInputMsg.class);
-                return flinkTopicMsg;
-            }
-        }).map(new MapFunction<CouponInputMsg, CouponInputTableVO2>() {
-            @Override
-            public CouponInputTableVO2 map(CouponInputMsg value) throws Exception {
-                CouponInputTableVO2 couponInputTableVO = new CouponInputTableVO2();
-                couponInputTableVO.setMessageType(value.getMESSAGE_TYPE());
-                couponInputTableVO.setCouponId(value.getCOUPON_ID());
-                couponInputTableVO.setStoreId(value.getSTORE_ID());
-                couponInputTableVO.setStoreRange(value.getSTORE_RANGE());
-                couponInputTableVO.setStoreLatitude(value.getSTORE_LATITUDE());
-                couponInputTableVO.setStoreLongitude(value.getSTORE_LONGITUDE());
-                couponInputTableVO.setUserNum(value.getUSER_NUM());
-                couponInputTableVO.setUniqueReqId(value.getUNIQUE_REQ_ID());
-                couponInputTableVO.setCreateTime(new Date());
-                couponInputTableVO.setType("1");
-                System.out.println("分流前转换得到内容：" + JacksonUtils.toJSONString(couponInputTableVO));
-                return couponInputTableVO;
-            }
-        });
+        //添加输入源，kafka消息直接反序列化成CouponInputTableVO2，不再 String -> CouponInputMsg -> CouponInputTableVO2 两次map
+        FlinkKafkaConsumer<CouponInputTableVO2> flinkKafkaConsumer = KafkaConsumerConfig.fromParameters(params).createConsumer("coupon-input",
+                new CouponInputDeserializationSchema());
+        DataStream<CouponInputTableVO2> stream2 = env.addSource(flinkKafkaConsumer);
 
         //通过流得到kafka table，将流转成表
         Table inputTable = tableEnv.fromDataStream(stream2, $("couponId"), $("storeId"),
@@ -275,102 +264,57 @@ public class UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask {
         });
 //        itemResultOutputStream.print("itemResultOutputStream");
 
-        SingleOutputStreamOperator<ResultWrapVO> itemResultOutputStream2 = itemResultOutputStream.keyBy(new KeySelector<CouponOutputMsg, String>() {
-            @Override
-            public String getKey(CouponOutputMsg couponOutputMsg) throws Exception {
-                System.out.println("进入键控阶段");
-                return StringUtils.join(new String[]{
-                        couponOutputMsg.getCOUPON_ID(),
-                        couponOutputMsg.getSTORE_ID(),
-                        couponOutputMsg.getSTORE_RANGE(),
-                        couponOutputMsg.getCOUPON_SEND_NUM(),
-                        couponOutputMsg.getUNIQUE_REQ_ID(),
-                }, "_");
-            }
-        }).window(ProcessingTimeSessionWindows.withGap(Time.seconds(2)))
-                .apply(new WindowFunction<CouponOutputMsg, ResultWrapVO, String, TimeWindow>() {
-                    @Override
-                    public void apply(String s, TimeWindow window, Iterable<CouponOutputMsg> input, Collector<ResultWrapVO> out) throws Exception {
-
-                        ResultWrapVO resultWrapVO = new ResultWrapVO();
-                        Iterator iterator = input.iterator();
-                        List<CouponOutputMsg> itemList = new ArrayList<>();
-                        while (iterator.hasNext()){
-                            CouponOutputMsg couponOutputMsg = (CouponOutputMsg) iterator.next();
-                            if (StringUtils.isNotEmpty(couponOutputMsg.getID_TYPE()) && StringUtils.isNotEmpty(couponOutputMsg.getID_NUMBER())){
-                                itemList.add(couponOutputMsg);
-                            }
-                        }
-                        resultWrapVO.setItemList(itemList);
-
-                        //在这里模拟一个处理耗时稍长的过程
-                        //
-                        System.out.println("开始执行WindowFunction");
-                        for (int i = 0; i < 5; i++) {
-                            Thread.sleep(2000);
-                        }
-                        System.out.println("结束执行WindowFunction");
-                        System.out.println("模拟一个异常");
-                        int a = 1/0;
-                        out.collect(resultWrapVO);
+        //按请求汇总，输出 01 02 03，空闲2秒没有新记录就认为请求已经结束
+        SingleOutputStreamOperator<CouponOutputMsg> itemResultOutputStream3 = itemResultOutputStream
+                .keyBy(new CouponRequestKeySelector())
+                .process(new CouponRequestCompletionFunction(Time.seconds(2).toMilliseconds()));
+
+        //模拟一个异常，验证从checkpoint恢复：--checkpoint.fail-after N 时，每个subtask第一次运行时汇总完N个请求后抛异常，
+        //按上面的重启策略重启并从最近一次checkpoint恢复，重启后不再抛；不指定时不注入
+        int failAfterRequests = params.getInt("checkpoint.fail-after", 0);
+        if (failAfterRequests > 0) {
+            itemResultOutputStream3 = itemResultOutputStream3.map(new RichMapFunction<CouponOutputMsg, CouponOutputMsg>() {
+
+                private transient int completedRequests;
+
+                @Override
+                public CouponOutputMsg map(CouponOutputMsg value) throws Exception {
+                    //每个请求只输出一条01
+                    if ("01".equals(value.getMESSAGE_TYPE()) && getRuntimeContext().getAttemptNumber() == 0
+                            && ++completedRequests >= failAfterRequests) {
+                        throw new IllegalStateException("模拟一个异常，已汇总请求数：" + completedRequests);
                     }
-                });
-
-        SingleOutputStreamOperator<CouponOutputMsg> itemResultOutputStream3 = itemResultOutputStream2.process(new ProcessFunction<ResultWrapVO, CouponOutputMsg>() {
-            @Override
-            public void processElement(ResultWrapVO value, Context ctx, Collector<CouponOutputMsg> out) throws Exception {
-                List<CouponOutputMsg> itemList = value.getItemList();
-                if (itemList.size() > 0){
-                    CouponOutputMsg outputMsg = new CouponOutputMsg();
-                    outputMsg.setMESSAGE_TYPE("01");
-                    outputMsg.setCOUPON_SEND_NUM(String.valueOf(itemList.size()));
-                    out.collect(outputMsg);
-                    itemList.forEach(item->{
-                        item.setMESSAGE_TYPE("02");
-                        item.setCOUPON_SEND_NUM(String.valueOf(itemList.size()));
-                        out.collect(item);
-                    });
-                    CouponOutputMsg outputMsg3 = new CouponOutputMsg();
-                    outputMsg3.setMESSAGE_TYPE("03");
-                    outputMsg3.setCOUPON_SEND_NUM(String.valueOf(itemList.size()));
-                    out.collect(outputMsg3);
-                }else {
-                    CouponOutputMsg outputMsg = new CouponOutputMsg();
-                    outputMsg.setMESSAGE_TYPE("01");
-                    outputMsg.setCOUPON_SEND_NUM("0");
-                    out.collect(outputMsg);
-
+                    return value;
                 }
-
-            }
-        });
+            }).name("checkpointFailureInjection");
+        }
         itemResultOutputStream3.print("itemResultOutputStream3");
 
+        //发券后处理（额度校验、发券）异步调用，不占算子线程，也不会挡住checkpoint barrier
+        //还没有真实的发券服务，只有显式指定 --coupon.issue.stub true 时才接上本地模拟的服务（会随机发券失败），默认不接这一段
+        if (params.getBoolean("coupon.issue.stub", false)) {
+            LOGGER.warn("发券后处理使用本地模拟的服务LocalStubCouponIssueService，结果不是真实的发券结果");
+            SingleOutputStreamOperator<CouponIssueResult> issueResultStream = CouponIssueStage.apply(itemResultOutputStream3,
+                    new LocalStubCouponIssueService(params.getLong("coupon.issue.stub.latency-ms", 50L),
+                            params.getDouble("coupon.issue.stub.failure-ratio", 0.01), 100000L),
+                    params);
+            issueResultStream.print("issueResultStream");
+        }
+
         //输出源
         FlinkKafkaProducer flinkKafkaProducer = FlinkKafkaConfig.getFlinkKafkaProducer("coupon-output");
 //        itemResultOutputStream.addSink(flinkKafkaProducer);
 
         LOGGER.info("开始执行UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask");
         System.out.println("开始执行UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask");
-        env.execute("UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask");
+        try (CheckpointStatsReporter ignored = new CheckpointStatsReporter(
+                params.get("rest.address", "http://localhost:8081"), JOB_NAME, 10000L).start()) {
+            env.execute(JOB_NAME);
+        }
 
 //        String externalCheckpoint = "file:///Users/fanrui03/Documents/tmp/checkpoint/f74a3a6af248b9aaeb81f61f83164c31/chk-1";
 //        String externalCheckpoint = "file:///checkpoint/cp1/fbbe6a04fa10bb4a4bca5b2298ff7074/chk-3";
 //        CheckpointRestoreByIDEUtils.run(env.getStreamGraph(), externalCheckpoint);//不奏效
     }
 
-    static class ResultWrapVO {
-
-        private List<CouponOutputMsg> itemList;
-
-        public List<CouponOutputMsg> getItemList() {
-            return itemList;
-        }
-
-        public void setItemList(List<CouponOutputMsg> itemList) {
-            this.itemList = itemList;
-        }
-    }
-
-
 }
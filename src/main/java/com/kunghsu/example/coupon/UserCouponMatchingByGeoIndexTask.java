@@ -0,0 +1,160 @@
+package com.kunghsu.example.coupon;
+
+import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
+import com.kunghsu.apache.flink.flinkkafka.config.KafkaConsumerConfig;
+import com.kunghsu.example.coupon.geo.HiveUserLocationIndexLoader;
+import com.kunghsu.example.coupon.geo.PartitionedUserLocationLoader;
+import com.kunghsu.example.coupon.geo.SnapshotUserLocationLoader;
+import com.kunghsu.example.coupon.geo.UserLocationColumnsLoader;
+import com.kunghsu.example.coupon.geo.UserLocationPartitionMonitorSource;
+import com.kunghsu.example.coupon.operators.CouponRequestCompletionFunction;
+import com.kunghsu.example.coupon.operators.CouponRequestKeySelector;
+import com.kunghsu.example.coupon.operators.UserCouponBroadcastGeoMatchFunction;
+import com.kunghsu.example.coupon.operators.UserCouponGeoMatchFunction;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.datastream.BroadcastStream;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 实际案例--根据商户经纬度给匹配用户发券
+ * 用网格索引代替 hive维表join + haversine SQL
+ *
+ * 原来的做法：每个请求和整张user_location表按cert_type做笛卡尔积，每一对都算一遍距离，
+ * 用户表到千万级之后完全扛不住
+ * 现在的做法：用户位置在open时加载到网格索引，每个请求只看门店附近几个网格里的用户
+ *
+ * 按请求汇总用CouponRequestCompletionFunction，匹配完一个请求马上输出，不再等会话窗口
+ * SQL版本（UDTF）详见UserCouponMatchingByGeoIndexUdtfTask
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public class UserCouponMatchingByGeoIndexTask {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserCouponMatchingByGeoIndexTask.class);
+
+    /**
+     * 多久没有新的明细就认为请求已经结束
+     */
+    private static final Time REQUEST_IDLE_TIMEOUT = Time.seconds(2);
+
+    /**
+     * 多久检查一次用户位置表的新分区，和原来temporal join的streaming-source.monitor-interval一致
+     */
+    private static final Time PARTITION_MONITOR_INTERVAL = Time.seconds(20);
+
+    public static void main(String[] args) throws Exception {
+
+        final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+
+        ParameterTool params = ParameterTool.fromArgs(args);
+
+        //kafka参数从作业参数加载，例如压测、追积压时加上 --kafka.profile high-throughput
+        KafkaConsumerConfig kafkaConsumerConfig = KafkaConsumerConfig.fromParameters(params);
+        LOGGER.info("kafka consumer配置:{}", kafkaConsumerConfig);
+
+        //添加输入源，kafka消息直接反序列化成CouponInputTableVO2
+        FlinkKafkaConsumer<CouponInputTableVO2> flinkKafkaConsumer = kafkaConsumerConfig.createConsumer("coupon-input",
+                new CouponInputDeserializationSchema());
+        DataStream<CouponInputTableVO2> stream2 = env.addSource(flinkKafkaConsumer);
+
+        //用户位置来源：hive表最新分区，加载时经纬度就解析成double数组
+        //按时段自动切换白天(lat、lng)/夜间(lat_night、lng_night)坐标，规则和udfTimePeriod一致，
+        //时段切换时整体换一份索引，逐条匹配时不再判断时段
+        //作业运行期间有新分区时，由广播流通知各个subtask在后台加载，加载完成后整体切换
+        String catalogName = "myhive";
+        String hiveConfDir = "D:\\hive\\apache-hive-2.3.6-bin\\conf";
+        String version = "3.1.2";
+        String database = "test";
+        PartitionedUserLocationLoader userLocationLoader = new HiveUserLocationIndexLoader(catalogName, hiveConfDir, version, database,
+                "user_location_partition_info_temporal2", null, false);
+        //有列式快照（UserLocationSnapshotTool导出）时，启动时内存映射读快照，不再逐行解析分区的文本文件
+        //快照落后于最新分区时自动回退到hive
+        String snapshotPath = params.get("user-location.snapshot");
+        if (snapshotPath != null) {
+            userLocationLoader = new SnapshotUserLocationLoader(snapshotPath, userLocationLoader);
+        }
+
+        SingleOutputStreamOperator<CouponOutputMsg> itemResultOutputStream3 = buildBroadcastMatchingStream(stream2,
+                userLocationLoader, PARTITION_MONITOR_INTERVAL.toMilliseconds());
+        itemResultOutputStream3.print("itemResultOutputStream3");
+
+        //输出源，CouponOutputMsg直接序列化成json，不用先转成String
+        //这个作业没有开checkpoint，EXACTLY_ONCE的producer会自动退化成NONE
+        FlinkKafkaProducer<CouponOutputMsg> flinkKafkaProducer = FlinkKafkaConfig.getFlinkKafkaProducer(
+                kafkaConsumerConfig.getBootstrapServers(), "coupon-output", new CouponOutputSerializationSchema("coupon-output"));
+        itemResultOutputStream3.addSink(flinkKafkaProducer).name("couponOutputSink");
+
+        LOGGER.info("开始执行UserCouponMatchingByGeoIndexTask");
+        env.execute("UserCouponMatchingByGeoIndexTask");
+    }
+
+    /**
+     * 网格索引匹配 + 按请求汇总
+     *
+     * @param input 发券请求
+     * @param columnsLoader 用户位置来源
+     * @return
+     */
+    public static SingleOutputStreamOperator<CouponOutputMsg> buildMatchingStream(DataStream<CouponInputTableVO2> input,
+                                                                                 UserLocationColumnsLoader columnsLoader) {
+
+        //查出所有符合条件的行(多行)，最后输出一条请求结束标记
+        SingleOutputStreamOperator<CouponOutputMsg> itemResultStream = input
+                .flatMap(UserCouponGeoMatchFunction.byTimePeriod(columnsLoader));
+        return aggregateByRequest(itemResultStream);
+    }
+
+    /**
+     * 网格索引匹配 + 按请求汇总，用户位置分区在运行期间通过广播状态切换
+     * 不想依赖hive catalog、或者分区不会变化时，用buildMatchingStream
+     *
+     * @param input 发券请求
+     * @param loader 用户位置来源
+     * @param monitorIntervalMillis 多久检查一次新分区
+     * @return
+     */
+    public static SingleOutputStreamOperator<CouponOutputMsg> buildBroadcastMatchingStream(DataStream<CouponInputTableVO2> input,
+                                                                                          PartitionedUserLocationLoader loader,
+                                                                                          long monitorIntervalMillis) {
+
+        //只有一个subtask检查分区，输出的分区值广播给所有匹配算子
+        BroadcastStream<String> partitionStream = input.getExecutionEnvironment()
+                .addSource(new UserLocationPartitionMonitorSource(loader, monitorIntervalMillis))
+                .name("userLocationPartitionMonitor")
+                .setParallelism(1)
+                .broadcast(UserCouponBroadcastGeoMatchFunction.PARTITION_STATE_DESCRIPTOR);
+
+        SingleOutputStreamOperator<CouponOutputMsg> itemResultStream = input
+                .connect(partitionStream)
+                .process(new UserCouponBroadcastGeoMatchFunction(loader))
+                .name("broadcastGeoMatch");
+        return aggregateByRequest(itemResultStream);
+    }
+
+    /**
+     * 按请求汇总匹配结果，输出 01(总数) 02(明细) 03(结束)
+     * 01消息带上UNIQUE_REQ_ID，下游可以据此对应到请求
+     * 收到请求结束标记时立即输出，没有结束标记的（SQL、UDTF）空闲2秒后输出，和原来会话窗口的gap一致
+     *
+     * @param itemResultStream 每个请求匹配到的用户明细
+     * @return
+     */
+    public static SingleOutputStreamOperator<CouponOutputMsg> aggregateByRequest(DataStream<CouponOutputMsg> itemResultStream) {
+
+        return itemResultStream
+                .keyBy(new CouponRequestKeySelector())
+                .process(new CouponRequestCompletionFunction(REQUEST_IDLE_TIMEOUT.toMilliseconds()))
+                .name("requestCompletion");
+    }
+
+}
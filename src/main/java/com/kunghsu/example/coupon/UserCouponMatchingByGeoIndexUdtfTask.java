@@ -0,0 +1,95 @@
+package com.kunghsu.example.coupon;
+
+import com.kunghsu.apache.flink.flinkkafka.config.KafkaConsumerConfig;
+import com.kunghsu.example.coupon.function.GeoRangeUsersFunction;
+import com.kunghsu.example.coupon.geo.TextFileUserLocationIndexLoader;
+import com.kunghsu.example.coupon.operators.CouponOutputRowMapFunction;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
+import org.apache.flink.table.api.EnvironmentSettings;
+import org.apache.flink.table.api.Table;
+import org.apache.flink.table.api.bridge.java.StreamTableEnvironment;
+import org.apache.flink.types.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.flink.table.api.Expressions.$;
+
+/**
+ * 实际案例--根据商户经纬度给匹配用户发券
+ * 网格索引的SQL用法：用UDTF代替 hive维表join + haversine where条件
+ *
+ * left join lateral table(...) on true，没有命中的请求也会输出一行，
+ * 所以不再需要原来“先join再left join回来”的双重join
+ *
+ * 窗口及之后的处理和UserCouponMatchingByGeoIndexTask一样，这里只演示SQL部分
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public class UserCouponMatchingByGeoIndexUdtfTask {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserCouponMatchingByGeoIndexUdtfTask.class);
+
+    public static void main(String[] args) throws Exception {
+
+        final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        EnvironmentSettings environmentSettings = EnvironmentSettings.newInstance().useBlinkPlanner().inStreamingMode().build();
+        StreamTableEnvironment tableEnv = StreamTableEnvironment.create(env, environmentSettings);
+
+        //添加输入源，kafka消息直接反序列化成CouponInputTableVO2，kafka参数从作业参数加载
+        KafkaConsumerConfig kafkaConsumerConfig = KafkaConsumerConfig.fromParameters(ParameterTool.fromArgs(args));
+        FlinkKafkaConsumer<CouponInputTableVO2> flinkKafkaConsumer = kafkaConsumerConfig.createConsumer("coupon-input",
+                new CouponInputDeserializationSchema());
+        DataStream<CouponInputTableVO2> stream2 = env.addSource(flinkKafkaConsumer);
+
+        // 注册函数（用实例注册，才能把加载器带进去）
+        GeoRangeUsersFunction geoRangeUsersFunction = new GeoRangeUsersFunction(
+                new TextFileUserLocationIndexLoader(
+                        "hdfs://127.0.0.1:9000/user/hive/warehouse/test.db/user_location_partition_info_temporal2/partstart=20220219",
+                        false));
+
+        DataStream<CouponOutputMsg> itemResultOutputStream = buildItemStream(tableEnv, stream2, geoRangeUsersFunction);
+        itemResultOutputStream.print("itemResultOutputStream");
+
+        LOGGER.info("开始执行UserCouponMatchingByGeoIndexUdtfTask");
+        env.execute("UserCouponMatchingByGeoIndexUdtfTask");
+    }
+
+    /**
+     * 用UDTF查出每个请求匹配到的用户明细，没有匹配时是一条cert_type、cert_nbr为空的记录
+     *
+     * @param tableEnv
+     * @param input 发券请求
+     * @param geoRangeUsersFunction
+     * @return
+     */
+    public static DataStream<CouponOutputMsg> buildItemStream(StreamTableEnvironment tableEnv,
+                                                              DataStream<CouponInputTableVO2> input,
+                                                              GeoRangeUsersFunction geoRangeUsersFunction) {
+
+        //通过流得到kafka table，将流转成表
+        Table inputTable = tableEnv.fromDataStream(input, $("couponId"), $("storeId"),
+                $("storeRange"), $("storeLongitude"), $("storeLatitude"),
+                $("userNum"), $("uniqueReqId"), $("type"));
+
+        tableEnv.createTemporarySystemFunction("geoRangeUsers", geoRangeUsersFunction);
+
+        //查出所有符合条件的行(多行)
+        Table itemResultTable = tableEnv.sqlQuery(
+                "select t.cert_type, t.cert_nbr, a.couponId, a.storeId, a.storeRange, a.userNum, a.uniqueReqId " +
+                "from " + inputTable + " a " +
+                "left join lateral table(geoRangeUsers(a.type, a.storeLatitude, a.storeLongitude, a.storeRange)) " +
+                "as t(cert_type, cert_nbr) on true"
+        );
+
+        //表转成流，结果的处理,转换成kafka输出格式
+        return tableEnv.toRetractStream(itemResultTable, Row.class)
+                .map(new CouponOutputRowMapFunction());
+    }
+
+}
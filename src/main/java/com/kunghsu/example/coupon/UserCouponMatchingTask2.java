@@ -1,8 +1,8 @@
 package com.kunghsu.example.coupon;
 
 import com.kunghsu.apache.flink.flinkkafka.config.FlinkKafkaConfig;
-import com.kunghsu.common.utils.JacksonUtils;
-import com.kunghsu.example.coupon.table.CouponInputTableVO;
+import com.kunghsu.apache.flink.flinkkafka.config.KafkaConsumerConfig;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.streaming.api.datastream.DataStream;
@@ -44,40 +44,19 @@ public class UserCouponMatchingTask2 {
         EnvironmentSettings environmentSettings = EnvironmentSettings.newInstance().useBlinkPlanner().inStreamingMode().build();
         StreamTableEnvironment tableEnv = StreamTableEnvironment.create(env, environmentSettings);
 
-        FlinkKafkaConsumer<String> flinkKafkaConsumer = KafkaConsumerProducerConfig.getFlinkKafkaConsumer("coupon-input");
-        //添加输入源
-        DataStream<String> stream = env.addSource(flinkKafkaConsumer);
-        SingleOutputStreamOperator<CouponInputTableVO> stream2 = stream.map(new MapFunction<String, CouponInputMsg>() {
-            @Override
-            public CouponInputMsg map(String value) throws Exception {
-                System.out.println("输入端入参：" + value);
-                CouponInputMsg flinkTopicMsg = JacksonUtils.toJavaObject(value, CouponInputMsg.class);
-                return flinkTopicMsg;
-            }
-        }).map(new MapFunction<CouponInputMsg, CouponInputTableVO>() {
-            @Override
-            public CouponInputTableVO map(CouponInputMsg value) throws Exception {
-                CouponInputTableVO couponInputTableVO = new CouponInputTableVO();
-                couponInputTableVO.setMessageType(value.getMESSAGE_TYPE());
-                couponInputTableVO.setCouponId(value.getCOUPON_ID());
-                couponInputTableVO.setStoreId(value.getSTORE_ID());
-                couponInputTableVO.setStoreRange(value.getSTORE_RANGE());
-                couponInputTableVO.setStoreLatitude(value.getSTORE_LATITUDE());
-                couponInputTableVO.setStoreLongitude(value.getSTORE_LONGITUDE());
-                couponInputTableVO.setUserNum(value.getUSER_NUM());
-                System.out.println("分流前转换得到内容：" + JacksonUtils.toJSONString(couponInputTableVO));
-                return couponInputTableVO;
-            }
-        });
+        //添加输入源，kafka消息直接反序列化成CouponInputTableVO2，不再 String -> CouponInputMsg -> CouponInputTableVO2 两次map
+        FlinkKafkaConsumer<CouponInputTableVO2> flinkKafkaConsumer = KafkaConsumerConfig.defaults().createConsumer("coupon-input",
+                new CouponInputDeserializationSchema());
+        DataStream<CouponInputTableVO2> stream2 = env.addSource(flinkKafkaConsumer);
 
         //开始分流，按照消息类型分流
-        OutputTag<CouponInputTableVO> itemTypeTag = new OutputTag<CouponInputTableVO>("itemType") {};
-        OutputTag<CouponInputTableVO> itemTypeTag2 = new OutputTag<CouponInputTableVO>("itemType2") {};
-        OutputTag<CouponInputTableVO> countTypeTag = new OutputTag<CouponInputTableVO>("countType") {};
+        OutputTag<CouponInputTableVO2> itemTypeTag = new OutputTag<CouponInputTableVO2>("itemType") {};
+        OutputTag<CouponInputTableVO2> itemTypeTag2 = new OutputTag<CouponInputTableVO2>("itemType2") {};
+        OutputTag<CouponInputTableVO2> countTypeTag = new OutputTag<CouponInputTableVO2>("countType") {};
 
-        SingleOutputStreamOperator<CouponInputTableVO> splitStream = stream2.process(new ProcessFunction<CouponInputTableVO, CouponInputTableVO>() {
+        SingleOutputStreamOperator<CouponInputTableVO2> splitStream = stream2.process(new ProcessFunction<CouponInputTableVO2, CouponInputTableVO2>() {
             @Override
-            public void processElement(CouponInputTableVO value, Context context, Collector<CouponInputTableVO> out) throws Exception {
+            public void processElement(CouponInputTableVO2 value, Context context, Collector<CouponInputTableVO2> out) throws Exception {
                 if ("01".equals(value.getMessageType())) {
                     context.output(itemTypeTag, value);
                     context.output(itemTypeTag2, value);
@@ -89,12 +68,12 @@ public class UserCouponMatchingTask2 {
 
         //得到划分后的流
         //消息类型01对应的流
-        DataStream<CouponInputTableVO> itemTypeStream = splitStream.getSideOutput(itemTypeTag);
+        DataStream<CouponInputTableVO2> itemTypeStream = splitStream.getSideOutput(itemTypeTag);
 //        itemTypeStream.print();
-        DataStream<CouponInputTableVO> itemTypeStream2 = splitStream.getSideOutput(itemTypeTag2);
+        DataStream<CouponInputTableVO2> itemTypeStream2 = splitStream.getSideOutput(itemTypeTag2);
 
         //消息类型02对应的流
-        DataStream<CouponInputTableVO> countTypeStream = splitStream.getSideOutput(countTypeTag);
+        DataStream<CouponInputTableVO2> countTypeStream = splitStream.getSideOutput(countTypeTag);
 //        countTypeStream.print();
 
         //针对01类型的处理
@@ -0,0 +1,31 @@
+package com.kunghsu.example.coupon.function;
+
+import com.kunghsu.example.coupon.geo.GeoProbe;
+import org.apache.flink.table.functions.ScalarFunction;
+
+/**
+ * 两点间距离，单位米
+ * 替代SQL里手写的 ROUND(6378.138 * 2 * ASIN(SQRT(POWER(SIN(...)) ...)) * 1000)
+ *
+ * 用法：geoDistance(storeLatitude, storeLongitude, lat, lng)，入参都是double
+ * 门店一侧的弧度和cos(lat)会被缓存，同一门店连续比较多个用户时只算用户一侧
+ *
+ * 只需要判断是否在范围内时，用GeoWithinRangeFunction，它会先做外接矩形过滤
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/2
+ * desc:
+*/
+public class GeoDistanceFunction extends ScalarFunction {
+
+    private final GeoProbe storeProbe = new GeoProbe();
+
+    public Double eval(Double storeLatitude, Double storeLongitude, Double lat, Double lng) {
+        if (storeLatitude == null || storeLongitude == null || lat == null || lng == null) {
+            return null;
+        }
+        storeProbe.reset(storeLatitude, storeLongitude);
+        return storeProbe.distanceMeters(lat, lng);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.kunghsu.example.coupon.function;
+
+import com.kunghsu.example.coupon.geo.TimePeriodUserLocationView;
+import com.kunghsu.example.coupon.geo.UserLocationColumnsLoader;
+import com.kunghsu.example.coupon.geo.UserLocationGridIndex;
+import com.kunghsu.example.coupon.geo.UserLocationIndexLoader;
+import org.apache.flink.table.annotation.DataTypeHint;
+import org.apache.flink.table.annotation.FunctionHint;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.TableFunction;
+import org.apache.flink.types.Row;
+
+/**
+ * 根据门店经纬度匹配用户（Table UDTF版本）
+ * 输出门店范围内所有用户的 cert_type, cert_nbr
+ *
+ * 用法：
+ * tableEnv.createTemporarySystemFunction("geoRangeUsers", new GeoRangeUsersFunction(loader));
+ * select a.couponId, t.cert_type, t.cert_nbr from inputTable a
+ * left join lateral table(geoRangeUsers(a.type, a.storeLatitude, a.storeLongitude, a.storeRange)) as t(cert_type, cert_nbr) on true
+ *
+ * 用left join时没有命中的请求也会输出一行（cert_type、cert_nbr为null），效果和原来的双重join一样
+ *
+ * 用GeoRangeUsersFunction.byTimePeriod(columnsLoader)创建时，按udfTimePeriod的规则自动切换白天/夜间坐标，
+ * SQL里不用再写 CASE udfTimePeriod(...) WHEN '0' THEN lat WHEN '1' THEN lat_night
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+@FunctionHint(output = @DataTypeHint("ROW<cert_type STRING, cert_nbr STRING>"))
+public class GeoRangeUsersFunction extends TableFunction<Row> {
+
+    private final UserLocationIndexLoader indexLoader;
+
+    private final UserLocationColumnsLoader columnsLoader;
+
+    private transient UserLocationGridIndex index;
+
+    private transient TimePeriodUserLocationView periodView;
+
+    public GeoRangeUsersFunction(UserLocationIndexLoader indexLoader) {
+        this(indexLoader, null);
+    }
+
+    private GeoRangeUsersFunction(UserLocationIndexLoader indexLoader, UserLocationColumnsLoader columnsLoader) {
+        this.indexLoader = indexLoader;
+        this.columnsLoader = columnsLoader;
+    }
+
+    /**
+     * 按时段切换白天/夜间坐标
+     *
+     * @param columnsLoader
+     * @return
+     */
+    public static GeoRangeUsersFunction byTimePeriod(UserLocationColumnsLoader columnsLoader) {
+        return new GeoRangeUsersFunction(null, columnsLoader);
+    }
+
+    @Override
+    public void open(FunctionContext context) throws Exception {
+        if (columnsLoader != null) {
+            periodView = new TimePeriodUserLocationView(columnsLoader.loadColumns());
+        } else {
+            index = indexLoader.load();
+        }
+    }
+
+    /**
+     * 输入表里的经纬度、范围都是字符串，这里兼容一下
+     */
+    public void eval(String certType, String storeLatitude, String storeLongitude, String storeRange) {
+        if (storeLatitude == null || storeLongitude == null || storeRange == null) {
+            return;
+        }
+        try {
+            eval(certType, Double.parseDouble(storeLatitude), Double.parseDouble(storeLongitude),
+                    Double.parseDouble(storeRange));
+        } catch (NumberFormatException e) {
+            //和SQL里CAST失败的效果一样，不输出
+        }
+    }
+
+    public void eval(String certType, Double storeLatitude, Double storeLongitude, Double storeRange) {
+        if (storeLatitude == null || storeLongitude == null || storeRange == null) {
+            return;
+        }
+        UserLocationGridIndex currentIndex = periodView != null ? periodView.currentIndex() : index;
+        currentIndex.query(certType, storeLatitude, storeLongitude, storeRange,
+                (type, certNbr) -> collect(Row.of(type, certNbr)));
+    }
+
+}
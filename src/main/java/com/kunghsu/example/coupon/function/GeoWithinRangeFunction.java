@@ -0,0 +1,30 @@
+package com.kunghsu.example.coupon.function;
+
+import com.kunghsu.example.coupon.geo.GeoProbe;
+import org.apache.flink.table.functions.ScalarFunction;
+
+/**
+ * 用户是否在门店范围内
+ * 等价于 ROUND(6378.138 * 2 * ASIN(SQRT(...)) * 1000) < storeRange
+ *
+ * 用法：geoWithinRange(storeLatitude, storeLongitude, storeRange, lat, lng)，入参都是double
+ * 大部分用户离门店很远，先用门店的外接矩形比较一下就能直接返回false，不用做三角函数计算
+ * 门店一侧的弧度、cos(lat)、外接矩形都会被缓存
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/2
+ * desc:
+*/
+public class GeoWithinRangeFunction extends ScalarFunction {
+
+    private final GeoProbe storeProbe = new GeoProbe();
+
+    public Boolean eval(Double storeLatitude, Double storeLongitude, Double storeRange, Double lat, Double lng) {
+        if (storeLatitude == null || storeLongitude == null || storeRange == null || lat == null || lng == null) {
+            return Boolean.FALSE;
+        }
+        storeProbe.reset(storeLatitude, storeLongitude, storeRange);
+        return storeProbe.isWithin(lat, lng);
+    }
+
+}
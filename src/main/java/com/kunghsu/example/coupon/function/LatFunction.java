@@ -1,30 +1,15 @@
 package com.kunghsu.example.coupon.function;
 
-import com.kunghsu.common.utils.DateUtils;
 import org.apache.flink.table.functions.ScalarFunction;
 
-import java.util.Calendar;
-import java.util.Date;
-
-import static com.kunghsu.common.utils.DateUtils.PATTERN_YYYY_MM_DD_HH_MM_SS;
-
+/**
+ * 根据日期字符串(yyyy-MM-dd HH:mm:ss)判断时段，分钟数是偶数返回0，奇数返回1
+ * 同一分钟内的日期字符串直接返回缓存的结果，不再解析
+ */
 public class LatFunction extends ScalarFunction {
 
     public String eval(String dateString) {
 
-        return matchTimePeriod(dateString);
-    }
-
-    private static String matchTimePeriod(String dateString){
-
-//        return Integer.parseInt(dateString) % 2 == 0 ? "0" : "1";
-
-        Date date = DateUtils.toDate(dateString, PATTERN_YYYY_MM_DD_HH_MM_SS);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-
-        int minute = calendar.get(Calendar.MINUTE);
-        return minute % 2 == 0 ? "0" : "1";
+        return TimePeriodResolver.periodOf(dateString);
     }
 }
@@ -0,0 +1,138 @@
+package com.kunghsu.example.coupon.function;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import static com.kunghsu.common.utils.DateUtils.PATTERN_YYYY_MM_DD_HH_MM_SS;
+
+/**
+ * 时段判断
+ * 模拟规则：分钟数是偶数为白天(0)，奇数为夜间(1)
+ * 和UdfTimePeriodFunction、LatFunction、LngFunction的口径一致
+ *
+ * 时段最多每分钟变化一次，所以按分钟缓存结果：
+ * 同一分钟内的调用只比较一下时间戳（或者日期字符串的前16位），不创建任何对象
+ * 只有跨分钟时才重新计算一次
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/4
+ * desc:
+*/
+public class TimePeriodResolver {
+
+    /**
+     * 白天，对应lat、lng
+     */
+    public static final String DAY = "0";
+
+    /**
+     * 夜间，对应lat_night、lng_night
+     */
+    public static final String NIGHT = "1";
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+    /**
+     * 预编译的格式化器，DateTimeFormatter是线程安全的，全局共用一个
+     */
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern(PATTERN_YYYY_MM_DD_HH_MM_SS);
+
+    /**
+     * yyyy-MM-dd HH:mm 的长度，同一分钟的日期字符串前16位相同
+     */
+    private static final int MINUTE_PREFIX_LENGTH = 16;
+
+    private static volatile MinuteCache clockCache = new MinuteCache(Long.MIN_VALUE, null, DAY);
+
+    private static volatile MinuteCache dateStringCache = new MinuteCache(Long.MIN_VALUE, null, DAY);
+
+    /**
+     * 当前时段，按当前时间计算
+     *
+     * @return
+     */
+    public static String currentPeriod() {
+        return periodOf(System.currentTimeMillis());
+    }
+
+    /**
+     * 根据时间戳得到时段
+     *
+     * @param epochMillis
+     * @return
+     */
+    public static String periodOf(long epochMillis) {
+        long minuteIndex = Math.floorDiv(epochMillis, MILLIS_PER_MINUTE);
+        MinuteCache cache = clockCache;
+        if (cache.minuteIndex == minuteIndex) {
+            return cache.period;
+        }
+        int minute = Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).getMinute();
+        String period = periodOfMinute(minute);
+        clockCache = new MinuteCache(minuteIndex, null, period);
+        return period;
+    }
+
+    /**
+     * 根据日期字符串得到时段
+     *
+     * @param dateString yyyy-MM-dd HH:mm:ss
+     * @return
+     */
+    public static String periodOf(String dateString) {
+        MinuteCache cache = dateStringCache;
+        if (cache.dateString != null && dateString.length() == cache.dateString.length()
+                && dateString.regionMatches(0, cache.dateString, 0, MINUTE_PREFIX_LENGTH)
+                && isSecondPart(dateString)) {
+            return cache.period;
+        }
+        //格式不对时和原来一样抛DateTimeParseException
+        int minute = LocalDateTime.parse(dateString, DATE_TIME_FORMATTER).getMinute();
+        String period = periodOfMinute(minute);
+        dateStringCache = new MinuteCache(Long.MIN_VALUE, dateString, period);
+        return period;
+    }
+
+    /**
+     * 下一分钟的起点，时段最早在这个时间点才可能变化
+     *
+     * @param epochMillis
+     * @return
+     */
+    public static long nextMinuteStart(long epochMillis) {
+        return (Math.floorDiv(epochMillis, MILLIS_PER_MINUTE) + 1) * MILLIS_PER_MINUTE;
+    }
+
+    /**
+     * 前16位和缓存一致时，只需再确认后面是 :ss
+     */
+    private static boolean isSecondPart(String dateString) {
+        char tens = dateString.charAt(MINUTE_PREFIX_LENGTH + 1);
+        char units = dateString.charAt(MINUTE_PREFIX_LENGTH + 2);
+        return dateString.charAt(MINUTE_PREFIX_LENGTH) == ':'
+                && tens >= '0' && tens <= '5' && units >= '0' && units <= '9';
+    }
+
+    private static String periodOfMinute(int minute) {
+        return minute % 2 == 0 ? DAY : NIGHT;
+    }
+
+    /**
+     * 某一分钟的计算结果，整体替换，读的时候不会看到一半新一半旧
+     */
+    private static final class MinuteCache {
+
+        private final long minuteIndex;
+        private final String dateString;
+        private final String period;
+
+        private MinuteCache(long minuteIndex, String dateString, String period) {
+            this.minuteIndex = minuteIndex;
+            this.dateString = dateString;
+            this.period = period;
+        }
+    }
+
+}
@@ -1,31 +1,15 @@
 package com.kunghsu.example.coupon.function;
 
-import com.kunghsu.common.utils.DateUtils;
 import org.apache.flink.table.functions.ScalarFunction;
 
-import java.util.Calendar;
-import java.util.Date;
-
-import static com.kunghsu.common.utils.DateUtils.PATTERN_YYYY_MM_DD_HH_MM_SS;
-
+/**
+ * 当前时段，分钟数是偶数返回0，奇数返回1
+ * 按当前时间计算，同一分钟内直接返回缓存的结果，不再格式化、解析日期字符串
+ */
 public class UdfTimePeriodFunction extends ScalarFunction {
 
     public String eval(String param) {
 
-        String dateString = DateUtils.now();
-        return matchTimePeriod(dateString);
-    }
-
-    private static String matchTimePeriod(String dateString){
-
-//        return Integer.parseInt(dateString) % 2 == 0 ? "0" : "1";
-
-        Date date = DateUtils.toDate(dateString, PATTERN_YYYY_MM_DD_HH_MM_SS);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-
-        int minute = calendar.get(Calendar.MINUTE);
-        return minute % 2 == 0 ? "0" : "1";
+        return TimePeriodResolver.currentPeriod();
     }
 }
@@ -0,0 +1,83 @@
+package com.kunghsu.example.coupon.geo;
+
+/**
+ * 门店一侧的预计算结果：弧度、cos(lat)、外接矩形
+ *
+ * 在join结果里，同一个门店会和很多用户逐对比较，门店坐标是连续重复的，
+ * 所以只在门店坐标变化时重新计算，其余时候直接复用
+ *
+ * 非线程安全，每个函数实例持有一个
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/2
+ * desc:
+*/
+public class GeoProbe {
+
+    private double lat = Double.NaN;
+    private double lng = Double.NaN;
+    private double rangeMeters = Double.NaN;
+
+    private double latRad;
+    private double cosLat;
+    private double lngRad;
+
+    private double minLat;
+    private double maxLat;
+    private double minLng;
+    private double maxLng;
+
+    /**
+     * 设置门店坐标，只有坐标变了才会重新计算弧度和cos
+     */
+    public void reset(double lat, double lng) {
+        if (lat == this.lat && lng == this.lng) {
+            return;
+        }
+        this.lat = lat;
+        this.lng = lng;
+        this.latRad = Math.toRadians(lat);
+        this.cosLat = Math.cos(latRad);
+        this.lngRad = Math.toRadians(lng);
+        //坐标变了，外接矩形也要重新算
+        this.rangeMeters = Double.NaN;
+    }
+
+    /**
+     * 设置门店坐标和范围，范围变了才会重新计算外接矩形
+     */
+    public void reset(double lat, double lng, double rangeMeters) {
+        reset(lat, lng);
+        if (rangeMeters == this.rangeMeters) {
+            return;
+        }
+        this.rangeMeters = rangeMeters;
+        double latDelta = GeoUtils.latitudeDelta(rangeMeters);
+        double lngDelta = GeoUtils.longitudeDelta(lat, rangeMeters);
+        this.minLat = lat - latDelta;
+        this.maxLat = lat + latDelta;
+        this.minLng = lng - lngDelta;
+        this.maxLng = lng + lngDelta;
+    }
+
+    /**
+     * 到门店的距离，单位米
+     */
+    public double distanceMeters(double pointLat, double pointLng) {
+        double pointLatRad = Math.toRadians(pointLat);
+        return GeoUtils.distanceMeters(latRad, cosLat, lngRad,
+                pointLatRad, Math.cos(pointLatRad), Math.toRadians(pointLng));
+    }
+
+    /**
+     * 是否在门店范围内，需要先调用reset(lat, lng, rangeMeters)
+     * 先用外接矩形快速排除，矩形内的点才做三角函数计算
+     */
+    public boolean isWithin(double pointLat, double pointLng) {
+        if (pointLat < minLat || pointLat > maxLat || pointLng < minLng || pointLng > maxLng) {
+            return false;
+        }
+        return GeoUtils.isWithin(distanceMeters(pointLat, pointLng), rangeMeters);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.kunghsu.example.coupon.geo;
+
+/**
+ * 经纬度距离计算工具
+ * 口径和coupon SQL里的 ROUND(6378.138 * 2 * ASIN(SQRT(...)) * 1000) < storeRange 保持一致
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public class GeoUtils {
+
+    /**
+     * 地球半径，单位米（SQL里用的是6378.138千米）
+     */
+    public static final double EARTH_RADIUS_METER = 6378138.0;
+
+    /**
+     * 两点间距离，入参为角度
+     * @return 单位米
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double latRad1 = Math.toRadians(lat1);
+        double latRad2 = Math.toRadians(lat2);
+        return distanceMeters(latRad1, Math.cos(latRad1), Math.toRadians(lng1),
+                latRad2, Math.cos(latRad2), Math.toRadians(lng2));
+    }
+
+    /**
+     * 两点间距离，入参为弧度，并且cos(lat)由调用方预先算好
+     * 索引里的点和门店坐标都只算一次弧度和cos，逐对比较时只剩两个sin、一个asin、一个sqrt
+     * @return 单位米
+     */
+    public static double distanceMeters(double latRad1, double cosLat1, double lngRad1,
+                                        double latRad2, double cosLat2, double lngRad2) {
+        double sinHalfDLat = Math.sin((latRad1 - latRad2) / 2);
+        double sinHalfDLng = Math.sin((lngRad1 - lngRad2) / 2);
+        double a = sinHalfDLat * sinHalfDLat + cosLat1 * cosLat2 * sinHalfDLng * sinHalfDLng;
+        return 2 * EARTH_RADIUS_METER * Math.asin(Math.sqrt(a));
+    }
+
+    /**
+     * 是否在范围内
+     * 原SQL是先ROUND成整数米再和storeRange比较，这里保持一样
+     *
+     * @param distanceMeters
+     * @param rangeMeters
+     * @return
+     */
+    public static boolean isWithin(double distanceMeters, double rangeMeters) {
+        return Math.round(distanceMeters) < rangeMeters;
+    }
+
+    /**
+     * 半径rangeMeters的圆，在纬度方向上跨越的角度
+     */
+    public static double latitudeDelta(double rangeMeters) {
+        return Math.toDegrees(rangeMeters / EARTH_RADIUS_METER);
+    }
+
+    /**
+     * 半径rangeMeters的圆，在经度方向上跨越的最大角度
+     * 用的是精确公式 asin(sin(d/R) / cos(lat))，保证外接矩形不会漏掉点
+     * 靠近两极时直接放开到180度
+     */
+    public static double longitudeDelta(double lat, double rangeMeters) {
+        double sinAngle = Math.sin(Math.min(rangeMeters / EARTH_RADIUS_METER, Math.PI / 2));
+        double cosLat = Math.cos(Math.toRadians(lat));
+        if (sinAngle >= cosLat) {
+            return 180;
+        }
+        return Math.toDegrees(Math.asin(sinAngle / cosLat));
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.dao.HiveInfoDao;
+import com.kunghsu.apache.flink.tableapi.hive.dao.UserLocationDao;
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import org.apache.flink.table.api.TableEnvironment;
+
+/**
+ * 通过hive catalog读取用户位置分区构建索引
+ * 分区只读一次，经纬度在加载时就解析成double数组，匹配时不再处理字符串
+ *
+ * 作为PartitionedUserLocationLoader使用时，构造参数里的partition不生效，由调用方指定分区
+ *
+ * 读分区：通过hive catalog查出分区目录，再用TextFileUserLocationIndexLoader直接读目录下的文件，
+ * 不用table.execute().collect()，否则在TM上每加载一次分区都会在TM里起一个MiniCluster跑作业
+ * 所以表必须是建表语句里的默认格式（TEXTFILE，列分隔符\001），其他存储格式（orc、parquet）不能这样读
+ *
+ * 注意：这段代码在TM上执行，和JM不是同一个JVM，所以hive catalog在TM上第一次用到时才创建
+ * 每个loader实例只创建一个tableEnv（一个HiveCatalog，一个metastore连接），之后查分区、查分区目录都复用它，
+ * 不再使用HiveInfoDao的静态tableEnv；用完调用close释放
+ * load()、loadColumns()是一次性加载，加载完就关闭
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/3
+ * desc:
+*/
+public class HiveUserLocationIndexLoader implements UserLocationIndexLoader, UserLocationColumnsLoader,
+        PartitionedUserLocationLoader {
+
+    private final String catalogName;
+    private final String hiveConfDir;
+    private final String version;
+    private final String database;
+    private final String tableName;
+
+    /**
+     * 为空表示取最新分区
+     */
+    private final String partition;
+
+    /**
+     * true表示用夜间坐标lat_night/lng_night建索引，false表示用lat/lng
+     * 作为UserLocationColumnsLoader使用时不生效
+     */
+    private final boolean night;
+
+    /**
+     * 第一次用到时创建，不参与序列化
+     */
+    private transient TableEnvironment tableEnv;
+
+    public HiveUserLocationIndexLoader(String catalogName, String hiveConfDir, String version, String database,
+                                       String tableName, String partition, boolean night) {
+        this.catalogName = catalogName;
+        this.hiveConfDir = hiveConfDir;
+        this.version = version;
+        this.database = database;
+        this.tableName = tableName;
+        this.partition = partition;
+        this.night = night;
+    }
+
+    @Override
+    public UserLocationGridIndex load() throws Exception {
+        return UserLocationGridIndex.of(loadColumns(), night, UserLocationGridIndex.DEFAULT_CELL_SIZE_DEGREE);
+    }
+
+    /**
+     * 读出分区的所有列
+     *
+     * @return
+     * @throws Exception
+     */
+    @Override
+    public UserLocationColumns loadColumns() throws Exception {
+
+        try {
+            String targetPartition = partition != null ? partition : latestPartition();
+            if (targetPartition == null) {
+                throw new IllegalStateException("用户位置表没有任何分区：" + tableName);
+            }
+            return loadColumns(targetPartition);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public String sourceName() {
+        return database + "." + tableName;
+    }
+
+    /**
+     * 同一个实例可能被监控线程、加载线程同时调用，tableEnv不是线程安全的，这里串行执行
+     */
+    @Override
+    public synchronized String latestPartition() throws Exception {
+        return UserLocationDao.latestPartition(tableEnv(), tableName);
+    }
+
+    /**
+     * 只有查分区目录需要串行，读文件不占用tableEnv
+     */
+    @Override
+    public UserLocationColumns loadColumns(String partition) throws Exception {
+        String location;
+        synchronized (this) {
+            location = UserLocationDao.partitionLocation(tableEnv(), tableName, partition);
+        }
+        return TextFileUserLocationIndexLoader.loadColumns(location);
+    }
+
+    /**
+     * 关闭hive catalog，之后再调用会重新创建
+     */
+    @Override
+    public synchronized void close() {
+        HiveInfoDao.close(tableEnv);
+        tableEnv = null;
+    }
+
+    private TableEnvironment tableEnv() {
+        if (tableEnv == null) {
+            tableEnv = HiveInfoDao.createTableEnv(catalogName, hiveConfDir, version, database);
+        }
+        return tableEnv;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+
+import java.io.Serializable;
+
+/**
+ * 按分区加载用户位置
+ * 和UserLocationColumnsLoader的区别是：分区由调用方指定，配合UserLocationPartitionMonitorSource在作业运行期间切换到新分区
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public interface PartitionedUserLocationLoader extends Serializable {
+
+    /**
+     * 数据来源的标识，例如 test.user_location_partition_info_temporal2
+     * 同一个TM里来源和分区都相同的，只加载一次
+     */
+    String sourceName();
+
+    /**
+     * 当前最新分区
+     *
+     * @return 没有分区时返回null
+     * @throws Exception
+     */
+    String latestPartition() throws Exception;
+
+    /**
+     * 加载指定分区（包括白天和夜间坐标）
+     *
+     * @param partition
+     * @return
+     * @throws Exception
+     */
+    UserLocationColumns loadColumns(String partition) throws Exception;
+
+    /**
+     * 释放加载用到的资源（例如hive catalog的metastore连接），由持有loader的算子在close时调用
+     * 关闭后再调用latestPartition、loadColumns，由实现类重新打开
+     *
+     * @throws Exception
+     */
+    default void close() throws Exception {
+    }
+
+}
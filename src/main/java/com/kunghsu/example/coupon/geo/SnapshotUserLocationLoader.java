@@ -0,0 +1,107 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 从列式快照文件（UserLocationSnapshot）加载用户位置，用内存映射整列读入，不再逐行解析文本
+ * 快照由UserLocationSnapshotTool导出
+ *
+ * 两种用法：
+ * 1.new SnapshotUserLocationLoader(path) 只读快照，作为UserLocationIndexLoader、UserLocationColumnsLoader使用
+ * 2.new SnapshotUserLocationLoader(path, fallback) 作为PartitionedUserLocationLoader使用，
+ *   请求的分区和快照的分区一致时读快照，否则（快照还没刷新到新分区、快照不存在）交给fallback从hive读
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/10
+ * desc:
+*/
+public class SnapshotUserLocationLoader implements UserLocationIndexLoader, UserLocationColumnsLoader,
+        PartitionedUserLocationLoader {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SnapshotUserLocationLoader.class);
+
+    /**
+     * TM本地路径
+     */
+    private final String path;
+
+    private final PartitionedUserLocationLoader fallback;
+
+    /**
+     * true表示用夜间坐标lat_night/lng_night建索引，false表示用lat/lng
+     * 只在作为UserLocationIndexLoader使用时生效
+     */
+    private final boolean night;
+
+    public SnapshotUserLocationLoader(String path) {
+        this(path, null, false);
+    }
+
+    public SnapshotUserLocationLoader(String path, PartitionedUserLocationLoader fallback) {
+        this(path, fallback, false);
+    }
+
+    public SnapshotUserLocationLoader(String path, PartitionedUserLocationLoader fallback, boolean night) {
+        this.path = path;
+        this.fallback = fallback;
+        this.night = night;
+    }
+
+    @Override
+    public UserLocationGridIndex load() throws Exception {
+        return UserLocationGridIndex.of(loadColumns(), night, UserLocationGridIndex.DEFAULT_CELL_SIZE_DEGREE);
+    }
+
+    @Override
+    public UserLocationColumns loadColumns() throws Exception {
+        return UserLocationSnapshot.read(snapshotPath());
+    }
+
+    @Override
+    public String sourceName() {
+        return fallback != null ? fallback.sourceName() : "snapshot:" + path;
+    }
+
+    /**
+     * 有fallback时以fallback的最新分区为准，快照落后时由loadColumns(partition)回退
+     */
+    @Override
+    public String latestPartition() throws Exception {
+        if (fallback != null) {
+            return fallback.latestPartition();
+        }
+        String partition = UserLocationSnapshot.readPartition(snapshotPath());
+        return partition == null || partition.isEmpty() ? null : partition;
+    }
+
+    @Override
+    public UserLocationColumns loadColumns(String partition) throws Exception {
+        String snapshotPartition = UserLocationSnapshot.readPartition(snapshotPath());
+        if (partition.equals(snapshotPartition)) {
+            return UserLocationSnapshot.read(snapshotPath());
+        }
+        if (fallback == null) {
+            throw new IllegalStateException("快照的分区是" + snapshotPartition + "，没有分区" + partition + "，path:" + path);
+        }
+        LOGGER.warn("用户位置快照和请求的分区不一致，改为从{}读取，快照分区:{} 请求分区:{}",
+                fallback.sourceName(), snapshotPartition, partition);
+        return fallback.loadColumns(partition);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (fallback != null) {
+            fallback.close();
+        }
+    }
+
+    private Path snapshotPath() {
+        return Paths.get(path);
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import org.apache.flink.core.fs.FSDataInputStream;
+import org.apache.flink.core.fs.FileStatus;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接读hive表分区目录下的文本文件构建索引
+ * 列顺序与建表语句一致（详见doc/example/coupon/coupon-demo-temporal.sql）：
+ * cert_type, cert_nbr, lat, lng, lat_night, lng_night, work_day, destination
+ * 列分隔符是hive默认的\001
+ *
+ * path可以是单个文件，也可以是分区目录，例如：
+ * hdfs://127.0.0.1:9000/user/hive/warehouse/test.db/user_location_partition_info_temporal2/partstart=20220219
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public class TextFileUserLocationIndexLoader implements UserLocationIndexLoader, UserLocationColumnsLoader {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(TextFileUserLocationIndexLoader.class);
+
+    private static final char FIELD_DELIMITER = '\001';
+
+    private static final int CERT_TYPE_INDEX = 0;
+    private static final int CERT_NBR_INDEX = 1;
+    private static final int LAT_INDEX = 2;
+    private static final int LNG_INDEX = 3;
+    private static final int LAT_NIGHT_INDEX = 4;
+    private static final int LNG_NIGHT_INDEX = 5;
+
+    private final String path;
+
+    /**
+     * true表示用夜间坐标lat_night/lng_night建索引，false表示用lat/lng
+     * 作为UserLocationColumnsLoader使用时不生效
+     */
+    private final boolean night;
+
+    private final double cellSizeDegree;
+
+    public TextFileUserLocationIndexLoader(String path, boolean night) {
+        this(path, night, UserLocationGridIndex.DEFAULT_CELL_SIZE_DEGREE);
+    }
+
+    public TextFileUserLocationIndexLoader(String path, boolean night, double cellSizeDegree) {
+        this.path = path;
+        this.night = night;
+        this.cellSizeDegree = cellSizeDegree;
+    }
+
+    @Override
+    public UserLocationGridIndex load() throws Exception {
+
+        long start = System.currentTimeMillis();
+        UserLocationColumns columns = loadColumns(path);
+        UserLocationGridIndex index = UserLocationGridIndex.of(columns, night, cellSizeDegree);
+        LOGGER.info("用户位置索引加载完成，path:{} night:{} 用户数:{} 耗时:{}ms",
+                path, night, index.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    @Override
+    public UserLocationColumns loadColumns() throws Exception {
+        return loadColumns(path);
+    }
+
+    /**
+     * 读出目录（或单个文件）下所有行，经纬度解析成double
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static UserLocationColumns loadColumns(String path) throws IOException {
+
+        UserLocationColumns columns = new UserLocationColumns();
+        Path rootPath = new Path(path);
+        FileSystem fileSystem = rootPath.getFileSystem();
+        FileStatus rootStatus = fileSystem.getFileStatus(rootPath);
+        int skipCount = 0;
+        if (rootStatus.isDir()) {
+            for (FileStatus fileStatus : fileSystem.listStatus(rootPath)) {
+                //跳过 _SUCCESS、.staging 之类的文件
+                String fileName = fileStatus.getPath().getName();
+                if (fileStatus.isDir() || fileName.startsWith("_") || fileName.startsWith(".")) {
+                    continue;
+                }
+                skipCount += readFile(fileSystem, fileStatus.getPath(), columns);
+            }
+        } else {
+            skipCount += readFile(fileSystem, rootPath, columns);
+        }
+        columns.trimToSize();
+        LOGGER.info("用户位置文件读取完成，path:{} 行数:{} 跳过行数:{}", path, columns.size(), skipCount);
+        return columns;
+    }
+
+    /**
+     * 读一个文件
+     * @return 列数不够被跳过的行数
+     */
+    private static int readFile(FileSystem fileSystem, Path filePath, UserLocationColumns columns) throws IOException {
+
+        int skipCount = 0;
+        String[] fields = new String[LNG_NIGHT_INDEX + 1];
+        try (FSDataInputStream inputStream = fileSystem.open(filePath);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!split(line, fields)) {
+                    skipCount++;
+                    continue;
+                }
+                //表头或者脏数据的坐标会被解析成NaN，建索引时自然被跳过
+                columns.add(fields[CERT_TYPE_INDEX], fields[CERT_NBR_INDEX],
+                        UserLocationColumns.parseCoordinate(fields[LAT_INDEX]),
+                        UserLocationColumns.parseCoordinate(fields[LNG_INDEX]),
+                        UserLocationColumns.parseCoordinate(fields[LAT_NIGHT_INDEX]),
+                        UserLocationColumns.parseCoordinate(fields[LNG_NIGHT_INDEX]));
+            }
+        }
+        return skipCount;
+    }
+
+    /**
+     * 按\001切分前几列，比String.split少一次正则和数组扩容
+     * 老版本的表没有lat_night、lng_night两列，缺的列按null处理
+     * @return 连cert_type、cert_nbr、lat、lng都不够时返回false
+     */
+    private static boolean split(String line, String[] fields) {
+        int start = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (start > line.length()) {
+                if (i <= LNG_INDEX) {
+                    return false;
+                }
+                fields[i] = null;
+                continue;
+            }
+            int end = line.indexOf(FIELD_DELIMITER, start);
+            if (end < 0) {
+                end = line.length();
+            }
+            fields[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import com.kunghsu.example.coupon.function.TimePeriodResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按时段切换的用户位置视图
+ *
+ * 原来的SQL在haversine公式里写了四遍 CASE udfTimePeriod(...) WHEN '0' THEN lat WHEN '1' THEN lat_night ...
+ * 每一行join结果都要算一遍时段、选一遍列
+ * 这里改成：时段变化时，把该时段生效的(lat, lng)整体物化成一份索引，然后原子替换当前引用
+ * 匹配时只读当前引用，逐行不再有任何时段判断
+ *
+ * 白天、夜间两份索引在构造时就全部建好（构造在open或者后台加载线程里执行），
+ * 时段切换时只换引用，不会在处理数据的线程里、持有锁的情况下构建几百万行的索引，也不会挡住checkpoint barrier
+ * 时段最多每分钟变化一次，所以每条记录只需要比较一下时间戳，到了下一分钟才重新判断时段
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/4
+ * desc:
+*/
+public class TimePeriodUserLocationView {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(TimePeriodUserLocationView.class);
+
+    private final UserLocationColumns columns;
+
+    private final double cellSizeDegree;
+
+    private final UserLocationGridIndex dayIndex;
+
+    private final UserLocationGridIndex nightIndex;
+
+    /**
+     * 当前生效的时段和索引，整体替换，读的时候不会看到一半新一半旧
+     */
+    private volatile ActiveIndex active;
+
+    public TimePeriodUserLocationView(UserLocationColumns columns) {
+        this(columns, UserLocationGridIndex.DEFAULT_CELL_SIZE_DEGREE);
+    }
+
+    public TimePeriodUserLocationView(UserLocationColumns columns, double cellSizeDegree) {
+        this.columns = columns;
+        this.cellSizeDegree = cellSizeDegree;
+        //两个时段都先准备好，避免处理数据时才构建
+        this.dayIndex = build(false);
+        this.nightIndex = build(true);
+        refresh(System.currentTimeMillis());
+    }
+
+    /**
+     * 当前时段的索引
+     */
+    public UserLocationGridIndex currentIndex() {
+        return currentIndex(System.currentTimeMillis());
+    }
+
+    public UserLocationGridIndex currentIndex(long nowMillis) {
+        ActiveIndex current = active;
+        if (nowMillis < current.validUntilMillis && nowMillis >= current.validFromMillis) {
+            return current.index;
+        }
+        return refresh(nowMillis).index;
+    }
+
+    /**
+     * 当前时段，"0"白天 "1"夜间
+     */
+    public String currentPeriod() {
+        return active.period;
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    /**
+     * 估算占用的堆内存（字节）：列数据 + 白天、夜间两份索引
+     * 列数据部分要遍历所有行，UserLocationViewCache在加载时算一次存到LoadedUserLocation里
+     */
+    public long estimatedMemoryBytes() {
+        return columns.estimatedMemoryBytes() + dayIndex.estimatedMemoryBytes() + nightIndex.estimatedMemoryBytes();
+    }
+
+    private synchronized ActiveIndex refresh(long nowMillis) {
+        ActiveIndex current = active;
+        if (current != null && nowMillis < current.validUntilMillis && nowMillis >= current.validFromMillis) {
+            //别的线程已经刷新过了
+            return current;
+        }
+        String period = TimePeriodResolver.periodOf(nowMillis);
+        long validFromMillis = TimePeriodResolver.nextMinuteStart(nowMillis) - 60 * 1000L;
+        long validUntilMillis = TimePeriodResolver.nextMinuteStart(nowMillis);
+        ActiveIndex refreshed = new ActiveIndex(period, indexOf(period), validFromMillis, validUntilMillis);
+        if (current == null || !current.period.equals(period)) {
+            LOGGER.info("用户位置时段切换：{} -> {}", current == null ? null : current.period, period);
+        }
+        active = refreshed;
+        return refreshed;
+    }
+
+    private UserLocationGridIndex indexOf(String period) {
+        return TimePeriodResolver.DAY.equals(period) ? dayIndex : nightIndex;
+    }
+
+    private UserLocationGridIndex build(boolean night) {
+        long start = System.currentTimeMillis();
+        UserLocationGridIndex index = UserLocationGridIndex.of(columns, night, cellSizeDegree);
+        LOGGER.info("用户位置时段索引构建完成，night:{} 用户数:{} 耗时:{}ms",
+                night, index.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private static final class ActiveIndex {
+
+        private final String period;
+        private final UserLocationGridIndex index;
+        private final long validFromMillis;
+        private final long validUntilMillis;
+
+        private ActiveIndex(String period, UserLocationGridIndex index, long validFromMillis, long validUntilMillis) {
+            this.period = period;
+            this.index = index;
+            this.validFromMillis = validFromMillis;
+            this.validUntilMillis = validUntilMillis;
+        }
+    }
+
+}
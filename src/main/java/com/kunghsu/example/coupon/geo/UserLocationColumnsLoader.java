@@ -0,0 +1,25 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+
+import java.io.Serializable;
+
+/**
+ * 用户位置列加载器
+ * 和UserLocationIndexLoader的区别是：白天、夜间坐标都保留，由TimePeriodUserLocationView按时段选择
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/4
+ * desc:
+*/
+public interface UserLocationColumnsLoader extends Serializable {
+
+    /**
+     * 加载用户位置（包括白天和夜间坐标）
+     *
+     * @return
+     * @throws Exception
+     */
+    UserLocationColumns loadColumns() throws Exception;
+
+}
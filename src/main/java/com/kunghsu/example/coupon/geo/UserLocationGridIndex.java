@@ -0,0 +1,357 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用户位置网格索引
+ *
+ * 原来的做法是 cert_type = type 做笛卡尔积，然后每一对都算一次haversine，复杂度是 门店数 x 用户数
+ * 这里先按证件类型分组，每组再按经纬度切成固定大小的网格(cell)，同一个网格的用户在数组里是连续的
+ * 查询时先用外接矩形圈出候选网格，再对候选点做一次矩形过滤，最后才做精确距离判断
+ *
+ * 建好之后只读，可以被多个线程同时查询
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public class UserLocationGridIndex {
+
+    /**
+     * 默认网格大小，0.01度，纬度方向大约1.1公里
+     * 门店范围一般是几百米到几公里，这个大小下一次查询只会涉及几个到几十个网格
+     */
+    public static final double DEFAULT_CELL_SIZE_DEGREE = 0.01;
+
+    private final double cellSizeDegree;
+
+    /**
+     * 证件类型 -> 该类型下的网格
+     */
+    private final Map<String, Grid> gridMap;
+
+    private final int size;
+
+    private final long estimatedMemoryBytes;
+
+    private UserLocationGridIndex(double cellSizeDegree, Map<String, Grid> gridMap, int size) {
+        this.cellSizeDegree = cellSizeDegree;
+        this.gridMap = gridMap;
+        this.size = size;
+        long bytes = 0L;
+        for (Grid grid : gridMap.values()) {
+            bytes += grid.estimatedMemoryBytes();
+        }
+        this.estimatedMemoryBytes = bytes;
+    }
+
+    public static Builder builder() {
+        return new Builder(DEFAULT_CELL_SIZE_DEGREE);
+    }
+
+    public static Builder builder(double cellSizeDegree) {
+        return new Builder(cellSizeDegree);
+    }
+
+    /**
+     * 直接用已经解析好的列构建索引，不再处理字符串
+     *
+     * @param columns 用户位置列
+     * @param night true表示用夜间坐标lat_night/lng_night，false表示用lat/lng
+     * @param cellSizeDegree 网格大小
+     * @return
+     */
+    public static UserLocationGridIndex of(UserLocationColumns columns, boolean night, double cellSizeDegree) {
+        String[] certTypes = columns.getCertTypes();
+        String[] certNbrs = columns.getCertNbrs();
+        double[] lats = night ? columns.getLatNights() : columns.getLats();
+        double[] lngs = night ? columns.getLngNights() : columns.getLngs();
+        Builder builder = builder(cellSizeDegree);
+        for (int i = 0; i < columns.size(); i++) {
+            //该时段没有坐标的用户不参与匹配，和SQL里CAST出null的效果一样
+            if (Double.isNaN(lats[i]) || Double.isNaN(lngs[i])) {
+                continue;
+            }
+            builder.add(certTypes[i], certNbrs[i], lats[i], lngs[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 查询某个证件类型下，距离(lat, lng)小于rangeMeters的所有用户
+     *
+     * @param certType 证件类型
+     * @param lat 门店纬度
+     * @param lng 门店经度
+     * @param rangeMeters 门店范围，单位米
+     * @param visitor 每命中一个用户回调一次
+     * @return 命中个数
+     */
+    public int query(String certType, double lat, double lng, double rangeMeters, MatchVisitor visitor) {
+
+        Grid grid = gridMap.get(certType);
+        if (grid == null || rangeMeters <= 0) {
+            return 0;
+        }
+
+        double latDelta = GeoUtils.latitudeDelta(rangeMeters);
+        double lngDelta = GeoUtils.longitudeDelta(lat, rangeMeters);
+        double minLat = lat - latDelta;
+        double maxLat = lat + latDelta;
+        double minLng = lng - lngDelta;
+        double maxLng = lng + lngDelta;
+
+        //门店坐标只转换一次弧度
+        double latRad = Math.toRadians(lat);
+        double cosLat = Math.cos(latRad);
+        double lngRad = Math.toRadians(lng);
+        Probe probe = new Probe(certType, latRad, cosLat, lngRad, rangeMeters,
+                Math.toRadians(minLat), Math.toRadians(maxLat), Math.toRadians(minLng), Math.toRadians(maxLng));
+
+        int minLatCell = cellOf(minLat);
+        int maxLatCell = cellOf(maxLat);
+        int minLngCell = cellOf(minLng);
+        int maxLngCell = cellOf(maxLng);
+        long cellCount = (long) (maxLatCell - minLatCell + 1) * (maxLngCell - minLngCell + 1);
+
+        int count = 0;
+        if (cellCount > grid.cellKeys.length) {
+            //范围特别大时，逐个网格查找反而更慢，直接扫描所有非空网格
+            for (int cellIndex = 0; cellIndex < grid.cellKeys.length; cellIndex++) {
+                count += grid.scanCell(cellIndex, probe, visitor);
+            }
+            return count;
+        }
+
+        for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            for (int lngCell = minLngCell; lngCell <= maxLngCell; lngCell++) {
+                int cellIndex = Arrays.binarySearch(grid.cellKeys, cellKey(latCell, lngCell));
+                if (cellIndex >= 0) {
+                    count += grid.scanCell(cellIndex, probe, visitor);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 索引中的用户总数
+     */
+    public int size() {
+        return size;
+    }
+
+    public double getCellSizeDegree() {
+        return cellSizeDegree;
+    }
+
+    /**
+     * 估算占用的堆内存（字节），只用于监控
+     * 证件号字符串和UserLocationColumns是同一批对象，这里只算引用
+     */
+    public long estimatedMemoryBytes() {
+        return estimatedMemoryBytes;
+    }
+
+    private int cellOf(double degree) {
+        return (int) Math.floor(degree / cellSizeDegree);
+    }
+
+    private static long cellKey(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 命中回调
+     */
+    public interface MatchVisitor {
+
+        void visit(String certType, String certNbr);
+    }
+
+    /**
+     * 一次查询的参数，避免在scanCell里传一长串参数
+     */
+    private static final class Probe {
+
+        private final String certType;
+        private final double latRad;
+        private final double cosLat;
+        private final double lngRad;
+        private final double rangeMeters;
+        private final double minLatRad;
+        private final double maxLatRad;
+        private final double minLngRad;
+        private final double maxLngRad;
+
+        private Probe(String certType, double latRad, double cosLat, double lngRad, double rangeMeters,
+                      double minLatRad, double maxLatRad, double minLngRad, double maxLngRad) {
+            this.certType = certType;
+            this.latRad = latRad;
+            this.cosLat = cosLat;
+            this.lngRad = lngRad;
+            this.rangeMeters = rangeMeters;
+            this.minLatRad = minLatRad;
+            this.maxLatRad = maxLatRad;
+            this.minLngRad = minLngRad;
+            this.maxLngRad = maxLngRad;
+        }
+    }
+
+    /**
+     * 单个证件类型的网格
+     * 所有点按网格排好序后平铺在数组里，cellOffsets[i]到cellOffsets[i+1]是第i个网格的点
+     */
+    private static final class Grid {
+
+        private final long[] cellKeys;
+        private final int[] cellOffsets;
+        private final double[] latRads;
+        private final double[] cosLats;
+        private final double[] lngRads;
+        private final String[] certNbrs;
+
+        private Grid(long[] cellKeys, int[] cellOffsets, double[] latRads, double[] cosLats,
+                     double[] lngRads, String[] certNbrs) {
+            this.cellKeys = cellKeys;
+            this.cellOffsets = cellOffsets;
+            this.latRads = latRads;
+            this.cosLats = cosLats;
+            this.lngRads = lngRads;
+            this.certNbrs = certNbrs;
+        }
+
+        private long estimatedMemoryBytes() {
+            return (long) cellKeys.length * Long.BYTES + (long) cellOffsets.length * Integer.BYTES
+                    + (long) latRads.length * Double.BYTES * 3 + (long) certNbrs.length * 4;
+        }
+
+        private int scanCell(int cellIndex, Probe probe, MatchVisitor visitor) {
+            int count = 0;
+            for (int i = cellOffsets[cellIndex]; i < cellOffsets[cellIndex + 1]; i++) {
+                double pointLatRad = latRads[i];
+                double pointLngRad = lngRads[i];
+                //先做矩形过滤，大部分候选点在这里就被排除了
+                if (pointLatRad < probe.minLatRad || pointLatRad > probe.maxLatRad
+                        || pointLngRad < probe.minLngRad || pointLngRad > probe.maxLngRad) {
+                    continue;
+                }
+                double distance = GeoUtils.distanceMeters(probe.latRad, probe.cosLat, probe.lngRad,
+                        pointLatRad, cosLats[i], pointLngRad);
+                if (GeoUtils.isWithin(distance, probe.rangeMeters)) {
+                    visitor.visit(probe.certType, certNbrs[i]);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 构建器，非线程安全
+     */
+    public static class Builder {
+
+        private final double cellSizeDegree;
+        private final Map<String, GridBuilder> gridBuilderMap = new HashMap<>();
+        private int size;
+
+        private Builder(double cellSizeDegree) {
+            if (cellSizeDegree <= 0) {
+                throw new IllegalArgumentException("cellSizeDegree must be positive: " + cellSizeDegree);
+            }
+            this.cellSizeDegree = cellSizeDegree;
+        }
+
+        public Builder add(String certType, String certNbr, double lat, double lng) {
+            GridBuilder gridBuilder = gridBuilderMap.get(certType);
+            if (gridBuilder == null) {
+                gridBuilder = new GridBuilder();
+                gridBuilderMap.put(certType, gridBuilder);
+            }
+            long key = cellKey((int) Math.floor(lat / cellSizeDegree), (int) Math.floor(lng / cellSizeDegree));
+            gridBuilder.add(key, certNbr, lat, lng);
+            size++;
+            return this;
+        }
+
+        public UserLocationGridIndex build() {
+            Map<String, Grid> gridMap = new HashMap<>();
+            for (Map.Entry<String, GridBuilder> entry : gridBuilderMap.entrySet()) {
+                gridMap.put(entry.getKey(), entry.getValue().build());
+            }
+            return new UserLocationGridIndex(cellSizeDegree, gridMap, size);
+        }
+    }
+
+    private static final class GridBuilder {
+
+        private long[] keys = new long[16];
+        private double[] lats = new double[16];
+        private double[] lngs = new double[16];
+        private String[] certNbrs = new String[16];
+        private int size;
+
+        private void add(long key, String certNbr, double lat, double lng) {
+            if (size == keys.length) {
+                int newLength = keys.length << 1;
+                keys = Arrays.copyOf(keys, newLength);
+                lats = Arrays.copyOf(lats, newLength);
+                lngs = Arrays.copyOf(lngs, newLength);
+                certNbrs = Arrays.copyOf(certNbrs, newLength);
+            }
+            keys[size] = key;
+            lats[size] = lat;
+            lngs[size] = lng;
+            certNbrs[size] = certNbr;
+            size++;
+        }
+
+        /**
+         * 按网格重排
+         * 只用基本类型数组：先对key排序去重得到网格列表，再统计每个网格的个数，最后把点放到各自的位置
+         */
+        private Grid build() {
+            long[] sortedKeys = Arrays.copyOf(keys, size);
+            Arrays.sort(sortedKeys);
+            int cellNum = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+                    sortedKeys[cellNum++] = sortedKeys[i];
+                }
+            }
+            long[] cellKeys = Arrays.copyOf(sortedKeys, cellNum);
+
+            int[] pointCellIndexes = new int[size];
+            int[] cellOffsets = new int[cellNum + 1];
+            for (int i = 0; i < size; i++) {
+                int cellIndex = Arrays.binarySearch(cellKeys, keys[i]);
+                pointCellIndexes[i] = cellIndex;
+                cellOffsets[cellIndex + 1]++;
+            }
+            for (int i = 0; i < cellNum; i++) {
+                cellOffsets[i + 1] += cellOffsets[i];
+            }
+
+            int[] fillPositions = Arrays.copyOf(cellOffsets, cellNum);
+            double[] latRads = new double[size];
+            double[] cosLats = new double[size];
+            double[] lngRads = new double[size];
+            String[] sortedCertNbrs = new String[size];
+            for (int i = 0; i < size; i++) {
+                int position = fillPositions[pointCellIndexes[i]]++;
+                double latRad = Math.toRadians(lats[i]);
+                latRads[position] = latRad;
+                cosLats[position] = Math.cos(latRad);
+                lngRads[position] = Math.toRadians(lngs[i]);
+                sortedCertNbrs[position] = certNbrs[i];
+            }
+            return new Grid(cellKeys, cellOffsets, latRads, cosLats, lngRads, sortedCertNbrs);
+        }
+    }
+
+}
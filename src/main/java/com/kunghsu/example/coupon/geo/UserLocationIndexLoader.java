@@ -0,0 +1,23 @@
+package com.kunghsu.example.coupon.geo;
+
+import java.io.Serializable;
+
+/**
+ * 用户位置索引加载器
+ * 算子在open方法里调用，因为要随算子一起序列化到TM，所以必须实现Serializable
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public interface UserLocationIndexLoader extends Serializable {
+
+    /**
+     * 加载用户位置，构建索引
+     *
+     * @return
+     * @throws Exception
+     */
+    UserLocationGridIndex load() throws Exception;
+
+}
@@ -0,0 +1,80 @@
+package com.kunghsu.example.coupon.geo;
+
+import org.apache.flink.streaming.api.functions.source.RichSourceFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 定时检查用户位置表的最新分区，分区变化时输出新的分区值
+ * 相当于temporal join里的 'streaming-source.partition.include'='latest' + 'streaming-source.monitor-interval'
+ * 只是这里只有一个subtask去查分区，输出的是很小的分区值，由下游广播给所有匹配算子
+ *
+ * 并行度必须是1
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class UserLocationPartitionMonitorSource extends RichSourceFunction<String> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserLocationPartitionMonitorSource.class);
+
+    private final PartitionedUserLocationLoader loader;
+
+    private final long monitorIntervalMillis;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param loader 用户位置来源
+     * @param monitorIntervalMillis 多久检查一次分区
+     */
+    public UserLocationPartitionMonitorSource(PartitionedUserLocationLoader loader, long monitorIntervalMillis) {
+        if (monitorIntervalMillis <= 0) {
+            throw new IllegalArgumentException("monitorIntervalMillis必须大于0");
+        }
+        this.loader = loader;
+        this.monitorIntervalMillis = monitorIntervalMillis;
+    }
+
+    @Override
+    public void run(SourceContext<String> ctx) throws Exception {
+
+        String lastPartition = null;
+        while (running) {
+            try {
+                String partition = loader.latestPartition();
+                //分区值是yyyyMMdd，按字符串比较即可，回退到旧分区不处理
+                if (partition != null && (lastPartition == null || partition.compareTo(lastPartition) > 0)) {
+                    LOGGER.info("发现用户位置新分区，source:{} {} -> {}", loader.sourceName(), lastPartition, partition);
+                    synchronized (ctx.getCheckpointLock()) {
+                        ctx.collect(partition);
+                    }
+                    lastPartition = partition;
+                }
+            } catch (Exception e) {
+                //查询分区失败不影响匹配，继续用已经加载好的分区，下一轮再查
+                LOGGER.warn("查询用户位置最新分区失败，source:{}", loader.sourceName(), e);
+            }
+            Thread.sleep(monitorIntervalMillis);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+    /**
+     * run退出后释放loader持有的连接
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            loader.close();
+        } finally {
+            super.close();
+        }
+    }
+
+}
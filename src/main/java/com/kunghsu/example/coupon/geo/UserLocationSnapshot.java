@@ -0,0 +1,332 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用户位置的列式快照文件
+ *
+ * hive表是\001分隔的文本，每次作业启动都要逐行切分、解析经纬度，千万级数据要几分钟
+ * 这里把一个分区导出成按列存放的二进制文件，作业启动时用内存映射整列读入：
+ * 经纬度直接批量拷贝到double数组，不再解析字符串；证件号一次读出所有字节再切分
+ *
+ * 文件格式（小端）：
+ * 头部：magic、版本、行数、cert_type字典大小、导出时间、分区值，补齐到8字节
+ * lat、lng、lat_night、lng_night：各 行数 个double，没有坐标的是NaN
+ * cert_type：各 行数 个int，是字典里的下标（证件类型只有几种，不用每行存一份字符串）
+ * cert_nbr的偏移：行数+1 个int
+ * cert_type字典：每项是 长度 + UTF-8字节
+ * cert_nbr：所有证件号的UTF-8字节连在一起，null按空字符串存
+ *
+ * 只存匹配用到的列，work_day、destination不导出
+ * 内存映射要求是本地文件，快照需要放在每台TM都能访问的本地路径（或者通过flink的分布式缓存分发）
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/10
+ * desc:
+*/
+public class UserLocationSnapshot {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserLocationSnapshot.class);
+
+    private static final int MAGIC = 0x554C5331;
+
+    private static final int VERSION = 1;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private UserLocationSnapshot() {
+    }
+
+    /**
+     * 写快照，先写临时文件再原子替换，作业同时在读旧快照也不会读到写了一半的文件
+     *
+     * @param columns 用户位置
+     * @param partition 数据来自哪个分区，没有分区时传null
+     * @param target 快照文件
+     * @throws IOException
+     */
+    public static void write(UserLocationColumns columns, String partition, Path target) throws IOException {
+
+        long start = System.currentTimeMillis();
+        int rowCount = columns.size();
+        String[] certTypes = columns.getCertTypes();
+        String[] certNbrs = columns.getCertNbrs();
+
+        //证件类型编码成字典下标
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] certTypeCodes = new int[rowCount];
+        String[] dictionaryValues = new String[Math.max(rowCount, 1)];
+        for (int i = 0; i < rowCount; i++) {
+            String certType = certTypes[i] == null ? "" : certTypes[i];
+            Integer code = dictionary.get(certType);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(certType, code);
+                dictionaryValues[code] = certType;
+            }
+            certTypeCodes[i] = code;
+        }
+
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChunkWriter writer = new ChunkWriter(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putInt(rowCount);
+            writer.putInt(dictionary.size());
+            writer.putLong(System.currentTimeMillis());
+            writer.putString(partition == null ? "" : partition);
+            writer.alignTo(Double.BYTES);
+
+            writer.putDoubles(columns.getLats(), rowCount);
+            writer.putDoubles(columns.getLngs(), rowCount);
+            writer.putDoubles(columns.getLatNights(), rowCount);
+            writer.putDoubles(columns.getLngNights(), rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                writer.putInt(certTypeCodes[i]);
+            }
+
+            //偏移和内容分两遍编码，不用同时在堆上保留所有证件号的字节
+            long offset = 0;
+            writer.putInt(0);
+            for (int i = 0; i < rowCount; i++) {
+                offset += utf8(certNbrs[i]).length;
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("证件号总长度超过2G，无法写入快照");
+                }
+                writer.putInt((int) offset);
+            }
+
+            for (int i = 0; i < dictionary.size(); i++) {
+                writer.putString(dictionaryValues[i]);
+            }
+            for (int i = 0; i < rowCount; i++) {
+                writer.putBytes(utf8(certNbrs[i]));
+            }
+            writer.flush();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("用户位置快照写入完成，path:{} partition:{} 行数:{} 文件大小:{}字节 耗时:{}ms",
+                target, partition, rowCount, Files.size(target), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 只读头部，取快照对应的分区
+     *
+     * @param path
+     * @return 文件不存在时返回null，没有分区时返回空字符串
+     * @throws IOException
+     */
+    public static String readPartition(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel).partition;
+        }
+    }
+
+    /**
+     * 用内存映射读出整个快照
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static UserLocationColumns read(Path path) throws IOException {
+
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            int rowCount = header.rowCount;
+            long position = header.dataOffset;
+
+            double[] lats = new double[rowCount];
+            double[] lngs = new double[rowCount];
+            double[] latNights = new double[rowCount];
+            double[] lngNights = new double[rowCount];
+            long doubleColumnBytes = (long) rowCount * Double.BYTES;
+            map(channel, position, doubleColumnBytes).asDoubleBuffer().get(lats);
+            position += doubleColumnBytes;
+            map(channel, position, doubleColumnBytes).asDoubleBuffer().get(lngs);
+            position += doubleColumnBytes;
+            map(channel, position, doubleColumnBytes).asDoubleBuffer().get(latNights);
+            position += doubleColumnBytes;
+            map(channel, position, doubleColumnBytes).asDoubleBuffer().get(lngNights);
+            position += doubleColumnBytes;
+
+            int[] certTypeCodes = new int[rowCount];
+            long intColumnBytes = (long) rowCount * Integer.BYTES;
+            map(channel, position, intColumnBytes).asIntBuffer().get(certTypeCodes);
+            position += intColumnBytes;
+
+            int[] certNbrOffsets = new int[rowCount + 1];
+            long offsetBytes = (long) (rowCount + 1) * Integer.BYTES;
+            map(channel, position, offsetBytes).asIntBuffer().get(certNbrOffsets);
+            position += offsetBytes;
+
+            //剩下的是字典和证件号
+            MappedByteBuffer tail = map(channel, position, channel.size() - position);
+            String[] dictionaryValues = new String[header.dictionarySize];
+            for (int i = 0; i < header.dictionarySize; i++) {
+                dictionaryValues[i] = getString(tail);
+            }
+            byte[] certNbrBytes = new byte[certNbrOffsets[rowCount]];
+            tail.get(certNbrBytes);
+
+            String[] certTypes = new String[rowCount];
+            String[] certNbrs = new String[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                certTypes[i] = dictionaryValues[certTypeCodes[i]];
+                certNbrs[i] = new String(certNbrBytes, certNbrOffsets[i], certNbrOffsets[i + 1] - certNbrOffsets[i],
+                        StandardCharsets.UTF_8);
+            }
+
+            LOGGER.info("用户位置快照读取完成，path:{} partition:{} 行数:{} 耗时:{}ms",
+                    path, header.partition, rowCount, System.currentTimeMillis() - start);
+            return UserLocationColumns.of(certTypes, certNbrs, lats, lngs, latNights, lngNights);
+        }
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        //头部只有几十个字节，分区值不会超过这个长度
+        ByteBuffer buffer = map(channel, 0, Math.min(channel.size(), 4096));
+        if (buffer.remaining() < 24 || buffer.getInt() != MAGIC) {
+            throw new IOException("不是用户位置快照文件");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的快照版本：" + version);
+        }
+        Header header = new Header();
+        header.rowCount = buffer.getInt();
+        header.dictionarySize = buffer.getInt();
+        buffer.getLong();
+        header.partition = getString(buffer);
+        header.dataOffset = align(buffer.position(), Double.BYTES);
+        return header;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+    private static final class Header {
+
+        private int rowCount;
+        private int dictionarySize;
+        private String partition;
+        private long dataOffset;
+    }
+
+    /**
+     * 按块写入，避免逐个字段调用channel.write
+     */
+    private static final class ChunkWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private ChunkWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        private void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        private void putDoubles(double[] values, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                ensure(Double.BYTES);
+                buffer.putDouble(values[i]);
+            }
+            position += (long) length * Double.BYTES;
+        }
+
+        private void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+            position += bytes.length;
+        }
+
+        private void alignTo(int alignment) throws IOException {
+            while (position % alignment != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.kunghsu.example.coupon.geo;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 导出/刷新用户位置快照（UserLocationSnapshot）
+ * 可以在新分区产出后由调度系统调用，也可以定时跑：快照已经是最新分区时直接跳过
+ *
+ * 参数：
+ * --output 快照文件路径（本地路径），必填
+ * --source hive（默认）或者text
+ * --partition 导出哪个分区，不填表示最新分区（source=hive时）
+ * --force true 即使快照已经是该分区也重新导出
+ * source=hive时：--catalog、--hive-conf-dir、--hive-version、--database、--table
+ * source=text时：--text-path 分区目录或者文件，快照的分区取--partition
+ *
+ * 例如：
+ * --output /data/flink/user_location.snapshot --hive-conf-dir /etc/hive/conf --partition 20220219
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/10
+ * desc:
+*/
+public class UserLocationSnapshotTool {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserLocationSnapshotTool.class);
+
+    public static void main(String[] args) throws Exception {
+
+        ParameterTool params = ParameterTool.fromArgs(args);
+        Path output = Paths.get(params.getRequired("output"));
+        String source = params.get("source", "hive");
+        boolean force = params.getBoolean("force", false);
+
+        String partition = params.get("partition");
+        UserLocationColumns columns;
+        if ("text".equals(source)) {
+            if (!force && partition != null && partition.equals(UserLocationSnapshot.readPartition(output))) {
+                LOGGER.info("用户位置快照已经是分区{}，跳过，path:{}", partition, output);
+                return;
+            }
+            columns = TextFileUserLocationIndexLoader.loadColumns(params.getRequired("text-path"));
+        } else {
+            PartitionedUserLocationLoader loader = new HiveUserLocationIndexLoader(
+                    params.get("catalog", "myhive"),
+                    params.getRequired("hive-conf-dir"),
+                    params.get("hive-version", "3.1.2"),
+                    params.get("database", "test"),
+                    params.get("table", "user_location_partition_info_temporal2"),
+                    null, false);
+            try {
+                if (partition == null) {
+                    partition = loader.latestPartition();
+                    if (partition == null) {
+                        throw new IllegalStateException("用户位置表没有任何分区：" + loader.sourceName());
+                    }
+                }
+                if (!force && partition.equals(UserLocationSnapshot.readPartition(output))) {
+                    LOGGER.info("用户位置快照已经是分区{}，跳过，path:{}", partition, output);
+                    return;
+                }
+                columns = loader.loadColumns(partition);
+            } finally {
+                loader.close();
+            }
+        }
+
+        UserLocationSnapshot.write(columns, partition, output);
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.kunghsu.example.coupon.geo;
+
+import org.apache.flink.util.InstantiationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TM级别的用户位置缓存
+ * 同一个TM里的多个subtask切换到同一个分区时，只有第一个会真正读分区、构建索引，其他的直接拿同一份结果
+ * 构建好的TimePeriodUserLocationView只读，可以被多个subtask同时查询
+ *
+ * 缓存是所有subtask共享的，所以加载也不能依赖某一个subtask：
+ * 1.加载在缓存自己的加载线程里执行，不用subtask的线程池，第一个发起加载的subtask关闭（failover、cancel、改并行度）不会丢掉排队中的加载
+ * 2.每次加载用loader的一个副本，加载完由加载自己关闭，不受发起加载的subtask关闭loader的影响
+ * 3.加载失败、被取消的结果都会从缓存里移除，不会留下一个永远不完成的future
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class UserLocationViewCache {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserLocationViewCache.class);
+
+    /**
+     * sourceName + 分区 -> 加载结果
+     */
+    private static final Map<String, CompletableFuture<LoadedUserLocation>> CACHE = new ConcurrentHashMap<>();
+
+    private static final String KEY_SEPARATOR = "#";
+
+    /**
+     * 缓存自己的加载线程，同一个TM里所有subtask共用，不随subtask关闭
+     * 只有一个线程：一个分区的数据量很大，同时加载多个分区只会让堆内存更紧张
+     * 空闲一分钟后线程退出，作业结束后不会一直占着作业的类加载器
+     */
+    private static final ThreadPoolExecutor LOAD_EXECUTOR = createLoadExecutor();
+
+    private UserLocationViewCache() {
+    }
+
+    /**
+     * 取某个分区的视图，还没有加载时在缓存的加载线程里加载
+     * 加载失败、被取消的结果不会留在缓存里，下次调用会重新加载
+     *
+     * @param loader 用户位置来源，只用来复制出加载用的副本，调用方可以随时关闭它
+     * @param partition 分区
+     * @return
+     */
+    public static CompletableFuture<LoadedUserLocation> get(PartitionedUserLocationLoader loader, String partition) {
+        String key = loader.sourceName() + KEY_SEPARATOR + partition;
+        CompletableFuture<LoadedUserLocation> future = CACHE.computeIfAbsent(key, k -> submit(loader, partition));
+        future.whenComplete((loaded, throwable) -> {
+            //包括CancellationException
+            if (throwable != null) {
+                CACHE.remove(key, future);
+            }
+        });
+        return future;
+    }
+
+    private static ThreadPoolExecutor createLoadExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "user-location-view-cache-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static CompletableFuture<LoadedUserLocation> submit(PartitionedUserLocationLoader loader, String partition) {
+        CompletableFuture<LoadedUserLocation> future = new CompletableFuture<>();
+        try {
+            //loader是可序列化的，在发起加载时复制一份，连接由这次加载自己打开、关闭
+            PartitionedUserLocationLoader loadingLoader = InstantiationUtil.clone(loader, loader.getClass().getClassLoader());
+            LOAD_EXECUTOR.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(load(loadingLoader, partition));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (IOException | ClassNotFoundException | RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 切换到新分区之后，释放同一来源的旧分区
+     * 其他subtask手上还在用的旧视图不受影响，等它们也切换之后由GC回收
+     *
+     * @param sourceName
+     * @param partition 当前分区，比它旧的都会被移除
+     */
+    public static void evictOlderThan(String sourceName, String partition) {
+        String prefix = sourceName + KEY_SEPARATOR;
+        Iterator<String> iterator = CACHE.keySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (key.startsWith(prefix) && key.substring(prefix.length()).compareTo(partition) < 0) {
+                iterator.remove();
+                LOGGER.info("释放用户位置旧分区，key:{}", key);
+            }
+        }
+    }
+
+    /**
+     * @param loader 这次加载专用的副本，加载完关闭
+     */
+    private static LoadedUserLocation load(PartitionedUserLocationLoader loader, String partition) {
+        long start = System.currentTimeMillis();
+        try {
+            //构造时就会构建白天、夜间的索引，切换过去之后第一条请求不用再等
+            TimePeriodUserLocationView view = new TimePeriodUserLocationView(loader.loadColumns(partition));
+            long loadMillis = System.currentTimeMillis() - start;
+            //估算内存要遍历所有证件号，只在加载时算一次
+            long estimatedMemoryBytes = view.estimatedMemoryBytes();
+            LOGGER.info("用户位置分区加载完成，source:{} partition:{} 用户数:{} 估算内存:{}字节 耗时:{}ms",
+                    loader.sourceName(), partition, view.size(), estimatedMemoryBytes, loadMillis);
+            return new LoadedUserLocation(partition, view, loadMillis, estimatedMemoryBytes);
+        } catch (Exception e) {
+            throw new IllegalStateException("用户位置分区加载失败，source:" + loader.sourceName() + " partition:" + partition, e);
+        } finally {
+            try {
+                loader.close();
+            } catch (Exception e) {
+                LOGGER.warn("关闭用户位置loader失败，source:{}", loader.sourceName(), e);
+            }
+        }
+    }
+
+    /**
+     * 加载好的一个分区
+     */
+    public static final class LoadedUserLocation {
+
+        private final String partition;
+        private final TimePeriodUserLocationView view;
+        private final long loadMillis;
+        private final long estimatedMemoryBytes;
+
+        private LoadedUserLocation(String partition, TimePeriodUserLocationView view, long loadMillis,
+                                   long estimatedMemoryBytes) {
+            this.partition = partition;
+            this.view = view;
+            this.loadMillis = loadMillis;
+            this.estimatedMemoryBytes = estimatedMemoryBytes;
+        }
+
+        public String getPartition() {
+            return partition;
+        }
+
+        public TimePeriodUserLocationView getView() {
+            return view;
+        }
+
+        /**
+         * 读分区 + 构建索引的耗时
+         */
+        public long getLoadMillis() {
+            return loadMillis;
+        }
+
+        /**
+         * 加载时算好的view.estimatedMemoryBytes()，监控、日志用这个，不要再去遍历
+         */
+        public long getEstimatedMemoryBytes() {
+            return estimatedMemoryBytes;
+        }
+    }
+
+}
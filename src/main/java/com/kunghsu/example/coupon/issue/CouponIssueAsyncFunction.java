@@ -0,0 +1,176 @@
+package com.kunghsu.example.coupon.issue;
+
+import com.kunghsu.apache.flink.metrics.ThreadSafeCounter;
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.runtime.metrics.DescriptiveStatisticsHistogram;
+import org.apache.flink.streaming.api.functions.async.ResultFuture;
+import org.apache.flink.streaming.api.functions.async.RichAsyncFunction;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 发券后处理：01消息做额度校验，02消息调用发券，其他消息原样传下去
+ *
+ * 原来在WindowFunction里同步调用（Thread.sleep模拟），整个slot被占住，checkpoint barrier也过不去
+ * 这里只发起调用，结果在回调里交给ResultFuture，算子线程不会等待；同时在途的调用数由AsyncDataStream的capacity控制
+ *
+ * 调用失败、超时都不会让作业失败，而是输出对应状态的CouponIssueResult，由下游决定重试还是记录
+ * 01消息的COUPON_SEND_NUM不是数字时不调用服务，直接输出FAILED
+ *
+ * 每次调用只会有一个结果：服务回调和timeout谁先到算谁，后到的既不输出也不计数、不记耗时
+ *
+ * 指标（每个subtask）：
+ * quotaAccepted、quotaExceeded、issued、failed、timeout：各状态的条数
+ * callLatencyMs：调用耗时
+ *
+ * 一般通过CouponIssueStage使用
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CouponIssueAsyncFunction extends RichAsyncFunction<CouponOutputMsg, CouponIssueResult> {
+
+    private static final String MESSAGE_TYPE_COUNT = "01";
+
+    private static final String MESSAGE_TYPE_ITEM = "02";
+
+    /**
+     * callLatencyMs保留最近多少个样本
+     */
+    private static final int LATENCY_WINDOW_SIZE = 1000;
+
+    private final CouponIssueService service;
+
+    private transient Counter quotaAccepted;
+
+    private transient Counter quotaExceeded;
+
+    private transient Counter issued;
+
+    private transient Counter failed;
+
+    private transient Counter timeout;
+
+    private transient Histogram callLatency;
+
+    /**
+     * 在途的调用，key是flink传进来的ResultFuture（asyncInvoke和timeout拿到的是同一个对象），value表示是否已经有结果
+     */
+    private transient Map<ResultFuture<CouponIssueResult>, AtomicBoolean> inFlight;
+
+    public CouponIssueAsyncFunction(CouponIssueService service) {
+        this.service = service;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        service.open();
+        inFlight = new ConcurrentHashMap<>();
+        //服务的回调在服务自己的线程里执行，不能用默认的SimpleCounter
+        quotaAccepted = getRuntimeContext().getMetricGroup().counter("quotaAccepted", new ThreadSafeCounter());
+        quotaExceeded = getRuntimeContext().getMetricGroup().counter("quotaExceeded", new ThreadSafeCounter());
+        issued = getRuntimeContext().getMetricGroup().counter("issued", new ThreadSafeCounter());
+        failed = getRuntimeContext().getMetricGroup().counter("failed", new ThreadSafeCounter());
+        timeout = getRuntimeContext().getMetricGroup().counter("timeout", new ThreadSafeCounter());
+        callLatency = getRuntimeContext().getMetricGroup().histogram("callLatencyMs",
+                new DescriptiveStatisticsHistogram(LATENCY_WINDOW_SIZE));
+    }
+
+    @Override
+    public void close() throws Exception {
+        service.close();
+        super.close();
+    }
+
+    @Override
+    public void asyncInvoke(CouponOutputMsg input, ResultFuture<CouponIssueResult> resultFuture) {
+
+        if (MESSAGE_TYPE_COUNT.equals(input.getMESSAGE_TYPE())) {
+            long count;
+            try {
+                count = StringUtils.isEmpty(input.getCOUPON_SEND_NUM()) ? 0L : Long.parseLong(input.getCOUPON_SEND_NUM().trim());
+            } catch (NumberFormatException e) {
+                count(CouponIssueStatus.FAILED);
+                resultFuture.complete(Collections.singleton(new CouponIssueResult(input, CouponIssueStatus.FAILED)));
+                return;
+            }
+            whenComplete(service.checkQuota(input.getUNIQUE_REQ_ID(), count), input, resultFuture,
+                    CouponIssueStatus.QUOTA_ACCEPTED, CouponIssueStatus.QUOTA_EXCEEDED);
+        } else if (MESSAGE_TYPE_ITEM.equals(input.getMESSAGE_TYPE())) {
+            whenComplete(service.issue(input), input, resultFuture,
+                    CouponIssueStatus.ISSUED, CouponIssueStatus.FAILED);
+        } else {
+            resultFuture.complete(Collections.singleton(new CouponIssueResult(input, CouponIssueStatus.PASSED)));
+        }
+    }
+
+    /**
+     * 超时不抛异常（默认实现会让作业失败），输出TIMEOUT
+     * 服务已经先返回了结果时不处理；超时之后才到的回调也不再处理，见whenComplete
+     */
+    @Override
+    public void timeout(CouponOutputMsg input, ResultFuture<CouponIssueResult> resultFuture) {
+        AtomicBoolean done = inFlight.remove(resultFuture);
+        if (done == null || !done.compareAndSet(false, true)) {
+            return;
+        }
+        timeout.inc();
+        resultFuture.complete(Collections.singleton(new CouponIssueResult(input, CouponIssueStatus.TIMEOUT)));
+    }
+
+    private void whenComplete(CompletableFuture<Boolean> future, CouponOutputMsg input,
+                              ResultFuture<CouponIssueResult> resultFuture,
+                              CouponIssueStatus successStatus, CouponIssueStatus rejectedStatus) {
+        AtomicBoolean done = new AtomicBoolean(false);
+        inFlight.put(resultFuture, done);
+        long start = System.currentTimeMillis();
+        future.whenComplete((success, throwable) -> {
+            //已经超时输出过TIMEOUT
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.remove(resultFuture);
+            callLatency.update(System.currentTimeMillis() - start);
+            CouponIssueStatus status;
+            if (throwable != null) {
+                status = CouponIssueStatus.FAILED;
+            } else if (Boolean.TRUE.equals(success)) {
+                status = successStatus;
+            } else {
+                status = rejectedStatus;
+            }
+            count(status);
+            resultFuture.complete(Collections.singleton(new CouponIssueResult(input, status)));
+        });
+    }
+
+    private void count(CouponIssueStatus status) {
+        switch (status) {
+            case QUOTA_ACCEPTED:
+                quotaAccepted.inc();
+                break;
+            case QUOTA_EXCEEDED:
+                quotaExceeded.inc();
+                break;
+            case ISSUED:
+                issued.inc();
+                break;
+            case FAILED:
+                failed.inc();
+                break;
+            default:
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.kunghsu.example.coupon.issue;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+
+/**
+ * 一条发券结果消息的后处理结果
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CouponIssueResult {
+
+    private CouponOutputMsg msg;
+
+    private CouponIssueStatus status;
+
+    public CouponIssueResult() {
+    }
+
+    public CouponIssueResult(CouponOutputMsg msg, CouponIssueStatus status) {
+        this.msg = msg;
+        this.status = status;
+    }
+
+    public CouponOutputMsg getMsg() {
+        return msg;
+    }
+
+    public void setMsg(CouponOutputMsg msg) {
+        this.msg = msg;
+    }
+
+    public CouponIssueStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(CouponIssueStatus status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "CouponIssueResult{" +
+                "uniqueReqId=" + (msg == null ? null : msg.getUNIQUE_REQ_ID()) +
+                ", messageType=" + (msg == null ? null : msg.getMESSAGE_TYPE()) +
+                ", idNumber=" + (msg == null ? null : msg.getID_NUMBER()) +
+                ", status=" + status +
+                '}';
+    }
+}
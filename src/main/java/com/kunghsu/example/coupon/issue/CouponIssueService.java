@@ -0,0 +1,44 @@
+package com.kunghsu.example.coupon.issue;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 发券的外部服务：额度校验、发券
+ * 所有方法都必须是非阻塞的（返回CompletableFuture），在CouponIssueAsyncFunction里调用，不能占住算子线程
+ *
+ * 实现类会随算子序列化到TaskManager，连接等资源在open里创建
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public interface CouponIssueService extends Serializable {
+
+    /**
+     * 创建连接、线程池等资源，每个subtask调用一次
+     */
+    void open() throws Exception;
+
+    /**
+     * 额度校验
+     *
+     * @param uniqueReqId 请求ID
+     * @param count 本次要发的券数（01消息的COUPON_SEND_NUM）
+     * @return 额度是否足够
+     */
+    CompletableFuture<Boolean> checkQuota(String uniqueReqId, long count);
+
+    /**
+     * 给一个用户发券
+     *
+     * @param item 02消息
+     * @return 是否发放成功
+     */
+    CompletableFuture<Boolean> issue(CouponOutputMsg item);
+
+    void close() throws Exception;
+
+}
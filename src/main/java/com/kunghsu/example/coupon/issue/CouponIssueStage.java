@@ -0,0 +1,71 @@
+package com.kunghsu.example.coupon.issue;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.datastream.AsyncDataStream;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在CouponRequestCompletionFunction之后接上异步的发券后处理（CouponIssueAsyncFunction）
+ *
+ * 作业参数：
+ * coupon.issue.capacity 每个subtask同时在途的调用数，满了才会反压上游
+ * coupon.issue.timeout-ms 单次调用超时时间
+ * coupon.issue.ordered 是否按输入顺序输出
+ *
+ * 有序模式下输出顺序和输入一致，下游依赖 01、02...、03 的顺序时必须用有序模式（默认）
+ * 无序模式下先完成的先输出，吞吐更高，但03可能比02先到，只适合下游不关心顺序的场景
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CouponIssueStage {
+
+    public static final int DEFAULT_CAPACITY = 100;
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000L;
+
+    public static final boolean DEFAULT_ORDERED = true;
+
+    /**
+     * 使用作业参数里的capacity、timeout、ordered
+     */
+    public static SingleOutputStreamOperator<CouponIssueResult> apply(DataStream<CouponOutputMsg> input,
+                                                                      CouponIssueService service,
+                                                                      ParameterTool params) {
+        return apply(input, service,
+                params.getInt("coupon.issue.capacity", DEFAULT_CAPACITY),
+                params.getLong("coupon.issue.timeout-ms", DEFAULT_TIMEOUT_MILLIS),
+                params.getBoolean("coupon.issue.ordered", DEFAULT_ORDERED));
+    }
+
+    /**
+     * @param input CouponRequestCompletionFunction的输出
+     * @param service 发券服务
+     * @param capacity 每个subtask同时在途的调用数
+     * @param timeoutMillis 单次调用超时时间，超时输出TIMEOUT
+     * @param ordered 是否按输入顺序输出
+     * @return
+     */
+    public static SingleOutputStreamOperator<CouponIssueResult> apply(DataStream<CouponOutputMsg> input,
+                                                                      CouponIssueService service,
+                                                                      int capacity, long timeoutMillis,
+                                                                      boolean ordered) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity必须大于0");
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis必须大于0");
+        }
+        CouponIssueAsyncFunction function = new CouponIssueAsyncFunction(service);
+        SingleOutputStreamOperator<CouponIssueResult> result = ordered
+                ? AsyncDataStream.orderedWait(input, function, timeoutMillis, TimeUnit.MILLISECONDS, capacity)
+                : AsyncDataStream.unorderedWait(input, function, timeoutMillis, TimeUnit.MILLISECONDS, capacity);
+        return result.name("couponIssue");
+    }
+
+}
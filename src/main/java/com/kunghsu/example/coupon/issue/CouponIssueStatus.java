@@ -0,0 +1,42 @@
+package com.kunghsu.example.coupon.issue;
+
+/**
+ * 发券后处理的结果
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public enum CouponIssueStatus {
+
+    /**
+     * 01消息，额度足够
+     */
+    QUOTA_ACCEPTED,
+
+    /**
+     * 01消息，额度不足
+     */
+    QUOTA_EXCEEDED,
+
+    /**
+     * 02消息，发放成功
+     */
+    ISSUED,
+
+    /**
+     * 调用失败（服务返回失败或者抛异常）
+     */
+    FAILED,
+
+    /**
+     * 调用超时
+     */
+    TIMEOUT,
+
+    /**
+     * 不需要调用外部服务的消息（03等），原样传下去
+     */
+    PASSED
+
+}
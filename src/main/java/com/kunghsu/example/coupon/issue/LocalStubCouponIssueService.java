@@ -0,0 +1,109 @@
+package com.kunghsu.example.coupon.issue;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模拟的发券服务，没有真实服务时用来联调、压测CouponIssueStage
+ *
+ * 用定时线程池模拟远程调用的耗时，调用方拿到的future在latencyMillis之后才完成，期间不占调用方的线程
+ * 可以模拟：调用耗时（固定耗时 + 随机抖动）、失败比例、单个请求的额度上限
+ * 有抖动时后发起的调用可能先完成，用来验证CouponIssueStage的有序、无序模式
+ *
+ * 发券有随机失败，只能在联调、压测时显式选用（见UserCouponMatchingAutoIdentifyPartitionByLatestWithCheckPointTask的coupon.issue.stub参数）
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class LocalStubCouponIssueService implements CouponIssueService {
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final double failureRatio;
+
+    private final long quotaPerRequest;
+
+    private transient ScheduledExecutorService scheduler;
+
+    /**
+     * @param latencyMillis 每次调用的模拟耗时
+     * @param failureRatio 发券失败的比例，0到1
+     * @param quotaPerRequest 单个请求最多能发多少张券，超过就额度不足
+     */
+    public LocalStubCouponIssueService(long latencyMillis, double failureRatio, long quotaPerRequest) {
+        this(latencyMillis, 0L, failureRatio, quotaPerRequest);
+    }
+
+    /**
+     * @param latencyMillis 每次调用的模拟耗时
+     * @param jitterMillis 在latencyMillis上再加0到jitterMillis的随机耗时
+     * @param failureRatio 发券失败的比例，0到1
+     * @param quotaPerRequest 单个请求最多能发多少张券，超过就额度不足
+     */
+    public LocalStubCouponIssueService(long latencyMillis, long jitterMillis, double failureRatio, long quotaPerRequest) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis不能小于0");
+        }
+        if (jitterMillis < 0) {
+            throw new IllegalArgumentException("jitterMillis不能小于0");
+        }
+        if (failureRatio < 0 || failureRatio > 1) {
+            throw new IllegalArgumentException("failureRatio必须在0到1之间");
+        }
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRatio = failureRatio;
+        this.quotaPerRequest = quotaPerRequest;
+    }
+
+    @Override
+    public void open() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-stub-coupon-issue");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> checkQuota(String uniqueReqId, long count) {
+        return delay(count <= quotaPerRequest);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> issue(CouponOutputMsg item) {
+        if (StringUtils.isEmpty(item.getID_NUMBER())) {
+            return delay(false);
+        }
+        return delay(ThreadLocalRandom.current().nextDouble() >= failureRatio);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Boolean> delay(boolean result) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        long delayMillis = jitterMillis == 0 ? latencyMillis
+                : latencyMillis + ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        if (delayMillis == 0) {
+            future.complete(result);
+        } else {
+            scheduler.schedule(() -> future.complete(result), delayMillis, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.kunghsu.example.coupon.key;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.api.common.typeinfo.TypeInfo;
+
+import java.util.Objects;
+
+/**
+ * 发券请求的分组key，代替 StringUtils.join(COUPON_ID, STORE_ID, STORE_RANGE, COUPON_SEND_NUM, UNIQUE_REQ_ID, "_")
+ *
+ * 1.不可变，创建时就算好64位hash，keyBy分区、状态访问时hashCode/equals不用再遍历字符串
+ * 2.有UNIQUE_REQ_ID时只用它做key（其他字段都是这个请求的属性），没有时才用其余四个字段，和原来拼接的效果一样
+ * 3.序列化用CouponRequestKeySerializer：hash + 各字段，不用拼接字符串，也不会退化成Kryo
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+@TypeInfo(CouponRequestKeyTypeInfoFactory.class)
+public final class CouponRequestKey {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String couponId;
+
+    private final String storeId;
+
+    private final String storeRange;
+
+    private final String couponSendNum;
+
+    private final String uniqueReqId;
+
+    private final long hash;
+
+    CouponRequestKey(String couponId, String storeId, String storeRange, String couponSendNum, String uniqueReqId, long hash) {
+        this.couponId = couponId;
+        this.storeId = storeId;
+        this.storeRange = storeRange;
+        this.couponSendNum = couponSendNum;
+        this.uniqueReqId = uniqueReqId;
+        this.hash = hash;
+    }
+
+    public static CouponRequestKey of(String couponId, String storeId, String storeRange, String couponSendNum, String uniqueReqId) {
+        if (StringUtils.isNotEmpty(uniqueReqId)) {
+            return new CouponRequestKey(null, null, null, null, uniqueReqId,
+                    hash64(null, null, null, null, uniqueReqId));
+        }
+        //和原来StringUtils.join一样，null和空串当成同一个值
+        String normalizedCouponId = StringUtils.defaultString(couponId);
+        String normalizedStoreId = StringUtils.defaultString(storeId);
+        String normalizedStoreRange = StringUtils.defaultString(storeRange);
+        String normalizedCouponSendNum = StringUtils.defaultString(couponSendNum);
+        return new CouponRequestKey(normalizedCouponId, normalizedStoreId, normalizedStoreRange, normalizedCouponSendNum, null,
+                hash64(normalizedCouponId, normalizedStoreId, normalizedStoreRange, normalizedCouponSendNum, null));
+    }
+
+    public static CouponRequestKey of(CouponOutputMsg couponOutputMsg) {
+        return of(couponOutputMsg.getCOUPON_ID(), couponOutputMsg.getSTORE_ID(), couponOutputMsg.getSTORE_RANGE(),
+                couponOutputMsg.getCOUPON_SEND_NUM(), couponOutputMsg.getUNIQUE_REQ_ID());
+    }
+
+    /**
+     * FNV-1a，字段之间加分隔，再做一次murmur3的fmix64让低位也分散
+     */
+    static long hash64(String couponId, String storeId, String storeRange, String couponSendNum, String uniqueReqId) {
+        long h = FNV_OFFSET_BASIS;
+        h = mix(h, couponId);
+        h = mix(h, storeId);
+        h = mix(h, storeRange);
+        h = mix(h, couponSendNum);
+        h = mix(h, uniqueReqId);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mix(long h, String value) {
+        if (value == null) {
+            //null和空串要区分开
+            h ^= 0xfe;
+            return h * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        h ^= 0xff;
+        return h * FNV_PRIME;
+    }
+
+    public String getCouponId() {
+        return couponId;
+    }
+
+    public String getStoreId() {
+        return storeId;
+    }
+
+    public String getStoreRange() {
+        return storeRange;
+    }
+
+    public String getCouponSendNum() {
+        return couponSendNum;
+    }
+
+    public String getUniqueReqId() {
+        return uniqueReqId;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CouponRequestKey)) {
+            return false;
+        }
+        CouponRequestKey that = (CouponRequestKey) o;
+        return hash == that.hash
+                && Objects.equals(uniqueReqId, that.uniqueReqId)
+                && Objects.equals(couponId, that.couponId)
+                && Objects.equals(storeId, that.storeId)
+                && Objects.equals(storeRange, that.storeRange)
+                && Objects.equals(couponSendNum, that.couponSendNum);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (StringUtils.isNotEmpty(uniqueReqId)) {
+            return uniqueReqId;
+        }
+        return StringUtils.join(new String[]{couponId, storeId, storeRange, couponSendNum, ""}, "_");
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.kunghsu.example.coupon.key;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.base.TypeSerializerSingleton;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.types.StringValue;
+
+import java.io.IOException;
+
+/**
+ * CouponRequestKey的序列化
+ * 格式：hash(8字节) + 字段是否为空的标志位(1字节) + 非空的字段
+ * 有UNIQUE_REQ_ID时只有它一个字段，反序列化时直接用写进去的hash，不用重新计算
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public final class CouponRequestKeySerializer extends TypeSerializerSingleton<CouponRequestKey> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final CouponRequestKeySerializer INSTANCE = new CouponRequestKeySerializer();
+
+    private static final int COUPON_ID = 1;
+    private static final int STORE_ID = 1 << 1;
+    private static final int STORE_RANGE = 1 << 2;
+    private static final int COUPON_SEND_NUM = 1 << 3;
+    private static final int UNIQUE_REQ_ID = 1 << 4;
+
+    private CouponRequestKeySerializer() {
+    }
+
+    @Override
+    public boolean isImmutableType() {
+        return true;
+    }
+
+    @Override
+    public CouponRequestKey createInstance() {
+        return CouponRequestKey.of(null, null, null, null, null);
+    }
+
+    @Override
+    public CouponRequestKey copy(CouponRequestKey from) {
+        return from;
+    }
+
+    @Override
+    public CouponRequestKey copy(CouponRequestKey from, CouponRequestKey reuse) {
+        return from;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public void serialize(CouponRequestKey record, DataOutputView target) throws IOException {
+        int flags = (record.getCouponId() != null ? COUPON_ID : 0)
+                | (record.getStoreId() != null ? STORE_ID : 0)
+                | (record.getStoreRange() != null ? STORE_RANGE : 0)
+                | (record.getCouponSendNum() != null ? COUPON_SEND_NUM : 0)
+                | (record.getUniqueReqId() != null ? UNIQUE_REQ_ID : 0);
+        target.writeLong(record.getHash());
+        target.writeByte(flags);
+        writeIfSet(record.getCouponId(), target);
+        writeIfSet(record.getStoreId(), target);
+        writeIfSet(record.getStoreRange(), target);
+        writeIfSet(record.getCouponSendNum(), target);
+        writeIfSet(record.getUniqueReqId(), target);
+    }
+
+    @Override
+    public CouponRequestKey deserialize(DataInputView source) throws IOException {
+        long hash = source.readLong();
+        int flags = source.readUnsignedByte();
+        String couponId = readIfSet(flags, COUPON_ID, source);
+        String storeId = readIfSet(flags, STORE_ID, source);
+        String storeRange = readIfSet(flags, STORE_RANGE, source);
+        String couponSendNum = readIfSet(flags, COUPON_SEND_NUM, source);
+        String uniqueReqId = readIfSet(flags, UNIQUE_REQ_ID, source);
+        return new CouponRequestKey(couponId, storeId, storeRange, couponSendNum, uniqueReqId, hash);
+    }
+
+    @Override
+    public CouponRequestKey deserialize(CouponRequestKey reuse, DataInputView source) throws IOException {
+        return deserialize(source);
+    }
+
+    @Override
+    public void copy(DataInputView source, DataOutputView target) throws IOException {
+        target.writeLong(source.readLong());
+        int flags = source.readUnsignedByte();
+        target.writeByte(flags);
+        for (int flag = COUPON_ID; flag <= UNIQUE_REQ_ID; flag <<= 1) {
+            if ((flags & flag) != 0) {
+                StringValue.copyString(source, target);
+            }
+        }
+    }
+
+    private static void writeIfSet(String value, DataOutputView target) throws IOException {
+        if (value != null) {
+            StringValue.writeString(value, target);
+        }
+    }
+
+    private static String readIfSet(int flags, int flag, DataInputView source) throws IOException {
+        return (flags & flag) != 0 ? StringValue.readString(source) : null;
+    }
+
+    @Override
+    public TypeSerializerSnapshot<CouponRequestKey> snapshotConfiguration() {
+        return new CouponRequestKeySerializerSnapshot();
+    }
+
+    /**
+     * 状态恢复时用
+     */
+    public static final class CouponRequestKeySerializerSnapshot extends SimpleTypeSerializerSnapshot<CouponRequestKey> {
+
+        public CouponRequestKeySerializerSnapshot() {
+            super(() -> INSTANCE);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.kunghsu.example.coupon.key;
+
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+
+/**
+ * CouponRequestKey的类型信息，声明成key类型，序列化用CouponRequestKeySerializer
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CouponRequestKeyTypeInfo extends TypeInformation<CouponRequestKey> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final CouponRequestKeyTypeInfo INSTANCE = new CouponRequestKeyTypeInfo();
+
+    @Override
+    public boolean isBasicType() {
+        return false;
+    }
+
+    @Override
+    public boolean isTupleType() {
+        return false;
+    }
+
+    @Override
+    public int getArity() {
+        return 1;
+    }
+
+    @Override
+    public int getTotalFields() {
+        return 1;
+    }
+
+    @Override
+    public Class<CouponRequestKey> getTypeClass() {
+        return CouponRequestKey.class;
+    }
+
+    @Override
+    public boolean isKeyType() {
+        return true;
+    }
+
+    @Override
+    public TypeSerializer<CouponRequestKey> createSerializer(ExecutionConfig config) {
+        return CouponRequestKeySerializer.INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "CouponRequestKey";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CouponRequestKeyTypeInfo;
+    }
+
+    @Override
+    public int hashCode() {
+        return CouponRequestKey.class.hashCode();
+    }
+
+    @Override
+    public boolean canEqual(Object obj) {
+        return obj instanceof CouponRequestKeyTypeInfo;
+    }
+
+}
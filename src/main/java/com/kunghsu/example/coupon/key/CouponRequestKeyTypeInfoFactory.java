@@ -0,0 +1,23 @@
+package com.kunghsu.example.coupon.key;
+
+import org.apache.flink.api.common.typeinfo.TypeInfoFactory;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * 通过@TypeInfo注解绑定到CouponRequestKey，keyBy抽取key类型时自动用CouponRequestKeyTypeInfo
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class CouponRequestKeyTypeInfoFactory extends TypeInfoFactory<CouponRequestKey> {
+
+    @Override
+    public TypeInformation<CouponRequestKey> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+        return CouponRequestKeyTypeInfo.INSTANCE;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import com.kunghsu.example.coupon.CouponInputMsg;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+
+import java.util.Random;
+
+/**
+ * 压测用的发券请求生成器，代替kafka输入
+ *
+ * UNIQUE_REQ_ID的格式是 LT{subtask}-{序号}_{发出时的System.nanoTime()}，
+ * 输出端据此计算端到端延迟（MiniCluster和压测程序在同一个JVM里，nanoTime可以直接相减）
+ *
+ * 所有请求发完后再空等drainMillis才结束，
+ * 因为任务结束时还没触发的处理时间定时器会被直接丢掉，
+ * 没有请求结束标记的实现（GEO_UDTF、SQL_JOIN）要等最后一批请求在CouponRequestCompletionFunction里空闲超时输出
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class CouponInputGeneratorSource extends RichParallelSourceFunction<CouponInputMsg> {
+
+    public static final String REQ_ID_PREFIX = "LT";
+
+    public static final char TIMESTAMP_SEPARATOR = '_';
+
+    private final long requestCount;
+
+    /**
+     * 所有并行度加起来每秒发出的请求数，小于等于0表示不限速
+     */
+    private final double requestsPerSecond;
+
+    private final String storeRange;
+
+    private final long startDelayMillis;
+
+    private final long drainMillis;
+
+    private final SyntheticUserLocationLoader storeLocations;
+
+    private volatile boolean running = true;
+
+    public CouponInputGeneratorSource(long requestCount, double requestsPerSecond, String storeRange,
+                                      long startDelayMillis, long drainMillis, SyntheticUserLocationLoader storeLocations) {
+        this.requestCount = requestCount;
+        this.requestsPerSecond = requestsPerSecond;
+        this.storeRange = storeRange;
+        this.startDelayMillis = startDelayMillis;
+        this.drainMillis = drainMillis;
+        this.storeLocations = storeLocations;
+    }
+
+    @Override
+    public void run(SourceContext<CouponInputMsg> ctx) throws Exception {
+
+        int subtask = getRuntimeContext().getIndexOfThisSubtask();
+        int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+        //总数按并行度均分，余数给前几个subtask
+        long count = requestCount / parallelism + (subtask < requestCount % parallelism ? 1 : 0);
+        double subtaskRate = requestsPerSecond / parallelism;
+        Random random = new Random(storeLocations.getSeed() + 31L * (subtask + 1));
+
+        //给用户位置的加载留出时间，避免把加载时间算进延迟
+        sleepWhileRunning(startDelayMillis);
+
+        long startNanos = System.nanoTime();
+        LoadTestMetrics.recordFirstInput(startNanos);
+        for (long i = 0; i < count && running; i++) {
+            if (subtaskRate > 0) {
+                long dueNanos = startNanos + (long) (i * 1_000_000_000L / subtaskRate);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                }
+            }
+            CouponInputMsg couponInputMsg = buildInputMsg(subtask, i, random);
+            synchronized (ctx.getCheckpointLock()) {
+                ctx.collect(couponInputMsg);
+            }
+        }
+
+        sleepWhileRunning(drainMillis);
+    }
+
+    private CouponInputMsg buildInputMsg(int subtask, long sequence, Random random) {
+        CouponInputMsg couponInputMsg = new CouponInputMsg();
+        couponInputMsg.setMESSAGE_TYPE("01");
+        couponInputMsg.setCOUPON_ID("C" + (sequence % 100));
+        couponInputMsg.setSTORE_ID("S" + subtask + "-" + sequence);
+        couponInputMsg.setSTORE_RANGE(storeRange);
+        couponInputMsg.setSTORE_LATITUDE(String.valueOf(storeLocations.randomLatitude(random)));
+        couponInputMsg.setSTORE_LONGITUDE(String.valueOf(storeLocations.randomLongitude(random)));
+        couponInputMsg.setUSER_NUM("100");
+        couponInputMsg.setUNIQUE_REQ_ID(REQ_ID_PREFIX + subtask + "-" + sequence + TIMESTAMP_SEPARATOR + System.nanoTime());
+        return couponInputMsg;
+    }
+
+    private void sleepWhileRunning(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (running && System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(100L, Math.max(1L, deadline - System.currentTimeMillis())));
+        }
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+    /**
+     * 从UNIQUE_REQ_ID里取出请求发出的时间，不是压测请求时返回-1
+     *
+     * @param uniqueReqId
+     * @return
+     */
+    public static long emitNanosOf(String uniqueReqId) {
+        if (uniqueReqId == null || !uniqueReqId.startsWith(REQ_ID_PREFIX)) {
+            return -1;
+        }
+        int index = uniqueReqId.lastIndexOf(TIMESTAMP_SEPARATOR);
+        if (index < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(uniqueReqId.substring(index + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.issue.CouponIssueResult;
+import com.kunghsu.example.coupon.issue.CouponIssueStage;
+import com.kunghsu.example.coupon.issue.CouponIssueStatus;
+import com.kunghsu.example.coupon.issue.LocalStubCouponIssueService;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.util.CloseableIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CouponIssueStage的验证，在本地MiniCluster上跑真实的AsyncDataStream，发券服务用LocalStubCouponIssueService
+ * 任何一项不符合预期都抛IllegalStateException，全部通过时打印"CouponIssueStage验证通过"
+ *
+ * 验证内容：
+ * 1.有序模式：服务耗时有随机抖动（后发起的调用可能先完成），输出顺序仍然和输入一致，每条消息的状态正确
+ * 2.无序模式：输出条数和每条消息的状态正确，顺序不要求
+ * 3.超时：服务耗时远大于超时时间，01、02都输出TIMEOUT，03输出PASSED；超时之后才到的回调不会再输出，每条输入只有一条结果
+ *
+ * 每条消息的预期状态：
+ * 01：发券张数不超过额度 QUOTA_ACCEPTED，超过额度 QUOTA_EXCEEDED，张数不是数字 FAILED
+ * 02：证件号为空 FAILED，否则 ISSUED（模拟服务的失败比例设为0）
+ * 03：PASSED
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/10
+ * desc:
+*/
+public class CouponIssueStageCheck {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CouponIssueStageCheck.class);
+
+    private static final long QUOTA_PER_REQUEST = 100L;
+
+    private static final int REQUEST_COUNT = 20;
+
+    private static final int ITEMS_PER_REQUEST = 10;
+
+    public static void main(String[] args) throws Exception {
+
+        List<CouponOutputMsg> input = buildInput();
+        Map<String, CouponIssueStatus> expected = expectedStatus(input);
+
+        //1.有序模式
+        List<CouponIssueResult> ordered = run(input, new LocalStubCouponIssueService(5L, 50L, 0D, QUOTA_PER_REQUEST),
+                20, 5000L, true);
+        checkStatus("ordered", ordered, expected);
+        for (int i = 0; i < input.size(); i++) {
+            if (!input.get(i).getSERIAL_NO().equals(ordered.get(i).getMsg().getSERIAL_NO())) {
+                throw new IllegalStateException("ordered: 第" + i + "条输出的顺序和输入不一致，输入:"
+                        + input.get(i).getSERIAL_NO() + " 输出:" + ordered.get(i).getMsg().getSERIAL_NO());
+            }
+        }
+        LOGGER.info("有序模式验证通过，共{}条", ordered.size());
+
+        //2.无序模式
+        List<CouponIssueResult> unordered = run(input, new LocalStubCouponIssueService(5L, 50L, 0D, QUOTA_PER_REQUEST),
+                20, 5000L, false);
+        checkStatus("unordered", unordered, expected);
+        int outOfOrder = 0;
+        for (int i = 0; i < input.size(); i++) {
+            if (!input.get(i).getSERIAL_NO().equals(unordered.get(i).getMsg().getSERIAL_NO())) {
+                outOfOrder++;
+            }
+        }
+        LOGGER.info("无序模式验证通过，共{}条，其中{}条的位置和输入不同", unordered.size(), outOfOrder);
+
+        //3.超时，03和张数不是数字的01不调用服务，不会超时
+        Map<String, CouponIssueStatus> expectedTimeout = new HashMap<>();
+        for (CouponOutputMsg msg : input) {
+            CouponIssueStatus status = expected.get(msg.getSERIAL_NO());
+            boolean callService = status != CouponIssueStatus.PASSED
+                    && !("01".equals(msg.getMESSAGE_TYPE()) && status == CouponIssueStatus.FAILED);
+            expectedTimeout.put(msg.getSERIAL_NO(), callService ? CouponIssueStatus.TIMEOUT : status);
+        }
+        List<CouponIssueResult> timeout = run(input, new LocalStubCouponIssueService(300L, 0D, QUOTA_PER_REQUEST),
+                10, 50L, true);
+        checkStatus("timeout", timeout, expectedTimeout);
+        LOGGER.info("超时验证通过，共{}条", timeout.size());
+
+        LOGGER.info("CouponIssueStage验证通过");
+    }
+
+    private static List<CouponIssueResult> run(List<CouponOutputMsg> input, LocalStubCouponIssueService service,
+                                               int capacity, long timeoutMillis, boolean ordered) throws Exception {
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        //顺序只在同一个subtask内有意义
+        env.setParallelism(1);
+        List<CouponIssueResult> results = new ArrayList<>();
+        try (CloseableIterator<CouponIssueResult> iterator = CouponIssueStage
+                .apply(env.fromCollection(input), service, capacity, timeoutMillis, ordered)
+                .executeAndCollect("CouponIssueStageCheck")) {
+            iterator.forEachRemaining(results::add);
+        }
+        return results;
+    }
+
+    private static void checkStatus(String name, List<CouponIssueResult> results, Map<String, CouponIssueStatus> expected) {
+
+        if (results.size() != expected.size()) {
+            throw new IllegalStateException(name + ": 输出" + results.size() + "条，输入" + expected.size() + "条");
+        }
+        Map<String, CouponIssueStatus> actual = new HashMap<>();
+        for (CouponIssueResult result : results) {
+            if (actual.put(result.getMsg().getSERIAL_NO(), result.getStatus()) != null) {
+                throw new IllegalStateException(name + ": 同一条消息输出了多次，" + result);
+            }
+        }
+        for (Map.Entry<String, CouponIssueStatus> entry : expected.entrySet()) {
+            if (entry.getValue() != actual.get(entry.getKey())) {
+                throw new IllegalStateException(name + ": 消息" + entry.getKey() + "的状态是" + actual.get(entry.getKey())
+                        + "，预期" + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 每个请求：01、ITEMS_PER_REQUEST条02（其中一条证件号为空）、03
+     * 第1个请求发券张数超过额度，第2个请求发券张数不是数字
+     * SERIAL_NO全局唯一，用来对应输入和输出
+     */
+    private static List<CouponOutputMsg> buildInput() {
+
+        List<CouponOutputMsg> input = new ArrayList<>();
+        int serialNo = 0;
+        for (int request = 0; request < REQUEST_COUNT; request++) {
+            String uniqueReqId = "REQ-" + request;
+            String sendNum = request == 1 ? String.valueOf(QUOTA_PER_REQUEST + 1)
+                    : request == 2 ? "abc" : String.valueOf(ITEMS_PER_REQUEST);
+            input.add(msg(uniqueReqId, "01", serialNo++, sendNum, null));
+            for (int item = 0; item < ITEMS_PER_REQUEST; item++) {
+                input.add(msg(uniqueReqId, "02", serialNo++, null, item == 0 ? "" : uniqueReqId + "-" + item));
+            }
+            input.add(msg(uniqueReqId, "03", serialNo++, null, null));
+        }
+        return input;
+    }
+
+    private static Map<String, CouponIssueStatus> expectedStatus(List<CouponOutputMsg> input) {
+
+        Map<String, CouponIssueStatus> expected = new HashMap<>();
+        for (CouponOutputMsg msg : input) {
+            CouponIssueStatus status;
+            if ("01".equals(msg.getMESSAGE_TYPE())) {
+                if ("abc".equals(msg.getCOUPON_SEND_NUM())) {
+                    status = CouponIssueStatus.FAILED;
+                } else {
+                    status = Long.parseLong(msg.getCOUPON_SEND_NUM()) <= QUOTA_PER_REQUEST
+                            ? CouponIssueStatus.QUOTA_ACCEPTED : CouponIssueStatus.QUOTA_EXCEEDED;
+                }
+            } else if ("02".equals(msg.getMESSAGE_TYPE())) {
+                status = msg.getID_NUMBER().isEmpty() ? CouponIssueStatus.FAILED : CouponIssueStatus.ISSUED;
+            } else {
+                status = CouponIssueStatus.PASSED;
+            }
+            expected.put(msg.getSERIAL_NO(), status);
+        }
+        return expected;
+    }
+
+    private static CouponOutputMsg msg(String uniqueReqId, String messageType, int serialNo, String sendNum, String idNumber) {
+        CouponOutputMsg msg = new CouponOutputMsg();
+        msg.setUNIQUE_REQ_ID(uniqueReqId);
+        msg.setMESSAGE_TYPE(messageType);
+        msg.setSERIAL_NO(String.valueOf(serialNo));
+        msg.setCOUPON_SEND_NUM(sendNum);
+        msg.setID_NUMBER(idNumber);
+        msg.setCOUPON_ID("COUPON-" + uniqueReqId);
+        return msg;
+    }
+
+}
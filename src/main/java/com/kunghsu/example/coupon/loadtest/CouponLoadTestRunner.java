@@ -0,0 +1,95 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import com.kunghsu.apache.flink.checkpoint.CheckpointRestoreByIDEUtils;
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.operators.CouponInputTableMapFunction;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 发券匹配任务的端到端压测
+ * 在本地MiniCluster上运行，kafka输入换成CouponInputGeneratorSource，hive用户位置表换成SyntheticUserLocationLoader，
+ * 不需要真实的kafka和hive
+ *
+ * 参数（都有默认值）：
+ * --variant GEO_INDEX|GEO_UDTF|SQL_JOIN  要压测的实现
+ * --requests 10000                       发券请求总数
+ * --users 1000000                        用户位置表行数，最多可以到1000万（需要相应调大-Xmx）
+ * --rate 0                               每秒请求数，0表示不限速
+ * --range 3000                           门店范围（米）
+ * --parallelism 2
+ * --startDelayMs 5000                    请求开始前等待的时间，给用户位置的加载留出时间
+ * --seed 20220306
+ *
+ * 输出：请求吞吐(条/s)、输出吞吐(条/s)、端到端延迟p50/p99、堆内存峰值
+ * 端到端延迟：GEO_INDEX匹配完会发出请求结束标记，CouponRequestCompletionFunction收到后立即输出；
+ * GEO_UDTF、SQL_JOIN没有结束标记，要等CouponRequestCompletionFunction的空闲超时（2秒）才输出，延迟里包含这2秒
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class CouponLoadTestRunner {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CouponLoadTestRunner.class);
+
+    /**
+     * 比CouponRequestCompletionFunction的空闲超时(2秒)长一点，保证没有结束标记的最后一批请求也能等到超时输出
+     */
+    private static final long DRAIN_MILLIS = 5000L;
+
+    public static void main(String[] args) throws Exception {
+
+        ParameterTool params = ParameterTool.fromArgs(args);
+        CouponMatchingVariant variant = CouponMatchingVariant.valueOf(params.get("variant", CouponMatchingVariant.GEO_INDEX.name()));
+        long requestCount = params.getLong("requests", 10000L);
+        int userCount = params.getInt("users", 1000000);
+        double rate = params.getDouble("rate", 0);
+        String storeRange = params.get("range", "3000");
+        int parallelism = params.getInt("parallelism", 2);
+        long startDelayMillis = params.getLong("startDelayMs", 5000L);
+        long seed = params.getLong("seed", 20220306L);
+
+        SyntheticUserLocationLoader userLocations = new SyntheticUserLocationLoader(userCount, seed);
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        env.setParallelism(parallelism);
+        DataStream<CouponInputTableVO2> input = env
+                .addSource(new CouponInputGeneratorSource(requestCount, rate, storeRange, startDelayMillis, DRAIN_MILLIS, userLocations))
+                .name("couponInputGenerator")
+                .map(new CouponInputTableMapFunction());
+        DataStream<CouponOutputMsg> output = variant.build(env, input, userLocations);
+        output.addSink(new LatencyRecordingSink()).name("latencyRecordingSink");
+
+        LOGGER.info("开始压测 variant:{} requests:{} users:{} rate:{} parallelism:{}",
+                variant, requestCount, userCount, rate, parallelism);
+        LoadTestMetrics.start();
+        try {
+            CheckpointRestoreByIDEUtils.runUntilFinished(env.getStreamGraph("CouponLoadTest-" + variant));
+        } finally {
+            LoadTestMetrics.stop();
+        }
+        printReport(variant, requestCount, userCount);
+    }
+
+    private static void printReport(CouponMatchingVariant variant, long requestCount, int userCount) {
+
+        double elapsedSeconds = (LoadTestMetrics.getLastOutputNanos() - LoadTestMetrics.getFirstInputNanos()) / 1e9;
+        long outputRecords = LoadTestMetrics.getOutputRecords();
+        System.out.println("======== 压测结果 ========");
+        System.out.println("实现:" + variant + " 请求数:" + requestCount + " 用户数:" + userCount);
+        System.out.println("已完成请求数:" + LoadTestMetrics.getLatencyCount() + " 输出条数:" + outputRecords);
+        if (elapsedSeconds > 0) {
+            System.out.printf("请求吞吐:%.1f 条/s 输出吞吐:%.1f 条/s 耗时:%.2fs%n",
+                    requestCount / elapsedSeconds, outputRecords / elapsedSeconds, elapsedSeconds);
+        }
+        System.out.printf("端到端延迟 p50:%.1fms p99:%.1fms%n",
+                LoadTestMetrics.latencyPercentile(50) / 1e6, LoadTestMetrics.latencyPercentile(99) / 1e6);
+        System.out.printf("堆内存峰值:%.1fMB%n", LoadTestMetrics.getPeakHeapBytes() / 1024.0 / 1024.0);
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.UserCouponMatchingByGeoIndexTask;
+import com.kunghsu.example.coupon.UserCouponMatchingByGeoIndexUdtfTask;
+import com.kunghsu.example.coupon.function.GeoRangeUsersFunction;
+import com.kunghsu.example.coupon.function.GeoWithinRangeFunction;
+import com.kunghsu.example.coupon.operators.CouponOutputRowMapFunction;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.java.tuple.Tuple4;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.table.api.EnvironmentSettings;
+import org.apache.flink.table.api.Table;
+import org.apache.flink.table.api.bridge.java.StreamTableEnvironment;
+import org.apache.flink.types.Row;
+
+import static org.apache.flink.table.api.Expressions.$;
+
+/**
+ * 可以压测的发券匹配实现
+ * 输入是已经转换好的发券请求，输出是最终发到kafka的01/02/03消息
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public enum CouponMatchingVariant {
+
+    /**
+     * UserCouponMatchingByGeoIndexTask：网格索引（DataStream）
+     */
+    GEO_INDEX {
+        @Override
+        public DataStream<CouponOutputMsg> build(StreamExecutionEnvironment env, DataStream<CouponInputTableVO2> input,
+                                                 SyntheticUserLocationLoader userLocations) {
+            return UserCouponMatchingByGeoIndexTask.buildMatchingStream(input, userLocations);
+        }
+    },
+
+    /**
+     * UserCouponMatchingByGeoIndexUdtfTask：网格索引（SQL + UDTF）
+     */
+    GEO_UDTF {
+        @Override
+        public DataStream<CouponOutputMsg> build(StreamExecutionEnvironment env, DataStream<CouponInputTableVO2> input,
+                                                 SyntheticUserLocationLoader userLocations) {
+            DataStream<CouponOutputMsg> itemResultStream = UserCouponMatchingByGeoIndexUdtfTask.buildItemStream(
+                    createTableEnv(env), input, new GeoRangeUsersFunction(userLocations));
+            return UserCouponMatchingByGeoIndexTask.aggregateByRequest(itemResultStream);
+        }
+    },
+
+    /**
+     * UserCouponMatchingAutoIdentifyPartitionByLatestTask2：维表join + geoWithinRange
+     * 原任务用hive temporal join，这里维表换成内存生成的用户流，改成普通的left join，
+     * 每个请求同样要和同cert_type的所有用户逐一比较
+     */
+    SQL_JOIN {
+        @Override
+        public DataStream<CouponOutputMsg> build(StreamExecutionEnvironment env, DataStream<CouponInputTableVO2> input,
+                                                 SyntheticUserLocationLoader userLocations) {
+            StreamTableEnvironment tableEnv = createTableEnv(env);
+            tableEnv.createTemporarySystemFunction("geoWithinRange", GeoWithinRangeFunction.class);
+
+            Table inputTable = tableEnv.fromDataStream(input, $("couponId"), $("storeId"),
+                    $("storeRange"), $("storeLongitude"), $("storeLatitude"),
+                    $("userNum"), $("uniqueReqId"), $("type"));
+            DataStream<Tuple4<String, String, Double, Double>> userStream = env
+                    .addSource(new UserLocationGeneratorSource(userLocations))
+                    .setParallelism(1)
+                    .name("userLocationGenerator");
+            Table userTable = tableEnv.fromDataStream(userStream, $("cert_type"), $("cert_nbr"), $("lat"), $("lng"));
+
+            Table itemResultTable = tableEnv.sqlQuery(
+                    "select b.cert_type, b.cert_nbr, a.couponId, a.storeId, a.storeRange, a.userNum, a.uniqueReqId " +
+                    "from " + inputTable + " a " +
+                    "left join " + userTable + " b on a.type = b.cert_type " +
+                    "and geoWithinRange(CAST(a.storeLatitude as double), CAST(a.storeLongitude as double), " +
+                    "CAST(a.storeRange as double), b.lat, b.lng)"
+            );
+
+            //left join会先输出一条右边为空的记录，匹配到之后再撤回，这里只保留新增的记录，空记录在汇总时不计数
+            DataStream<CouponOutputMsg> itemResultStream = tableEnv.toRetractStream(itemResultTable, Row.class)
+                    .filter(value -> value.f0)
+                    .map(new CouponOutputRowMapFunction());
+            return UserCouponMatchingByGeoIndexTask.aggregateByRequest(itemResultStream);
+        }
+    };
+
+    public abstract DataStream<CouponOutputMsg> build(StreamExecutionEnvironment env, DataStream<CouponInputTableVO2> input,
+                                                      SyntheticUserLocationLoader userLocations);
+
+    private static StreamTableEnvironment createTableEnv(StreamExecutionEnvironment env) {
+        EnvironmentSettings environmentSettings = EnvironmentSettings.newInstance().useBlinkPlanner().inStreamingMode().build();
+        return StreamTableEnvironment.create(env, environmentSettings);
+    }
+
+}
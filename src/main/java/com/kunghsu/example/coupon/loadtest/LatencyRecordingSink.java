@@ -0,0 +1,74 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+
+import java.util.Arrays;
+
+/**
+ * 压测用的sink，代替kafka输出
+ * 统计输出条数；每个请求的01消息到达时，用请求发出的时间算一次端到端延迟
+ *
+ * 延迟先攒在本地数组，close时再合并到LoadTestMetrics，避免每条都加锁
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class LatencyRecordingSink extends RichSinkFunction<CouponOutputMsg> {
+
+    /**
+     * 每攒这么多条输出才更新一次全局计数
+     */
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private transient long[] latencies;
+
+    private transient int latencyCount;
+
+    private transient long pendingOutputs;
+
+    private transient long lastOutputNanos;
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        latencies = new long[1024];
+        latencyCount = 0;
+        pendingOutputs = 0;
+    }
+
+    @Override
+    public void invoke(CouponOutputMsg value, Context context) throws Exception {
+        long nowNanos = System.nanoTime();
+        if ("01".equals(value.getMESSAGE_TYPE())) {
+            long emitNanos = CouponInputGeneratorSource.emitNanosOf(value.getUNIQUE_REQ_ID());
+            if (emitNanos > 0) {
+                if (latencyCount == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[latencyCount++] = nowNanos - emitNanos;
+            }
+        }
+        lastOutputNanos = nowNanos;
+        if (++pendingOutputs == FLUSH_INTERVAL) {
+            LoadTestMetrics.recordOutput(pendingOutputs, lastOutputNanos);
+            pendingOutputs = 0;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (pendingOutputs > 0) {
+            LoadTestMetrics.recordOutput(pendingOutputs, lastOutputNanos);
+            pendingOutputs = 0;
+        }
+        if (latencies != null) {
+            LoadTestMetrics.addLatencies(latencies, latencyCount);
+            latencies = null;
+        }
+        super.close();
+    }
+
+}
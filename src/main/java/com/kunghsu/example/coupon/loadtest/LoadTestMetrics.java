@@ -0,0 +1,131 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测指标汇总
+ *
+ * MiniCluster和压测程序跑在同一个JVM里，sink直接把数据汇总到这里的静态变量
+ * 注意：只适用于MiniCluster，提交到真实集群时各个TM的数据是分开的
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class LoadTestMetrics {
+
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 100L;
+
+    private static final LongAdder OUTPUT_RECORDS = new LongAdder();
+
+    private static final AtomicLong FIRST_INPUT_NANOS = new AtomicLong(Long.MAX_VALUE);
+
+    private static final AtomicLong LAST_OUTPUT_NANOS = new AtomicLong();
+
+    private static final AtomicLong PEAK_HEAP_BYTES = new AtomicLong();
+
+    private static long[] latencies = new long[1024];
+
+    private static int latencyCount;
+
+    private static volatile boolean sampling;
+
+    private static Thread heapSampler;
+
+    /**
+     * 清空上一次的结果并开始采样堆内存
+     */
+    public static synchronized void start() {
+        OUTPUT_RECORDS.reset();
+        FIRST_INPUT_NANOS.set(Long.MAX_VALUE);
+        LAST_OUTPUT_NANOS.set(0);
+        PEAK_HEAP_BYTES.set(0);
+        latencies = new long[1024];
+        latencyCount = 0;
+
+        sampling = true;
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        heapSampler = new Thread(() -> {
+            while (sampling) {
+                PEAK_HEAP_BYTES.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(HEAP_SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "load-test-heap-sampler");
+        heapSampler.setDaemon(true);
+        heapSampler.start();
+    }
+
+    public static synchronized void stop() throws InterruptedException {
+        sampling = false;
+        if (heapSampler != null) {
+            heapSampler.join();
+            heapSampler = null;
+        }
+    }
+
+    public static void recordFirstInput(long nowNanos) {
+        FIRST_INPUT_NANOS.accumulateAndGet(nowNanos, Math::min);
+    }
+
+    public static void recordOutput(long count, long nowNanos) {
+        OUTPUT_RECORDS.add(count);
+        LAST_OUTPUT_NANOS.accumulateAndGet(nowNanos, Math::max);
+    }
+
+    /**
+     * sink关闭时把本地攒的延迟数据一次性合并进来
+     */
+    public static synchronized void addLatencies(long[] values, int count) {
+        if (latencyCount + count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, Math.max(latencies.length * 2, latencyCount + count));
+        }
+        System.arraycopy(values, 0, latencies, latencyCount, count);
+        latencyCount += count;
+    }
+
+    public static long getOutputRecords() {
+        return OUTPUT_RECORDS.sum();
+    }
+
+    public static long getFirstInputNanos() {
+        return FIRST_INPUT_NANOS.get();
+    }
+
+    public static long getLastOutputNanos() {
+        return LAST_OUTPUT_NANOS.get();
+    }
+
+    public static long getPeakHeapBytes() {
+        return PEAK_HEAP_BYTES.get();
+    }
+
+    public static synchronized int getLatencyCount() {
+        return latencyCount;
+    }
+
+    /**
+     * 延迟分位数，单位纳秒
+     *
+     * @param percentile 0~100
+     * @return 没有数据时返回-1
+     */
+    public static synchronized long latencyPercentile(double percentile) {
+        if (latencyCount == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(latencyCount - 1, index))];
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import com.kunghsu.apache.flink.tableapi.hive.entity.UserLocationColumns;
+import com.kunghsu.example.coupon.geo.UserLocationColumnsLoader;
+import com.kunghsu.example.coupon.geo.UserLocationGridIndex;
+import com.kunghsu.example.coupon.geo.UserLocationIndexLoader;
+
+import java.util.Random;
+
+/**
+ * 压测用的用户位置表，在内存里按固定种子生成，代替hive表
+ *
+ * 用户均匀分布在中心点上下左右各spreadDegree度的范围内，cert_type都是1
+ * 1000万行大约需要1.5G堆内存（主要是cert_nbr字符串）
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class SyntheticUserLocationLoader implements UserLocationIndexLoader, UserLocationColumnsLoader {
+
+    /**
+     * 模拟数据以广州为中心
+     */
+    public static final double CENTER_LATITUDE = 23.13;
+    public static final double CENTER_LONGITUDE = 113.26;
+
+    public static final double DEFAULT_SPREAD_DEGREE = 0.5;
+
+    public static final String CERT_TYPE = "1";
+
+    private static final long CERT_NBR_BASE = 100000000L;
+
+    private final int userCount;
+
+    private final double spreadDegree;
+
+    private final long seed;
+
+    public SyntheticUserLocationLoader(int userCount, long seed) {
+        this(userCount, DEFAULT_SPREAD_DEGREE, seed);
+    }
+
+    public SyntheticUserLocationLoader(int userCount, double spreadDegree, long seed) {
+        this.userCount = userCount;
+        this.spreadDegree = spreadDegree;
+        this.seed = seed;
+    }
+
+    @Override
+    public UserLocationGridIndex load() throws Exception {
+        return UserLocationGridIndex.of(loadColumns(), false, UserLocationGridIndex.DEFAULT_CELL_SIZE_DEGREE);
+    }
+
+    @Override
+    public UserLocationColumns loadColumns() {
+        UserLocationColumns columns = new UserLocationColumns(userCount);
+        Random random = new Random(seed);
+        for (int i = 0; i < userCount; i++) {
+            columns.add(CERT_TYPE, certNbr(i),
+                    randomLatitude(random), randomLongitude(random),
+                    randomLatitude(random), randomLongitude(random));
+        }
+        return columns;
+    }
+
+    public static String certNbr(int userIndex) {
+        return String.valueOf(CERT_NBR_BASE + userIndex);
+    }
+
+    public double randomLatitude(Random random) {
+        return CENTER_LATITUDE + (random.nextDouble() * 2 - 1) * spreadDegree;
+    }
+
+    public double randomLongitude(Random random) {
+        return CENTER_LONGITUDE + (random.nextDouble() * 2 - 1) * spreadDegree;
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.kunghsu.example.coupon.loadtest;
+
+import org.apache.flink.api.java.tuple.Tuple4;
+import org.apache.flink.streaming.api.functions.source.SourceFunction;
+
+import java.util.Random;
+
+/**
+ * 压测用的用户位置流 (cert_type, cert_nbr, lat, lng)，给SQL join的版本当维表
+ * 数据和SyntheticUserLocationLoader生成的完全一致（同一个种子、同样的顺序），所以只能是单并行度
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class UserLocationGeneratorSource implements SourceFunction<Tuple4<String, String, Double, Double>> {
+
+    private final SyntheticUserLocationLoader userLocations;
+
+    private volatile boolean running = true;
+
+    public UserLocationGeneratorSource(SyntheticUserLocationLoader userLocations) {
+        this.userLocations = userLocations;
+    }
+
+    @Override
+    public void run(SourceContext<Tuple4<String, String, Double, Double>> ctx) throws Exception {
+        Random random = new Random(userLocations.getSeed());
+        for (int i = 0; i < userLocations.getUserCount() && running; i++) {
+            double lat = userLocations.randomLatitude(random);
+            double lng = userLocations.randomLongitude(random);
+            //夜间坐标，这里不用，但要消耗掉随机数，保持和SyntheticUserLocationLoader一致
+            userLocations.randomLatitude(random);
+            userLocations.randomLongitude(random);
+            synchronized (ctx.getCheckpointLock()) {
+                ctx.collect(Tuple4.of(SyntheticUserLocationLoader.CERT_TYPE,
+                        SyntheticUserLocationLoader.certNbr(i), lat, lng));
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+}
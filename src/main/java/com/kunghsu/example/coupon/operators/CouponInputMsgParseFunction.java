@@ -0,0 +1,21 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.common.utils.JacksonUtils;
+import com.kunghsu.example.coupon.CouponInputMsg;
+import org.apache.flink.api.common.functions.MapFunction;
+
+/**
+ * kafka消息(json) -> CouponInputMsg
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+public class CouponInputMsgParseFunction implements MapFunction<String, CouponInputMsg> {
+
+    @Override
+    public CouponInputMsg map(String value) throws Exception {
+        return JacksonUtils.toJavaObject(value, CouponInputMsg.class);
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.example.coupon.CouponInputMsg;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.common.functions.MapFunction;
+
+import java.util.Date;
+
+/**
+ * CouponInputMsg -> CouponInputTableVO2
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/5
+ * desc:
+*/
+public class CouponInputTableMapFunction implements MapFunction<CouponInputMsg, CouponInputTableVO2> {
+
+    @Override
+    public CouponInputTableVO2 map(CouponInputMsg value) throws Exception {
+        CouponInputTableVO2 couponInputTableVO = new CouponInputTableVO2();
+        couponInputTableVO.setMessageType(value.getMESSAGE_TYPE());
+        couponInputTableVO.setCouponId(value.getCOUPON_ID());
+        couponInputTableVO.setStoreId(value.getSTORE_ID());
+        couponInputTableVO.setStoreRange(value.getSTORE_RANGE());
+        couponInputTableVO.setStoreLatitude(value.getSTORE_LATITUDE());
+        couponInputTableVO.setStoreLongitude(value.getSTORE_LONGITUDE());
+        couponInputTableVO.setUserNum(value.getUSER_NUM());
+        couponInputTableVO.setUniqueReqId(value.getUNIQUE_REQ_ID());
+        couponInputTableVO.setCreateTime(new Date());
+        couponInputTableVO.setType("1");
+        return couponInputTableVO;
+    }
+
+}
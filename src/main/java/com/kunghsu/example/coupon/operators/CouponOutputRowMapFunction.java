@@ -0,0 +1,35 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.types.Row;
+
+import java.util.UUID;
+
+/**
+ * SQL匹配结果 -> CouponOutputMsg
+ * 查询的列顺序必须是：cert_type, cert_nbr, couponId, storeId, storeRange, userNum, uniqueReqId
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/6
+ * desc:
+*/
+public class CouponOutputRowMapFunction implements MapFunction<Tuple2<Boolean, Row>, CouponOutputMsg> {
+
+    @Override
+    public CouponOutputMsg map(Tuple2<Boolean, Row> booleanRowTuple2) throws Exception {
+
+        CouponOutputMsg couponOutputMsg = new CouponOutputMsg();
+        couponOutputMsg.setSERIAL_NO(UUID.randomUUID().toString());
+        couponOutputMsg.setID_TYPE((String) booleanRowTuple2.f1.getField(0));
+        couponOutputMsg.setID_NUMBER((String) booleanRowTuple2.f1.getField(1));
+        couponOutputMsg.setCOUPON_ID((String) booleanRowTuple2.f1.getField(2));
+        couponOutputMsg.setSTORE_ID((String) booleanRowTuple2.f1.getField(3));
+        couponOutputMsg.setSTORE_RANGE((String) booleanRowTuple2.f1.getField(4));
+        couponOutputMsg.setCOUPON_SEND_NUM((String) booleanRowTuple2.f1.getField(5));
+        couponOutputMsg.setUNIQUE_REQ_ID((String) booleanRowTuple2.f1.getField(6));
+        return couponOutputMsg;
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.key.CouponRequestKey;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 按请求汇总匹配结果，输出 01(总数) 02(明细) 03(结束)
+ * 代替 keyBy + ProcessingTimeSessionWindows + WindowFunction + ProcessFunction
+ *
+ * 会话窗口只是用来判断"某个请求的结果已经到齐"，每个请求至少要多等一个gap，并且窗口里要存下所有记录（包括空记录）
+ * 这里改成：
+ * 1.收到结束标记（END_OF_REQUEST，由上游在一个请求的明细全部输出之后发出）时立即输出
+ * 2.上游没法发结束标记时（SQL join、UDTF），超过idleTimeoutMillis没有新记录就输出，效果和原来的会话窗口一样
+ *
+ * 状态只有两部分：
+ * 计数等进度信息（一个小对象），明细的暂存区（用RocksDB时在磁盘上，不占堆内存）
+ * 01消息要带总数，所以明细只能先暂存，到齐后再按01、02...、03的顺序输出
+ *
+ * 暂存区按批存放：
+ * 新到的明细先追加到pendingUsers（ListState，追加不用读出已有内容），攒满batchSize条就整批移到matchedUserBatches的一个槽里
+ * 输出时一批一批从状态里读出来、发出去，热门门店匹配到几十万用户时，同一时间在堆上的也只有一批，
+ * 不会像原来ResultWrapVO那样把整个列表放在堆上
+ *
+ * 暂存区尽量小：
+ * 空记录到达时就过滤掉，不进暂存区
+ * 同一个请求的COUPON_ID、STORE_ID、STORE_RANGE都一样，只在进度信息里存一份，
+ * 每个匹配到的用户只存(ID_TYPE, ID_NUMBER)，SERIAL_NO在输出时再生成
+ * 没有匹配到任何用户的请求，只有计数，不会暂存任何记录
+ *
+ * 需要在keyBy(new CouponRequestKeySelector())之后使用
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/8
+ * desc:
+*/
+public class CouponRequestCompletionFunction extends KeyedProcessFunction<CouponRequestKey, CouponOutputMsg, CouponOutputMsg> {
+
+    /**
+     * 请求结束标记的MESSAGE_TYPE，只在算子之间传递，不会输出到kafka
+     */
+    public static final String END_OF_REQUEST = "99";
+
+    /**
+     * 默认每批的明细条数
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private final long idleTimeoutMillis;
+
+    private final int batchSize;
+
+    private transient ValueState<RequestProgress> progressState;
+
+    /**
+     * 还没攒满一批的明细
+     */
+    private transient ListState<Tuple2<String, String>> pendingUserState;
+
+    /**
+     * 已经攒满的明细，key是批次号，从0开始
+     */
+    private transient MapState<Integer, List<Tuple2<String, String>>> matchedUserBatchState;
+
+    /**
+     * @param idleTimeoutMillis 多久没有新记录就认为请求已经结束，和原来会话窗口的gap一致
+     */
+    public CouponRequestCompletionFunction(long idleTimeoutMillis) {
+        this(idleTimeoutMillis, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param idleTimeoutMillis 多久没有新记录就认为请求已经结束，和原来会话窗口的gap一致
+     * @param batchSize 每批的明细条数，决定了输出时每个请求最多占用多少堆内存
+     */
+    public CouponRequestCompletionFunction(long idleTimeoutMillis, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 标记为请求结束
+     * 传入的记录要带上和明细一样的请求字段（COUPON_ID、STORE_ID等），保证和明细分到同一个key
+     *
+     * @param couponOutputMsg ID_TYPE、ID_NUMBER为空的记录
+     * @return
+     */
+    public static CouponOutputMsg markEndOfRequest(CouponOutputMsg couponOutputMsg) {
+        couponOutputMsg.setMESSAGE_TYPE(END_OF_REQUEST);
+        return couponOutputMsg;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        progressState = getRuntimeContext().getState(
+                new ValueStateDescriptor<>("requestProgress", Types.POJO(RequestProgress.class)));
+        pendingUserState = getRuntimeContext().getListState(
+                new ListStateDescriptor<>("pendingUsers", Types.TUPLE(Types.STRING, Types.STRING)));
+        matchedUserBatchState = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("matchedUserBatches", Types.INT, Types.LIST(Types.TUPLE(Types.STRING, Types.STRING))));
+    }
+
+    @Override
+    public void processElement(CouponOutputMsg value, Context ctx, Collector<CouponOutputMsg> out) throws Exception {
+
+        long now = ctx.timerService().currentProcessingTime();
+        RequestProgress progress = progressState.value();
+        if (progress == null) {
+            progress = new RequestProgress();
+            progress.uniqueReqId = value.getUNIQUE_REQ_ID();
+            progress.couponId = value.getCOUPON_ID();
+            progress.storeId = value.getSTORE_ID();
+            progress.storeRange = value.getSTORE_RANGE();
+        }
+
+        if (END_OF_REQUEST.equals(value.getMESSAGE_TYPE())) {
+            if (progress.timer != 0) {
+                ctx.timerService().deleteProcessingTimeTimer(progress.timer);
+            }
+            emit(progress, out);
+            return;
+        }
+
+        //空记录（left join没有匹配到用户）不计数，只用来确定请求存在
+        if (StringUtils.isNotEmpty(value.getID_TYPE()) && StringUtils.isNotEmpty(value.getID_NUMBER())) {
+            pendingUserState.add(Tuple2.of(value.getID_TYPE(), value.getID_NUMBER()));
+            progress.count++;
+            if (progress.count % batchSize == 0) {
+                sealBatch(progress);
+            }
+        }
+
+        //每个请求只挂一个定时器，触发时发现中间又来过记录，再往后顺延
+        progress.lastArrival = now;
+        if (progress.timer == 0) {
+            progress.timer = now + idleTimeoutMillis;
+            ctx.timerService().registerProcessingTimeTimer(progress.timer);
+        }
+        progressState.update(progress);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<CouponOutputMsg> out) throws Exception {
+
+        RequestProgress progress = progressState.value();
+        if (progress == null) {
+            return;
+        }
+        long deadline = progress.lastArrival + idleTimeoutMillis;
+        if (deadline > timestamp) {
+            progress.timer = deadline;
+            ctx.timerService().registerProcessingTimeTimer(deadline);
+            progressState.update(progress);
+            return;
+        }
+        emit(progress, out);
+    }
+
+    /**
+     * 攒满一批，整批移到matchedUserBatches
+     */
+    private void sealBatch(RequestProgress progress) throws Exception {
+        List<Tuple2<String, String>> batch = new ArrayList<>(batchSize);
+        for (Tuple2<String, String> matchedUser : pendingUserState.get()) {
+            batch.add(matchedUser);
+        }
+        matchedUserBatchState.put((int) (progress.count / batchSize) - 1, batch);
+        pendingUserState.clear();
+    }
+
+    private void emit(RequestProgress progress, Collector<CouponOutputMsg> out) throws Exception {
+
+        String sendNum = String.valueOf(progress.count);
+        CouponOutputMsg outputMsg = new CouponOutputMsg();
+        outputMsg.setMESSAGE_TYPE("01");
+        outputMsg.setCOUPON_SEND_NUM(sendNum);
+        outputMsg.setUNIQUE_REQ_ID(progress.uniqueReqId);
+        out.collect(outputMsg);
+
+        if (progress.count > 0) {
+            //按批次号顺序一批一批读，输出顺序和到达顺序一致
+            int sealedBatches = (int) (progress.count / batchSize);
+            for (int batchNo = 0; batchNo < sealedBatches; batchNo++) {
+                emitItems(matchedUserBatchState.get(batchNo), progress, sendNum, out);
+            }
+            emitItems(pendingUserState.get(), progress, sendNum, out);
+            CouponOutputMsg outputMsg3 = new CouponOutputMsg();
+            outputMsg3.setMESSAGE_TYPE("03");
+            outputMsg3.setCOUPON_SEND_NUM(sendNum);
+            outputMsg3.setUNIQUE_REQ_ID(progress.uniqueReqId);
+            out.collect(outputMsg3);
+        }
+
+        progressState.clear();
+        pendingUserState.clear();
+        matchedUserBatchState.clear();
+    }
+
+    private static void emitItems(Iterable<Tuple2<String, String>> matchedUsers, RequestProgress progress, String sendNum,
+                                  Collector<CouponOutputMsg> out) {
+        if (matchedUsers == null) {
+            return;
+        }
+        for (Tuple2<String, String> matchedUser : matchedUsers) {
+            CouponOutputMsg item = new CouponOutputMsg();
+            item.setMESSAGE_TYPE("02");
+            item.setSERIAL_NO(UUID.randomUUID().toString());
+            item.setID_TYPE(matchedUser.f0);
+            item.setID_NUMBER(matchedUser.f1);
+            item.setCOUPON_ID(progress.couponId);
+            item.setSTORE_ID(progress.storeId);
+            item.setSTORE_RANGE(progress.storeRange);
+            item.setCOUPON_SEND_NUM(sendNum);
+            item.setUNIQUE_REQ_ID(progress.uniqueReqId);
+            out.collect(item);
+        }
+    }
+
+    /**
+     * 一个请求的汇总进度
+     */
+    public static class RequestProgress {
+
+        /**
+         * 匹配到的用户数
+         */
+        public long count;
+
+        /**
+         * 最后一条记录到达的时间
+         */
+        public long lastArrival;
+
+        /**
+         * 已注册的定时器时间，0表示还没注册
+         */
+        public long timer;
+
+        public String uniqueReqId;
+
+        public String couponId;
+
+        public String storeId;
+
+        public String storeRange;
+
+        public RequestProgress() {
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.key.CouponRequestKey;
+import org.apache.flink.api.java.functions.KeySelector;
+
+/**
+ * 按请求分组
+ * 优先用UNIQUE_REQ_ID；老的请求没有UNIQUE_REQ_ID时，退回原来 COUPON_ID、STORE_ID、STORE_RANGE、COUPON_SEND_NUM 的组合
+ * key用CouponRequestKey，不再每条记录拼一个字符串
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/8
+ * desc:
+*/
+public class CouponRequestKeySelector implements KeySelector<CouponOutputMsg, CouponRequestKey> {
+
+    @Override
+    public CouponRequestKey getKey(CouponOutputMsg couponOutputMsg) throws Exception {
+        return CouponRequestKey.of(couponOutputMsg);
+    }
+}
@@ -0,0 +1,211 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.apache.flink.metrics.ThreadSafeCounter;
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.geo.PartitionedUserLocationLoader;
+import com.kunghsu.example.coupon.geo.UserLocationViewCache;
+import com.kunghsu.example.coupon.geo.UserLocationViewCache.LoadedUserLocation;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.common.state.BroadcastState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.streaming.api.functions.co.BroadcastProcessFunction;
+import org.apache.flink.util.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据门店经纬度匹配用户，用户位置按分区广播切换
+ * 代替 user_location_partition_info_temporal2 的temporal join（'streaming-source.partition.include'='latest'）
+ *
+ * temporal join的做法：每个subtask自己定时检查分区，发现新分区就把整个分区重新读一遍放进Flink的lookup缓存，
+ * 加载期间join算子停住，缓存里是一行一行的RowData，看不到用了多少内存
+ * 这里的做法：
+ * 1.只有UserLocationPartitionMonitorSource一个subtask检查分区，新分区的分区值通过广播流发给所有subtask，记在BroadcastState里
+ * 2.每个subtask收到新分区后，交给UserLocationViewCache在后台读分区、构建网格索引（同一个TM里只加载一次），
+ *   期间请求继续用旧分区匹配，不会停住
+ * 3.构建完成后替换一个volatile引用，请求要么看到完整的旧分区，要么看到完整的新分区
+ *
+ * BroadcastState里只存分区值，checkpoint很小；从checkpoint恢复后，第一条请求发现已加载的分区和状态里的不一致，会自动加载状态里的分区
+ *
+ * 指标（每个subtask）：
+ * userLocationMemoryBytes：当前分区估算占用的堆内存
+ * userLocationSize：当前分区的用户数
+ * lastLoadDurationMs：最近一次读分区 + 构建索引的耗时（同一个TM里共享加载结果时，是实际加载的那一次的耗时）
+ * partitionLoads、partitionLoadFailures：加载次数、失败次数
+ * probes、probeHits、probeHitRate：查询次数、命中至少一个用户的次数、命中率
+ *
+ * 用法：
+ * requestStream.connect(partitionStream.broadcast(PARTITION_STATE_DESCRIPTOR)).process(new UserCouponBroadcastGeoMatchFunction(loader))
+ * 一般通过UserCouponMatchingByGeoIndexTask.buildBroadcastMatchingStream使用
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/9
+ * desc:
+*/
+public class UserCouponBroadcastGeoMatchFunction extends BroadcastProcessFunction<CouponInputTableVO2, String, CouponOutputMsg> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserCouponBroadcastGeoMatchFunction.class);
+
+    /**
+     * 广播状态，只有一个key，value是最新的分区
+     */
+    public static final MapStateDescriptor<String, String> PARTITION_STATE_DESCRIPTOR =
+            new MapStateDescriptor<>("userLocationPartition", Types.STRING, Types.STRING);
+
+    private static final String CURRENT_PARTITION_KEY = "current";
+
+    /**
+     * 加载失败后，至少隔多久才重试
+     */
+    private static final long RETRY_BACKOFF_MILLIS = 60 * 1000L;
+
+    /**
+     * open里同步加载初始分区最多等多久，超时让task失败，由重启策略重试，不会一直卡在open里
+     */
+    private static final long INITIAL_LOAD_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final PartitionedUserLocationLoader loader;
+
+    /**
+     * 当前用来匹配的分区，整体替换
+     */
+    private transient volatile LoadedUserLocation active;
+
+    /**
+     * 正在加载的分区，没有时为null
+     */
+    private transient volatile String loadingPartition;
+
+    private transient volatile long lastFailureMillis;
+
+    private transient volatile long lastLoadDurationMillis;
+
+    private transient int subtaskIndex;
+
+    private transient Counter partitionLoads;
+
+    private transient Counter partitionLoadFailures;
+
+    private transient Counter probes;
+
+    private transient Counter probeHits;
+
+    public UserCouponBroadcastGeoMatchFunction(PartitionedUserLocationLoader loader) {
+        this.loader = loader;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        subtaskIndex = getRuntimeContext().getIndexOfThisSubtask();
+
+        //这两个在加载线程的回调里累加，不能用默认的SimpleCounter
+        partitionLoads = getRuntimeContext().getMetricGroup().counter("partitionLoads", new ThreadSafeCounter());
+        partitionLoadFailures = getRuntimeContext().getMetricGroup().counter("partitionLoadFailures", new ThreadSafeCounter());
+        probes = getRuntimeContext().getMetricGroup().counter("probes");
+        probeHits = getRuntimeContext().getMetricGroup().counter("probeHits");
+        getRuntimeContext().getMetricGroup().gauge("userLocationMemoryBytes",
+                (Gauge<Long>) () -> active == null ? 0L : active.getEstimatedMemoryBytes());
+        getRuntimeContext().getMetricGroup().gauge("userLocationSize",
+                (Gauge<Integer>) () -> active == null ? 0 : active.getView().size());
+        getRuntimeContext().getMetricGroup().gauge("lastLoadDurationMs", (Gauge<Long>) () -> lastLoadDurationMillis);
+        getRuntimeContext().getMetricGroup().gauge("probeHitRate", (Gauge<Double>) () -> {
+            long probeCount = probes.getCount();
+            return probeCount == 0 ? 0D : (double) probeHits.getCount() / probeCount;
+        });
+
+        //启动时先同步加载一次最新分区，保证第一条请求到来时已经有数据可查，和原来temporal join的行为一致
+        String partition = loader.latestPartition();
+        if (partition == null) {
+            throw new IllegalStateException("用户位置表没有任何分区：" + loader.sourceName());
+        }
+        swap(UserLocationViewCache.get(loader, partition).get(INITIAL_LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        LOGGER.info("subtask {} 用户位置初始分区加载完成，partition:{} 用户数:{}",
+                subtaskIndex, partition, active.getView().size());
+    }
+
+    @Override
+    public void close() throws Exception {
+        //加载由UserLocationViewCache负责，这里只关闭查最新分区用的连接，不影响正在进行的加载
+        try {
+            loader.close();
+        } finally {
+            super.close();
+        }
+    }
+
+    @Override
+    public void processElement(CouponInputTableVO2 value, ReadOnlyContext ctx, Collector<CouponOutputMsg> out) throws Exception {
+
+        //从checkpoint恢复、或者启动时广播的分区比open里加载的新
+        String broadcastPartition = ctx.getBroadcastState(PARTITION_STATE_DESCRIPTOR).get(CURRENT_PARTITION_KEY);
+        if (broadcastPartition != null) {
+            loadIfNewer(broadcastPartition);
+        }
+
+        int count = UserCouponGeoMatchFunction.match(active.getView().currentIndex(), value, out);
+        if (count >= 0) {
+            probes.inc();
+            if (count > 0) {
+                probeHits.inc();
+            }
+        }
+    }
+
+    @Override
+    public void processBroadcastElement(String partition, Context ctx, Collector<CouponOutputMsg> out) throws Exception {
+
+        BroadcastState<String, String> state = ctx.getBroadcastState(PARTITION_STATE_DESCRIPTOR);
+        String current = state.get(CURRENT_PARTITION_KEY);
+        if (current == null || partition.compareTo(current) > 0) {
+            state.put(CURRENT_PARTITION_KEY, partition);
+        }
+        loadIfNewer(partition);
+    }
+
+    /**
+     * 在UserLocationViewCache的加载线程里加载新分区，不阻塞算子线程
+     */
+    private void loadIfNewer(String partition) {
+
+        if (partition.compareTo(active.getPartition()) <= 0 || partition.equals(loadingPartition)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastFailureMillis < RETRY_BACKOFF_MILLIS) {
+            return;
+        }
+        loadingPartition = partition;
+        LOGGER.info("subtask {} 开始加载用户位置新分区，{} -> {}",
+                subtaskIndex, active.getPartition(), partition);
+        UserLocationViewCache.get(loader, partition).whenComplete((loaded, throwable) -> {
+            if (throwable != null) {
+                lastFailureMillis = System.currentTimeMillis();
+                partitionLoadFailures.inc();
+                LOGGER.error("用户位置分区加载失败，继续使用分区{}，partition:{}", active.getPartition(), partition, throwable);
+            } else if (loaded.getPartition().compareTo(active.getPartition()) > 0) {
+                swap(loaded);
+                UserLocationViewCache.evictOlderThan(loader.sourceName(), loaded.getPartition());
+            }
+            if (partition.equals(loadingPartition)) {
+                loadingPartition = null;
+            }
+        });
+    }
+
+    private void swap(LoadedUserLocation loaded) {
+        active = loaded;
+        lastLoadDurationMillis = loaded.getLoadMillis();
+        partitionLoads.inc();
+        LOGGER.info("subtask {} 用户位置切换到分区{}，用户数:{} 估算内存:{}字节",
+                subtaskIndex, loaded.getPartition(),
+                loaded.getView().size(), loaded.getEstimatedMemoryBytes());
+    }
+
+}
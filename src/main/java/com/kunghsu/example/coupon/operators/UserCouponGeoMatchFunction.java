@@ -0,0 +1,125 @@
+package com.kunghsu.example.coupon.operators;
+
+import com.kunghsu.example.coupon.CouponOutputMsg;
+import com.kunghsu.example.coupon.geo.TimePeriodUserLocationView;
+import com.kunghsu.example.coupon.geo.UserLocationColumnsLoader;
+import com.kunghsu.example.coupon.geo.UserLocationGridIndex;
+import com.kunghsu.example.coupon.geo.UserLocationIndexLoader;
+import com.kunghsu.example.coupon.table.CouponInputTableVO2;
+import org.apache.flink.api.common.functions.RichFlatMapFunction;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 根据门店经纬度匹配用户（DataStream版本）
+ * 替代 hive维表join + haversine SQL 的做法
+ *
+ * 每个subtask在open时把用户位置加载到网格索引里（相当于广播维表），发券请求随便分到哪个subtask都能查
+ * 命中几个用户就输出几条CouponOutputMsg，和原来SQL left join之后再map出来的一致（SERIAL_NO由汇总时生成）
+ * 最后再输出一条请求结束标记（CouponRequestCompletionFunction.END_OF_REQUEST），
+ * 下游汇总时收到结束标记就立即输出，不用再等会话窗口超时，一个都没命中时也靠它输出count为0的结果
+ *
+ * 两种用法：
+ * 1.new UserCouponGeoMatchFunction(indexLoader) 固定用白天或者夜间坐标
+ * 2.UserCouponGeoMatchFunction.byTimePeriod(columnsLoader) 按时段自动切换白天/夜间坐标，
+ *   对应原SQL里的 CASE udfTimePeriod(...) WHEN '0' THEN lat WHEN '1' THEN lat_night
+ *
+ * author:xuyaokun_kzx
+ * date:2022/3/1
+ * desc:
+*/
+public class UserCouponGeoMatchFunction extends RichFlatMapFunction<CouponInputTableVO2, CouponOutputMsg> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(UserCouponGeoMatchFunction.class);
+
+    private final UserLocationIndexLoader indexLoader;
+
+    private final UserLocationColumnsLoader columnsLoader;
+
+    private transient UserLocationGridIndex index;
+
+    private transient TimePeriodUserLocationView periodView;
+
+    public UserCouponGeoMatchFunction(UserLocationIndexLoader indexLoader) {
+        this(indexLoader, null);
+    }
+
+    private UserCouponGeoMatchFunction(UserLocationIndexLoader indexLoader, UserLocationColumnsLoader columnsLoader) {
+        this.indexLoader = indexLoader;
+        this.columnsLoader = columnsLoader;
+    }
+
+    /**
+     * 按时段切换白天/夜间坐标
+     *
+     * @param columnsLoader
+     * @return
+     */
+    public static UserCouponGeoMatchFunction byTimePeriod(UserLocationColumnsLoader columnsLoader) {
+        return new UserCouponGeoMatchFunction(null, columnsLoader);
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        if (columnsLoader != null) {
+            periodView = new TimePeriodUserLocationView(columnsLoader.loadColumns());
+            LOGGER.info("subtask {} 用户位置时段视图加载完成，用户数:{} 当前时段:{}",
+                    getRuntimeContext().getIndexOfThisSubtask(), periodView.size(), periodView.currentPeriod());
+        } else {
+            index = indexLoader.load();
+            LOGGER.info("subtask {} 用户位置索引加载完成，用户数:{}",
+                    getRuntimeContext().getIndexOfThisSubtask(), index.size());
+        }
+    }
+
+    @Override
+    public void flatMap(CouponInputTableVO2 value, Collector<CouponOutputMsg> out) throws Exception {
+        match(currentIndex(), value, out);
+    }
+
+    private UserLocationGridIndex currentIndex() {
+        return periodView != null ? periodView.currentIndex() : index;
+    }
+
+    /**
+     * 查出门店范围内的用户，逐个输出，最后输出请求结束标记
+     *
+     * @return 命中的用户数，门店坐标或范围缺失、非法时返回-1
+     */
+    static int match(UserLocationGridIndex index, CouponInputTableVO2 value, Collector<CouponOutputMsg> out) {
+
+        int count = -1;
+        if (value.getStoreLatitude() != null && value.getStoreLongitude() != null && value.getStoreRange() != null) {
+            try {
+                //门店坐标和范围，每个请求只解析一次
+                double storeLatitude = Double.parseDouble(value.getStoreLatitude());
+                double storeLongitude = Double.parseDouble(value.getStoreLongitude());
+                double storeRange = Double.parseDouble(value.getStoreRange());
+                count = index.query(value.getType(), storeLatitude, storeLongitude, storeRange,
+                        (certType, certNbr) -> out.collect(buildOutputMsg(value, certType, certNbr)));
+            } catch (NumberFormatException e) {
+                //和SQL里CAST失败的效果一样，当成没有匹配到任何用户
+                LOGGER.warn("门店坐标或范围非法，input:{}", value);
+            }
+        }
+
+        out.collect(CouponRequestCompletionFunction.markEndOfRequest(buildOutputMsg(value, null, null)));
+        return count;
+    }
+
+    private static CouponOutputMsg buildOutputMsg(CouponInputTableVO2 value, String certType, String certNbr) {
+        CouponOutputMsg couponOutputMsg = new CouponOutputMsg();
+        couponOutputMsg.setID_TYPE(certType);
+        couponOutputMsg.setID_NUMBER(certNbr);
+        couponOutputMsg.setCOUPON_ID(value.getCouponId());
+        couponOutputMsg.setSTORE_ID(value.getStoreId());
+        couponOutputMsg.setSTORE_RANGE(value.getStoreRange());
+        couponOutputMsg.setCOUPON_SEND_NUM(value.getUserNum());
+        couponOutputMsg.setUNIQUE_REQ_ID(value.getUniqueReqId());
+        return couponOutputMsg;
+    }
+
+}